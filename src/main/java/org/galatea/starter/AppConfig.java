@@ -5,6 +5,7 @@ import lombok.extern.slf4j.Slf4j;
 import net.sf.aspect4log.aspect.LogAspect;
 import org.galatea.starter.domain.SettlementMission;
 import org.galatea.starter.service.IAgreementTransformer;
+import org.galatea.starter.utils.RequestIdGenerator;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.cache.CacheManager;
 import org.springframework.cache.annotation.EnableCaching;
@@ -15,12 +16,14 @@ import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.EnableAspectJAutoProxy;
 import org.springframework.core.io.ClassPathResource;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 @Slf4j
 @Configuration
 @EnableAspectJAutoProxy
 @EnableCaching
 @EnableFeignClients
+@EnableScheduling
 public class AppConfig {
 
   /**
@@ -76,4 +79,23 @@ public class AppConfig {
     return Logger.Level.BASIC;
   }
 
+  /**
+   * Makes the ids we give each REST request and JMS message, see request-id.node-id.
+   *
+   * @return the request id generator.
+   * @throws IllegalStateException if request-id.require-node-id is set but no node id is
+   */
+  @Bean
+  public RequestIdGenerator requestIdGenerator(@Value("${request-id.node-id}") final int nodeId,
+      @Value("${request-id.require-node-id}") final boolean requireNodeId) {
+    if (nodeId >= 0) {
+      return new RequestIdGenerator(nodeId);
+    }
+    if (requireNodeId) {
+      throw new IllegalStateException(
+          "request-id.node-id must be set, so that request ids are unique across nodes");
+    }
+    return RequestIdGenerator.forLocalHost();
+  }
+
 }
@@ -1,11 +1,19 @@
 package org.galatea.starter;
 
+import io.micrometer.core.instrument.MeterRegistry;
 import java.util.function.BiConsumer;
 import javax.jms.ConnectionFactory;
 import javax.jms.Message;
+import javax.jms.Topic;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.activemq.ActiveMQSession;
+import org.apache.activemq.command.ActiveMQTopic;
+import org.galatea.starter.utils.RequestIdGenerator;
 import org.galatea.starter.utils.jms.FuseJmsListenerContainerFactory;
+import org.galatea.starter.utils.jms.JmsListenerExecutors;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.jms.DefaultJmsListenerContainerFactoryConfigurer;
+import org.springframework.boot.autoconfigure.jms.activemq.ActiveMQConnectionFactoryCustomizer;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.jms.annotation.EnableJms;
@@ -40,6 +48,14 @@ public class JmsConfig implements JmsListenerConfigurer {
     return new MappingJackson2MessageConverter();
   }
 
+  /**
+   * Returns the topic that mission created/updated/deleted events are published to.
+   */
+  @Bean
+  public Topic missionEventTopic(@Value("${jms.mission-event-topic}") final String topicName) {
+    return new ActiveMQTopic(topicName);
+  }
+
   /**
    * We provide our own listener container factory since we want to use our own implementation of a
    * listener container which adds tracing of how the message is handled. We also manually set the
@@ -47,16 +63,25 @@ public class JmsConfig implements JmsListenerConfigurer {
    *
    * @param queueConnectionFactory injected by spring
    * @param configurer injected by spring
+   * @param meterRegistry injected by spring, used by the containers to publish their metrics
+   * @param requestIdGenerator gives messages that don't carry a request id one of their own
+   * @param executorMode the kind of threads the consumers run on, see JmsListenerExecutors
+   * @param agreementLanes when above 0, sessions aren't transacted and messages are acknowledged by
+   *     AgreementDispatcher once their lane has handled them rather than by the container
    * @return the factory.
    */
   @Bean
   public JmsListenerContainerFactory<DefaultMessageListenerContainer> jmsListenerContainerFactory(
       final ConnectionFactory queueConnectionFactory,
       final DefaultJmsListenerContainerFactoryConfigurer configurer,
-      final BiConsumer<Message, Exception> failedMessageConsumer) {
+      final BiConsumer<Message, Exception> failedMessageConsumer,
+      final MeterRegistry meterRegistry,
+      final RequestIdGenerator requestIdGenerator,
+      @Value("${jms.listener-executor}") final String executorMode,
+      @Value("${jms.agreement-lanes}") final int agreementLanes) {
 
-    FuseJmsListenerContainerFactory listenerFactory =
-        new FuseJmsListenerContainerFactory(failedMessageConsumer);
+    FuseJmsListenerContainerFactory listenerFactory = new FuseJmsListenerContainerFactory(
+        failedMessageConsumer, meterRegistry, requestIdGenerator);
 
     // This provides all boot's default to this factory, including the message converter
     // Note that we don't use a caching connection factory due to this:
@@ -65,10 +90,33 @@ public class JmsConfig implements JmsListenerConfigurer {
     // jms/listener/DefaultMessageListenerContainer.html
     configurer.configure(listenerFactory, queueConnectionFactory);
 
-    // TODO: override any defaults in the listener factory before we return the object
+    // Consumers block on the database for most of the time they're handling a message, so with
+    // virtual threads we can afford a much higher jms.listener-concurrency
+    listenerFactory.setTaskExecutor(JmsListenerExecutors.forMode(executorMode));
+
+    // The container only acknowledges in client mode, so with individual acknowledgement each
+    // message stays unacknowledged until whoever finishes with it (a lane) acknowledges it. The
+    // configurer above turns on transacted sessions, which ignore the acknowledge mode and commit
+    // as soon as the listener returns, so those have to be turned off again
+    if (agreementLanes > 0) {
+      listenerFactory.setSessionTransacted(false);
+      listenerFactory.setSessionAcknowledgeMode(ActiveMQSession.INDIVIDUAL_ACKNOWLEDGE);
+    }
     return listenerFactory;
   }
 
+  /**
+   * Sets how many messages the broker pushes to each consumer ahead of it asking for them. The
+   * ActiveMQ default (1000) suits one or two consumers; with many concurrent consumers a large
+   * prefetch lets the first few hoard the queue while the rest sit idle, so lower it as
+   * jms.listener-concurrency goes up.
+   */
+  @Bean
+  public ActiveMQConnectionFactoryCustomizer prefetchCustomizer(
+      @Value("${jms.queue-prefetch}") final int queuePrefetch) {
+    return factory -> factory.getPrefetchPolicy().setQueuePrefetch(queuePrefetch);
+  }
+
   /**
    * For JSON messages we want to use the spring messaging converter instead of the spring jms
    * converter. The spring jms converter expects the type of object to deserialize the json to being
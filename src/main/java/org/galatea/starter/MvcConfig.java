@@ -1,23 +1,47 @@
 package org.galatea.starter;
 
+import com.fasterxml.jackson.databind.Module;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.module.afterburner.AfterburnerModule;
 import com.google.common.collect.Sets;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.config.MeterFilter;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.time.Duration;
 import java.util.List;
 import lombok.extern.slf4j.Slf4j;
+import org.eclipse.jetty.server.handler.gzip.GzipHandler;
 import org.galatea.starter.utils.FuseHttpTraceRepository;
+import org.galatea.starter.utils.RequestIdGenerator;
+import org.galatea.starter.utils.http.converter.SettlementMissionArrowConverter;
 import org.galatea.starter.utils.http.converter.SettlementMissionCsvConverter;
 import org.galatea.starter.utils.http.converter.SettlementMissionXlsxConverter;
 import org.galatea.starter.utils.rest.FuseHttpTraceFilter;
+import org.galatea.starter.utils.rest.LatencyDistributionFilter;
+import org.galatea.starter.utils.rest.SlowRequestProfiler;
+import org.galatea.starter.utils.rest.TraceSampler;
+import org.galatea.starter.utils.trace.TraceStore;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.actuate.trace.http.HttpExchangeTracer;
 import org.springframework.boot.actuate.trace.http.Include;
 import org.springframework.boot.actuate.web.trace.servlet.HttpTraceFilter;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.embedded.jetty.JettyServletWebServerFactory;
+import org.springframework.boot.web.server.WebServerFactoryCustomizer;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.AsyncTaskExecutor;
 import org.springframework.http.MediaType;
 import org.springframework.http.converter.HttpMessageConverter;
 import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
 import org.springframework.http.converter.protobuf.ProtobufHttpMessageConverter;
 import org.springframework.http.converter.xml.Jaxb2RootElementHttpMessageConverter;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.web.servlet.config.annotation.AsyncSupportConfigurer;
 import org.springframework.web.servlet.config.annotation.ContentNegotiationConfigurer;
 import org.springframework.web.servlet.config.annotation.EnableWebMvc;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
@@ -25,7 +49,7 @@ import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
 @Slf4j
 @Configuration
 @EnableWebMvc
-public class MvcConfig implements WebMvcConfigurer {
+public class MvcConfig implements WebMvcConfigurer, DisposableBean {
 
   public static final MediaType TEXT_CSV = new MediaType("text", "csv");
   public static final String TEXT_CSV_VALUE = "text/csv";
@@ -33,23 +57,139 @@ public class MvcConfig implements WebMvcConfigurer {
   public static final MediaType APPLICATION_EXCEL = new MediaType("application", "vnd.ms-excel");
   public static final String APPLICATION_EXCEL_VALUE = "application/vnd.ms-excel";
 
+  public static final MediaType APPLICATION_ARROW_STREAM =
+      new MediaType("application", "vnd.apache.arrow.stream");
+  public static final String APPLICATION_ARROW_STREAM_VALUE = "application/vnd.apache.arrow.stream";
+
+  @Value("${mvc.async.request-timeout-millis}")
+  private long asyncRequestTimeoutMillis;
+
+  @Value("${mvc.async.pool-size}")
+  private int asyncPoolSize;
+
+  @Value("${mvc.async.queue-capacity}")
+  private int asyncQueueCapacity;
+
+  private ThreadPoolTaskExecutor mvcAsyncTaskExecutor;
+
+  private final ObjectMapper objectMapper;
+
+  /**
+   * Creates the config with the ObjectMapper Boot has built, for the JSON message converter.
+   */
+  public MvcConfig(final ObjectMapper objectMapper) {
+    this.objectMapper = objectMapper;
+  }
+
   /**
    * This is used to trace web requests and store that trace info.
    *
    * @return the trace filter
    */
   @Bean
-  public HttpTraceFilter httpTraceFilter() {
-    return new FuseHttpTraceFilter(fuseHttpTraceRepository(), httpExchangeTracer(),
-        path -> path.startsWith("/trace"));
+  public HttpTraceFilter httpTraceFilter(
+      @Value("${mvc.exportMissionsPath}") final String exportMissionsPath,
+      @Value("${mvc.uploadAgreementsPath}") final String uploadAgreementsPath,
+      @Value("${mvc.max-size-trace-payload}") final int maxSizeTracePayload,
+      final FuseHttpTraceRepository fuseHttpTraceRepository, final TraceSampler traceSampler,
+      final RequestIdGenerator requestIdGenerator,
+      final ObjectProvider<SlowRequestProfiler> slowRequestProfiler) {
+    // Export responses and upload requests can be far too big to cache for tracing, so they're
+    // streamed, with the trace keeping a copy of the start of the response
+    FuseHttpTraceFilter filter = new FuseHttpTraceFilter(fuseHttpTraceRepository,
+        httpExchangeTracer(), path -> path.startsWith("/trace"),
+        path -> path.startsWith(exportMissionsPath) || path.startsWith(uploadAgreementsPath),
+        traceSampler);
+    filter.setMaxPayloadLength(maxSizeTracePayload);
+    filter.setRequestIdGenerator(requestIdGenerator);
+    filter.setProfiler(slowRequestProfiler.getIfAvailable());
+    return filter;
+  }
+
+  /**
+   * Samples the stacks of slow requests so their traces show where the time went, see
+   * mvc.trace.profiler.
+   */
+  @Bean
+  @ConditionalOnProperty(value = "mvc.trace.profiler.enabled", havingValue = "true")
+  public SlowRequestProfiler slowRequestProfiler(
+      @Value("${mvc.trace.profiler.threshold-millis}") final long thresholdMillis,
+      @Value("${mvc.trace.profiler.interval-millis}") final long intervalMillis,
+      @Value("${mvc.trace.profiler.max-depth}") final int maxDepth,
+      @Value("${mvc.trace.profiler.max-samples}") final int maxSamples) {
+    return new SlowRequestProfiler(Duration.ofMillis(thresholdMillis),
+        Duration.ofMillis(intervalMillis), maxDepth, maxSamples);
+  }
+
+  /**
+   * Keeps a sliding window latency distribution for every endpoint (uri pattern, method and status)
+   * in actuator's request timers, see mvc.metrics.
+   */
+  @Bean
+  public MeterFilter requestLatencyDistribution(
+      @Value("${management.metrics.web.server.requests-metric-name:http.server.requests}")
+      final String requestsMetricName,
+      @Value("${mvc.metrics.percentiles}") final double[] percentiles,
+      @Value("${mvc.metrics.slo-millis}") final long[] sloMillis,
+      @Value("${mvc.metrics.window-seconds}") final long windowSeconds,
+      @Value("${mvc.metrics.buffer-length}") final int bufferLength) {
+    return new LatencyDistributionFilter(requestsMetricName, percentiles, sloMillis,
+        Duration.ofSeconds(windowSeconds), bufferLength);
+  }
+
+  /**
+   * Decides which requests are traced, see mvc.trace.sampling.
+   */
+  @Bean
+  public TraceSampler traceSampler(
+      @Value("${mvc.trace.sampling.rate}") final double rate,
+      @Value("${mvc.trace.sampling.path-rates:}") final List<String> pathRates,
+      @Value("${mvc.trace.sampling.errors}") final boolean traceErrors) {
+    return new TraceSampler(rate, pathRates, traceErrors);
   }
 
   /**
-   * Repository for storing trace info.
+   * Adds Afterburner to the ObjectMapper Boot builds from spring.jackson.* and the customizers,
+   * which the JSON message converter and anything else that writes JSON responses share.
+   * Afterburner swaps the reflective getter calls for generated bytecode. That matters most on the
+   * busiest endpoints such as getMission; see JsonCodecBenchmark for the difference it makes.
+   *
+   * <p>Static so it can be created without this config, which needs the finished ObjectMapper.
    */
   @Bean
-  public FuseHttpTraceRepository fuseHttpTraceRepository() {
-    return new FuseHttpTraceRepository(new ObjectMapper());
+  public static Module afterburnerModule() {
+    return new AfterburnerModule();
+  }
+
+  /**
+   * Repository for storing trace info. Traces are written on a background thread, see
+   * mvc.trace.buffer.
+   */
+  @Bean
+  public FuseHttpTraceRepository fuseHttpTraceRepository(
+      @Value("${mvc.trace.buffer.capacity}") final int capacity,
+      @Value("${mvc.trace.buffer.batch-size}") final int batchSize,
+      final ObjectProvider<MeterRegistry> meterRegistry, final TraceStore traceStore) {
+    // Slices like @WebMvcTest load this config without the metrics auto-configuration
+    return new FuseHttpTraceRepository(new ObjectMapper(), capacity, batchSize,
+        meterRegistry.getIfAvailable(SimpleMeterRegistry::new), traceStore);
+  }
+
+  /**
+   * Keeps traces on disk to be searched at mvc.traceSearchPath, see mvc.trace.store.
+   */
+  @Bean
+  public TraceStore traceStore(
+      @Value("${mvc.trace.store.directory}") final String directory,
+      @Value("${mvc.trace.store.segment-size-mb}") final int segmentSizeMb,
+      @Value("${mvc.trace.store.segment-minutes}") final long segmentMinutes,
+      @Value("${mvc.trace.store.retention-hours}") final long retentionHours,
+      @Value("${mvc.trace.store.max-segments}") final int maxSegments,
+      @Value("${mvc.trace.store.max-indexed-traces}") final int maxIndexedTraces)
+      throws IOException {
+    return new TraceStore(Paths.get(directory), segmentSizeMb * 1024 * 1024,
+        Duration.ofMinutes(segmentMinutes), Duration.ofHours(retentionHours), maxSegments,
+        maxIndexedTraces);
   }
 
   /**
@@ -63,6 +203,56 @@ public class MvcConfig implements WebMvcConfigurer {
     return new HttpExchangeTracer(Sets.newHashSet(Include.values()));
   }
 
+  /**
+   * Sets the deflate level of compressed responses. Spring Boot turns on compression and decides
+   * what gets compressed (see server.compression), but has no setting for the level. Lower levels
+   * cost less CPU per byte for a somewhat bigger response; see CompressionBenchmark.
+   */
+  @Bean
+  public WebServerFactoryCustomizer<JettyServletWebServerFactory> compressionLevelCustomizer(
+      @Value("${mvc.compression.level}") final int compressionLevel) {
+    // Server customizers run after Boot has wrapped the handlers, so the GzipHandler exists by now
+    return factory -> factory.addServerCustomizers(server -> {
+      GzipHandler gzipHandler = server.getChildHandlerByClass(GzipHandler.class);
+      if (gzipHandler != null) {
+        gzipHandler.setCompressionLevel(compressionLevel);
+      }
+    });
+  }
+
+  @Override
+  public void configureAsyncSupport(final AsyncSupportConfigurer configurer) {
+    // Exporting every mission can take a while, longer than the servlet container's default
+    configurer.setDefaultTimeout(asyncRequestTimeoutMillis);
+    configurer.setTaskExecutor(mvcAsyncTaskExecutor());
+  }
+
+  @Override
+  public synchronized void destroy() {
+    if (mvcAsyncTaskExecutor != null) {
+      mvcAsyncTaskExecutor.shutdown();
+    }
+  }
+
+  /*
+   * Executor that writes streamed response bodies (e.g. the mission exports). Bounded, so a burst
+   * of exports can't each take a database connection and a thread at once: once the queue is full
+   * too the export is rejected, which RestExceptionHandler turns into a 503. Deliberately not a
+   * bean, since an executor bean would replace Boot's applicationTaskExecutor for everything else.
+   */
+  private synchronized AsyncTaskExecutor mvcAsyncTaskExecutor() {
+    if (mvcAsyncTaskExecutor == null) {
+      ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+      executor.setCorePoolSize(asyncPoolSize);
+      executor.setMaxPoolSize(asyncPoolSize);
+      executor.setQueueCapacity(asyncQueueCapacity);
+      executor.setThreadNamePrefix("mvc-async-");
+      executor.initialize();
+      mvcAsyncTaskExecutor = executor;
+    }
+    return mvcAsyncTaskExecutor;
+  }
+
   @Override
   public void configureContentNegotiation(final ContentNegotiationConfigurer configurer) {
     configurer.favorParameter(true) // give precedence to url request parameters
@@ -78,6 +268,7 @@ public class MvcConfig implements WebMvcConfigurer {
     configurer.mediaType("xml", MediaType.APPLICATION_XML);
     configurer.mediaType("csv", TEXT_CSV);
     configurer.mediaType("xlsx", APPLICATION_EXCEL);
+    configurer.mediaType("arrow", APPLICATION_ARROW_STREAM);
 
   }
 
@@ -86,10 +277,11 @@ public class MvcConfig implements WebMvcConfigurer {
     // The Protobuf converter MUST be added first, otherwise Jackson will try and handle our
     // protobuf to JSON conversion (and will of course, fail).
     converters.add(new ProtobufHttpMessageConverter()); // Protobuf, XML & JSON supported
-    converters.add(new MappingJackson2HttpMessageConverter()); // JSON
+    converters.add(new MappingJackson2HttpMessageConverter(objectMapper)); // JSON
     converters.add(new Jaxb2RootElementHttpMessageConverter()); // XML
     converters.add(new SettlementMissionCsvConverter());
     converters.add(new SettlementMissionXlsxConverter());
+    converters.add(new SettlementMissionArrowConverter());
   }
 
 }
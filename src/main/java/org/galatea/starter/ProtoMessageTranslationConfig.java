@@ -26,18 +26,26 @@ public class ProtoMessageTranslationConfig {
    */
   @Bean
   public ITranslator<byte[], TradeAgreement> tradeAgreementBinaryProtobufTranslator(
+      final ITranslator<byte[], TradeAgreementProtoMessage> tradeAgreementProtoParser,
       final ITranslator<TradeAgreementProtoMessage, TradeAgreement>
           tradeAgreementProtoMessageTranslator) {
-    return msg -> {
-      TradeAgreementProtoMessage message;
+    return msg -> tradeAgreementProtoMessageTranslator.translate(
+        tradeAgreementProtoParser.translate(msg));
+  }
 
+  /**
+   * Implements the first of the two steps above on its own: parsing a serialized
+   * TradeAgreementProtoMessage. Exposed separately so callers can time the parse independently of
+   * the translation.
+   */
+  @Bean
+  public ITranslator<byte[], TradeAgreementProtoMessage> tradeAgreementProtoParser() {
+    return msg -> {
       try {
-        message = TradeAgreementProtoMessage.parseFrom(msg);
+        return TradeAgreementProtoMessage.parseFrom(msg);
       } catch (InvalidProtocolBufferException e) {
         throw new TranslationException("Could not translate the message to a trade agreement.", e);
       }
-
-      return tradeAgreementProtoMessageTranslator.translate(message);
     };
   }
 
@@ -0,0 +1,57 @@
+package org.galatea.starter.domain;
+
+import java.time.Instant;
+import javax.persistence.Entity;
+import javax.persistence.EnumType;
+import javax.persistence.Enumerated;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import javax.persistence.Lob;
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.NonNull;
+
+/**
+ * A row in the mission event outbox. Rows are written in the same transaction as the mission change
+ * they describe and are removed once they have been published, so an event can't be lost between
+ * the database commit and the JMS send.
+ */
+@AllArgsConstructor(access = AccessLevel.PRIVATE) // For builder
+@NoArgsConstructor(access = AccessLevel.PRIVATE) // For spring and jackson
+@Builder
+@Data
+@Entity
+public class MissionEvent {
+
+  @Id
+  @GeneratedValue(strategy = GenerationType.AUTO)
+  protected Long id;
+
+  @NonNull
+  @Enumerated(EnumType.STRING)
+  protected MissionEventType eventType;
+
+  @NonNull
+  protected Long missionId;
+
+  /* Serialized SettlementMissionProtoMessage as of the time of the change */
+  @NonNull
+  @Lob
+  protected byte[] payload;
+
+  @NonNull
+  protected Instant createdAt;
+
+  /* Ids of the request that made the change, if it was made by one */
+  protected String internalRequestId;
+
+  protected String externalRequestId;
+
+  /* Set when the payload can't be read, so the publisher leaves the row alone */
+  @Builder.Default
+  protected boolean poisoned = false;
+}
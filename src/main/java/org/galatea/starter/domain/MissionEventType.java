@@ -0,0 +1,9 @@
+package org.galatea.starter.domain;
+
+public enum MissionEventType {
+
+  CREATED,
+  UPDATED,
+  DELETED
+
+}
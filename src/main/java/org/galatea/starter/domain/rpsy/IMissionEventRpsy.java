@@ -0,0 +1,45 @@
+package org.galatea.starter.domain.rpsy;
+
+import java.util.Collection;
+import java.util.List;
+import javax.persistence.LockModeType;
+import javax.persistence.QueryHint;
+import org.galatea.starter.domain.MissionEvent;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+public interface IMissionEventRpsy extends CrudRepository<MissionEvent, Long> {
+
+  /**
+   * Retrieves and locks the oldest pending events that aren't poisoned, up to the page size. Rows
+   * already locked by another transaction are skipped (a lock timeout of -2 is Hibernate's
+   * SKIP_LOCKED) on databases that support it; elsewhere this waits for them instead. Must be
+   * called in a transaction, which holds the locks.
+   */
+  @Lock(LockModeType.PESSIMISTIC_WRITE)
+  @QueryHints(@QueryHint(name = "javax.persistence.lock.timeout", value = "-2"))
+  @Query("select e from MissionEvent e where e.poisoned = false order by e.id asc")
+  List<MissionEvent> findPendingForUpdate(Pageable pageable);
+
+  /**
+   * Sets aside events whose payload can't be read, so they no longer hold up the rest.
+   */
+  @Modifying
+  @Transactional
+  @Query("update MissionEvent e set e.poisoned = true where e.id in :ids")
+  int markPoisoned(@Param("ids") Collection<Long> ids);
+
+  /**
+   * Removes the given events in a single statement once they have been published.
+   */
+  @Modifying
+  @Transactional
+  @Query("delete from MissionEvent e where e.id in :ids")
+  int deleteByIdIn(@Param("ids") Collection<Long> ids);
+}
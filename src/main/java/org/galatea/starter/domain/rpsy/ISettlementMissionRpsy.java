@@ -2,9 +2,13 @@ package org.galatea.starter.domain.rpsy;
 
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
+import javax.persistence.QueryHint;
 import org.galatea.starter.domain.SettlementMission;
 import org.springframework.cache.annotation.CacheEvict;
 import org.springframework.cache.annotation.Cacheable;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.CrudRepository;
 
 public interface ISettlementMissionRpsy extends CrudRepository<SettlementMission, Long> {
@@ -14,6 +18,20 @@ public interface ISettlementMissionRpsy extends CrudRepository<SettlementMission
    */
   List<SettlementMission> findByDepot(String depot);
 
+  /**
+   * Streams every mission, ordered by id, reading them from the database a fetch-size batch at a
+   * time rather than all at once. The stream must be consumed inside a transaction and closed
+   * afterwards. Note that MySQL's driver ignores the fetch size unless useCursorFetch=true is set
+   * on the connection URL.
+   */
+  @Query("select m from SettlementMission m order by m.id")
+  @QueryHints({
+      @QueryHint(name = org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE, value = "1000"),
+      // We're only reading, so don't keep snapshots for dirty checking
+      @QueryHint(name = org.hibernate.jpa.QueryHints.HINT_READONLY, value = "true"),
+      @QueryHint(name = org.hibernate.jpa.QueryHints.HINT_CACHEABLE, value = "false")})
+  Stream<SettlementMission> streamAllOrderedById();
+
   @Override
   @Cacheable(cacheNames = "missions", sync = true)
   Optional<SettlementMission> findById(Long id);
@@ -0,0 +1,103 @@
+package org.galatea.starter.entrypoint;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.function.Consumer;
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import net.sf.aspect4log.Log;
+import net.sf.aspect4log.Log.Level;
+import org.galatea.starter.MvcConfig;
+import org.galatea.starter.domain.TradeAgreement;
+import org.galatea.starter.entrypoint.messagecontracts.SettlementUploadResponseMessage;
+import org.galatea.starter.entrypoint.messagecontracts.TradeAgreementMessage;
+import org.galatea.starter.service.AgreementUploadService;
+import org.galatea.starter.service.AgreementUploadService.AgreementSource;
+import org.galatea.starter.service.AgreementUploadService.UploadResult;
+import org.galatea.starter.utils.http.converter.CsvSerializer;
+import org.galatea.starter.utils.http.converter.XlsxDeserializer;
+import org.galatea.starter.utils.translation.ITranslator;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+/**
+ * REST controller for spawning missions from a file of trade agreements, e.g. a spreadsheet sent
+ * in by an operations team. The file is the raw request body, with one agreement per row under a
+ * header row naming the TradeAgreementMessage fields (instrument, internalParty, externalParty,
+ * buySell, qty).
+ *
+ * <p>Agreements are read from the body as it arrives and spawned in chunks (see
+ * AgreementUploadService), so uploads of any size are handled in bounded memory. An XLSX upload
+ * has to be spooled to disk first, so it's limited to mvc.upload.max-xlsx-bytes (413 if over).
+ * If an upload fails part way, the response says how many agreements were saved before it did.
+ */
+@RequiredArgsConstructor
+@Slf4j
+@Log(enterLevel = Level.INFO, exitLevel = Level.INFO)
+@RestController
+public class AgreementUploadRestController extends BaseRestController {
+
+  /* The registered media type for XLSX, which clients may send instead of APPLICATION_EXCEL */
+  private static final String APPLICATION_XLSX_VALUE =
+      "application/vnd.openxmlformats-officedocument.spreadsheetml.sheet";
+
+  @NonNull
+  AgreementUploadService agreementUploadService;
+
+  @NonNull
+  ITranslator<TradeAgreementMessage, TradeAgreement> tradeAgreementMessageTranslator;
+
+  /* XLSX uploads are spooled to disk before they're read, see XlsxDeserializer */
+  @Value("${mvc.upload.max-xlsx-bytes}")
+  private long maxXlsxBytes;
+
+  /**
+   * Spawn missions from a CSV document of trade agreements.
+   */
+  // InputStream gives us the raw request body, without it being read into memory first
+  @PostMapping(value = "${mvc.uploadAgreementsPath}", consumes = MvcConfig.TEXT_CSV_VALUE,
+      produces = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_XML_VALUE})
+  public SettlementUploadResponseMessage uploadCsv(final InputStream body,
+      @RequestParam(value = "requestId", required = false) final String requestId)
+      throws IOException {
+    // if an external request id was provided, grab it
+    processRequestId(requestId);
+
+    return upload(agreements -> CsvSerializer.deserializeFromCsv(body,
+        TradeAgreementMessage.class, translating(agreements)));
+  }
+
+  /**
+   * Spawn missions from an XLSX spreadsheet of trade agreements. Only the first sheet is read.
+   */
+  @PostMapping(value = "${mvc.uploadAgreementsPath}",
+      consumes = {MvcConfig.APPLICATION_EXCEL_VALUE, APPLICATION_XLSX_VALUE},
+      produces = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_XML_VALUE})
+  public SettlementUploadResponseMessage uploadXlsx(final InputStream body,
+      @RequestParam(value = "requestId", required = false) final String requestId)
+      throws IOException {
+    // if an external request id was provided, grab it
+    processRequestId(requestId);
+
+    return upload(agreements -> XlsxDeserializer.deserializeFromXlsx(body, maxXlsxBytes,
+        TradeAgreementMessage.class, translating(agreements)));
+  }
+
+  private SettlementUploadResponseMessage upload(final AgreementSource source)
+      throws IOException {
+    UploadResult result = agreementUploadService.spawnMissions(source);
+    return SettlementUploadResponseMessage.builder()
+        .agreementsRead(result.getAgreements())
+        .missionsSpawned(result.getMissions())
+        .build();
+  }
+
+  private Consumer<TradeAgreementMessage> translating(
+      final Consumer<TradeAgreement> agreements) {
+    return message -> agreements.accept(tradeAgreementMessageTranslator.translate(message));
+  }
+}
@@ -16,6 +16,9 @@ public abstract class BaseRestController {
 
   public static final String EXTERNAL_REQUEST_ID = "external-request-id";
 
+  /* MDC key of the id we give each request, see RequestIdGenerator */
+  public static final String INTERNAL_REQUEST_ID = "internal-request-id";
+
   /**
    * Adds the specified requestId to the context for this request (if not null).
    */
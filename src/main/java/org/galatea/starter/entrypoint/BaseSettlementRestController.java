@@ -1,9 +1,13 @@
 package org.galatea.starter.entrypoint;
 
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Optional;
 import java.util.Set;
 import java.util.stream.Collectors;
+import javax.servlet.http.HttpServletResponse;
 import lombok.AccessLevel;
 import lombok.NonNull;
 import lombok.RequiredArgsConstructor;
@@ -12,7 +16,16 @@ import net.sf.aspect4log.Log;
 import net.sf.aspect4log.Log.Level;
 import org.galatea.starter.domain.SettlementMission;
 import org.galatea.starter.domain.TradeAgreement;
+import org.galatea.starter.entrypoint.exception.PreconditionFailedException;
 import org.galatea.starter.service.SettlementService;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import org.springframework.web.HttpMediaTypeNotAcceptableException;
+import org.springframework.web.accept.ContentNegotiationManager;
+import org.springframework.web.context.request.NativeWebRequest;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.servlet.HandlerMapping;
 
 /**
  * Implements a base class for settlement rest controllers to avoid duplicating the logic of calling
@@ -26,6 +39,10 @@ public abstract class BaseSettlementRestController extends BaseRestController {
   @NonNull
   SettlementService settlementService;
 
+  /* Works out which format a GET will be answered in, for its ETag */
+  @NonNull
+  ContentNegotiationManager contentNegotiationManager;
+
   /**
    * Invokes the settlement service to spawn missions for the specified trade agreements.
    */
@@ -53,16 +70,152 @@ public abstract class BaseSettlementRestController extends BaseRestController {
     return settlementService.findMissions(ids);
   }
 
+  /**
+   * Parses a comma-separated list of mission ids, as taken by the getMissions endpoints.
+   */
+  protected static List<Long> parseIds(final String ids) {
+    return Arrays.stream(ids.split(","))
+        .map(Long::parseLong)
+        .collect(Collectors.toList());
+  }
+
+  /**
+   * Works out which version of a mission an If-Match header allows an update to. The version is
+   * passed on to the update, which only goes ahead if the mission is still at it, so a change that
+   * lands between this check and the save is caught too. A missing header, or *, allows any
+   * version.
+   *
+   * @return the version the mission must be at when it's saved, or null for any version
+   * @throws PreconditionFailedException if the mission doesn't exist or none of the tags match
+   */
+  protected Long ifMatchVersion(final Long id, final String ifMatch) {
+    if (ifMatch == null) {
+      return null;
+    }
+
+    Optional<SettlementMission> current = getMissionInternal(id);
+    if (current.isPresent()) {
+      // If-Match uses strong comparison, so weak (W/) tags never match
+      List<String> tags = Arrays.stream(ifMatch.split(","))
+          .map(String::trim)
+          .collect(Collectors.toList());
+      String tag = missionETag(current.get().getId(), current.get().getVersion());
+      // The tags handed out end with the format, and any of them will do
+      String formatTagStart = tag.substring(0, tag.length() - 1) + "-";
+      if (tags.stream().anyMatch(given -> given.equals(tag) || given.startsWith(formatTagStart))) {
+        return current.get().getVersion();
+      }
+      if (tags.contains("*")) {
+        return null;
+      }
+    }
+    throw new PreconditionFailedException(SettlementMission.class, id.toString(), ifMatch);
+  }
+
+  /**
+   * Sets the ETag for a mission on the response, and checks it against the request's
+   * If-None-Match. The version is bumped on every change, so the id and version identify its
+   * content.
+   *
+   * <p>The same URL returns a mission in whichever format the Accept header (or format parameter)
+   * asks for, and a strong ETag has to differ between them, or a cache revalidating its copy in one
+   * format could be told by a 304 that its copy in another is current. So the tag ends with the
+   * format it's returned in, e.g. "1-3-json", and the response says it varies by Accept.
+   *
+   * @return true if the caller already has this version, in which case the status is set to 304
+   *     and nothing more should be written
+   */
+  protected boolean checkMissionNotModified(final SettlementMission mission,
+      final NativeWebRequest request) {
+    return checkNotModified(missionETag(mission.getId(), mission.getVersion()), request);
+  }
+
+  /**
+   * Sets the ETag for a list of missions on the response, and checks it against the request's
+   * If-None-Match. The tag changes if any mission changes or the list has different missions in
+   * it, and like a single mission's it ends with the format.
+   *
+   * @return true if the caller already has these versions, see checkMissionNotModified
+   */
+  protected boolean checkMissionsNotModified(final List<SettlementMission> missions,
+      final NativeWebRequest request) {
+    Hasher hasher = Hashing.murmur3_128().newHasher().putInt(missions.size());
+    for (SettlementMission mission : missions) {
+      hasher.putLong(mission.getId()).putLong(mission.getVersion());
+    }
+    return checkNotModified("\"" + hasher.hash() + "\"", request);
+  }
+
+  private static String missionETag(final Long id, final Long version) {
+    return "\"" + id + "-" + version + "\"";
+  }
+
+  private boolean checkNotModified(final String tag, final NativeWebRequest request) {
+    // Caches have to tell the formats apart too, 304s included
+    HttpServletResponse response = request.getNativeResponse(HttpServletResponse.class);
+    if (response != null) {
+      response.addHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT);
+    }
+
+    MediaType format = negotiatedType(request);
+    String etag = format == null ? tag
+        : tag.substring(0, tag.length() - 1) + "-" + format.getSubtype() + "\"";
+    return request.checkNotModified(etag);
+  }
+
+  /*
+   * The type the response body will be written as: the first of the handler's producible types
+   * that the request accepts, taking the accepted types best first. This is the choice Spring MVC
+   * makes when it writes the body, made early so it can go in the ETag. Null if none is acceptable,
+   * which fails with a 406 once the body is written anyway.
+   */
+  @SuppressWarnings("unchecked")
+  private MediaType negotiatedType(final NativeWebRequest request) {
+    Set<MediaType> producible = (Set<MediaType>) request.getAttribute(
+        HandlerMapping.PRODUCIBLE_MEDIA_TYPES_ATTRIBUTE, RequestAttributes.SCOPE_REQUEST);
+    if (producible == null) {
+      return null;
+    }
+
+    List<MediaType> accepted;
+    try {
+      accepted = contentNegotiationManager.resolveMediaTypes(request);
+    } catch (HttpMediaTypeNotAcceptableException e) {
+      return null;
+    }
+    for (MediaType acceptedType : accepted) {
+      for (MediaType producibleType : producible) {
+        if (acceptedType.isCompatibleWith(producibleType)) {
+          return producibleType;
+        }
+      }
+    }
+    return null;
+  }
+
   /**
    * Updates settlement mission, if it exists.
+   *
+   * @param expectedVersion the version from ifMatchVersion, or null for any version
+   * @throws PreconditionFailedException if the mission is no longer at the expected version
    */
   protected Optional<SettlementMission> updateMissionInternal(final Long id,
-      final SettlementMission mission) {
-    if (settlementService.missionExists(id)) {
-      return settlementService.updateMission(id, mission);
-    } else {
+      final SettlementMission mission, final Long expectedVersion) {
+    if (!settlementService.missionExists(id)) {
       return Optional.empty();
     }
+
+    try {
+      return settlementService.updateMission(id, mission, expectedVersion);
+    } catch (ObjectOptimisticLockingFailureException e) {
+      if (expectedVersion == null) {
+        // Just the version in the body being out of date, which is a conflict
+        throw e;
+      }
+      // Changed since the If-Match header was checked
+      throw new PreconditionFailedException(SettlementMission.class, id.toString(),
+          missionETag(id, expectedVersion), e);
+    }
   }
 
   /**
@@ -0,0 +1,138 @@
+package org.galatea.starter.entrypoint;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import net.sf.aspect4log.Log;
+import net.sf.aspect4log.Log.Level;
+import org.galatea.starter.MvcConfig;
+import org.galatea.starter.domain.SettlementMission;
+import org.galatea.starter.entrypoint.messagecontracts.ProtobufMessages.SettlementMissionProtoMessage;
+import org.galatea.starter.service.MissionExportService;
+import org.galatea.starter.utils.http.converter.ArrowSerializer;
+import org.galatea.starter.utils.http.converter.CsvSerializer;
+import org.galatea.starter.utils.http.converter.ProtobufSerializer;
+import org.galatea.starter.utils.http.converter.XlsxSerializer;
+import org.galatea.starter.utils.translation.ITranslator;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+/**
+ * REST controller for exporting every mission in one go, in JSON, CSV, XLSX, Arrow or protobuf.
+ *
+ * <p>Unlike getMissions, which loads the requested missions and then converts them, these
+ * endpoints stream missions from the database and write each one to the response as it's read.
+ * The response body is written on an MVC async thread after the handler returns (see
+ * StreamingResponseBody), so heap use stays flat however many missions there are.
+ */
+@RequiredArgsConstructor
+@Slf4j
+@Log(enterLevel = Level.INFO, exitLevel = Level.INFO)
+@RestController
+public class MissionExportRestController extends BaseRestController {
+
+  private static final String APPLICATION_X_PROTOBUF = "application/x-protobuf";
+
+  @NonNull
+  MissionExportService missionExportService;
+
+  @NonNull
+  ITranslator<SettlementMission, SettlementMissionProtoMessage> settlementMissionProtoTranslator;
+
+  @NonNull
+  ObjectMapper objectMapper;
+
+  /**
+   * Export all missions as JSON, in the same shape as getMissions.
+   */
+  @GetMapping(value = "${mvc.exportMissionsPath}", produces = MediaType.APPLICATION_JSON_VALUE)
+  public ResponseEntity<StreamingResponseBody> exportMissionsJson(
+      @RequestParam(value = "requestId", required = false) final String requestId) {
+    processRequestId(requestId);
+
+    return export(null, out -> missionExportService.exportAll(missions -> {
+      // Leave the response stream open, the container will close it
+      try (JsonGenerator json = objectMapper.getFactory().createGenerator(out)
+          .disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET)) {
+        json.writeStartObject();
+        json.writeArrayFieldStart("settlementMissions");
+        for (SettlementMission mission : missions) {
+          json.writeObject(mission);
+        }
+        json.writeEndArray();
+        json.writeEndObject();
+      }
+    }));
+  }
+
+  /**
+   * Export all missions as a CSV document.
+   */
+  @GetMapping(value = "${mvc.exportMissionsPath}", produces = MvcConfig.TEXT_CSV_VALUE)
+  public ResponseEntity<StreamingResponseBody> exportMissionsCsv(
+      @RequestParam(value = "requestId", required = false) final String requestId) {
+    processRequestId(requestId);
+
+    return export("SettlementMissions.csv", out -> missionExportService.exportAll(
+        missions -> CsvSerializer.serializeToCsv(missions, SettlementMission.class, out)));
+  }
+
+  /**
+   * Export all missions as an XLSX spreadsheet.
+   */
+  @GetMapping(value = "${mvc.exportMissionsPath}", produces = MvcConfig.APPLICATION_EXCEL_VALUE)
+  public ResponseEntity<StreamingResponseBody> exportMissionsXlsx(
+      @RequestParam(value = "requestId", required = false) final String requestId) {
+    processRequestId(requestId);
+
+    return export("SettlementMissions.xlsx", out -> missionExportService.exportAll(
+        missions -> XlsxSerializer.serializeToXlsx(missions, SettlementMission.class, out)));
+  }
+
+  /**
+   * Export all missions as an Apache Arrow IPC stream, written in column batches.
+   */
+  @GetMapping(value = "${mvc.exportMissionsPath}",
+      produces = MvcConfig.APPLICATION_ARROW_STREAM_VALUE)
+  public ResponseEntity<StreamingResponseBody> exportMissionsArrow(
+      @RequestParam(value = "requestId", required = false) final String requestId) {
+    processRequestId(requestId);
+
+    return export("SettlementMissions.arrows", out -> missionExportService.exportAll(
+        missions -> ArrowSerializer.serializeToArrow(missions, out)));
+  }
+
+  /**
+   * Export all missions as protobuf. The body is length-delimited SettlementMissionProtoMessages,
+   * to be read back with SettlementMissionProtoMessage.parseDelimitedFrom (see
+   * ProtobufSerializer).
+   */
+  @GetMapping(value = "${mvc.exportMissionsPath}", produces = APPLICATION_X_PROTOBUF)
+  public ResponseEntity<StreamingResponseBody> exportMissionsProto(
+      @RequestParam(value = "requestId", required = false) final String requestId) {
+    processRequestId(requestId);
+
+    return export(null, out -> missionExportService.exportAll(
+        missions -> ProtobufSerializer.serializeDelimited(missions,
+            settlementMissionProtoTranslator, out)));
+  }
+
+  /*
+   * Wrap the body, marking it as a download if a file name is given.
+   */
+  private static ResponseEntity<StreamingResponseBody> export(final String fileName,
+      final StreamingResponseBody body) {
+    ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+    if (fileName != null) {
+      response.header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=" + fileName);
+    }
+    return response.body(body);
+  }
+}
@@ -1,9 +1,14 @@
 package org.galatea.starter.entrypoint;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
+import java.io.IOException;
+import java.util.concurrent.RejectedExecutionException;
 import javax.validation.ConstraintViolationException;
 import lombok.extern.slf4j.Slf4j;
 import org.galatea.starter.entrypoint.exception.EntityNotFoundException;
+import org.galatea.starter.entrypoint.exception.PartialUploadException;
+import org.galatea.starter.entrypoint.exception.PayloadTooLargeException;
+import org.galatea.starter.entrypoint.exception.PreconditionFailedException;
 import org.springframework.dao.DataAccessException;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
@@ -73,6 +78,51 @@ public class RestExceptionHandler {
     return buildResponseEntity(error);
   }
 
+  @ExceptionHandler(PreconditionFailedException.class)
+  protected ResponseEntity<Object> handlePreconditionFailed(
+      final PreconditionFailedException exception) {
+    log.debug("Request precondition failed", exception);
+
+    ApiError error = new ApiError(HttpStatus.PRECONDITION_FAILED, exception.getMessage());
+    return buildResponseEntity(error);
+  }
+
+  @ExceptionHandler(PartialUploadException.class)
+  protected ResponseEntity<Object> handlePartialUpload(final PartialUploadException exception) {
+    // A bad row or an unreadable file is the caller's to fix, anything else is ours
+    boolean badInput = exception.getCause() instanceof ConstraintViolationException
+        || exception.getCause() instanceof IOException;
+    if (badInput) {
+      log.debug("Upload stopped by invalid input", exception);
+    } else {
+      log.error("Upload failed part way through", exception);
+    }
+
+    // The message says how many agreements were saved, so the caller can send the rest again
+    ApiError error = new ApiError(badInput ? HttpStatus.BAD_REQUEST
+        : HttpStatus.INTERNAL_SERVER_ERROR, exception.getMessage());
+    return buildResponseEntity(error);
+  }
+
+  @ExceptionHandler(PayloadTooLargeException.class)
+  protected ResponseEntity<Object> handlePayloadTooLarge(
+      final PayloadTooLargeException exception) {
+    log.debug("Request body too large", exception);
+
+    ApiError error = new ApiError(HttpStatus.PAYLOAD_TOO_LARGE, exception.getMessage());
+    return buildResponseEntity(error);
+  }
+
+  @ExceptionHandler(RejectedExecutionException.class)
+  protected ResponseEntity<Object> handleRejectedExecution(
+      final RejectedExecutionException exception) {
+    log.warn("Too busy to take the request", exception);
+
+    ApiError error = new ApiError(HttpStatus.SERVICE_UNAVAILABLE,
+        "Too many requests in progress. Please try again later.");
+    return buildResponseEntity(error);
+  }
+
   private ResponseEntity<Object> buildResponseEntity(final ApiError apiError) {
     return new ResponseEntity<>(apiError, apiError.getStatus());
   }
@@ -1,12 +1,20 @@
 package org.galatea.starter.entrypoint;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import java.util.Arrays;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+import javax.jms.Message;
 import lombok.NonNull;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.galatea.starter.domain.TradeAgreement;
+import org.galatea.starter.entrypoint.messagecontracts.ProtobufMessages.TradeAgreementProtoMessage;
 import org.galatea.starter.entrypoint.messagecontracts.TradeAgreementMessage;
+import org.galatea.starter.service.AgreementDispatcher;
 import org.galatea.starter.service.SettlementService;
 import org.galatea.starter.utils.translation.ITranslator;
 import org.springframework.jms.annotation.JmsListener;
@@ -17,26 +25,46 @@ import org.springframework.stereotype.Component;
 @Component
 public class SettlementJmsListener {
 
+  /* Timer recording how long each stage of handling an agreement takes, tagged by format/stage */
+  public static final String STAGE_TIMER = "jms.agreement.stage";
+
+  private static final String FORMAT_JSON = "json";
+  private static final String FORMAT_PROTO = "proto";
+
   @NonNull
   protected SettlementService settlementService;
 
   @NonNull
-  protected ITranslator<byte[], TradeAgreement> tradeAgreementProtoTranslator;
+  protected AgreementDispatcher agreementDispatcher;
+
+  @NonNull
+  protected ITranslator<byte[], TradeAgreementProtoMessage> tradeAgreementProtoParser;
+
+  @NonNull
+  protected ITranslator<TradeAgreementProtoMessage, TradeAgreement> tradeAgreementProtoTranslator;
 
   @NonNull
   protected ITranslator<TradeAgreementMessage, TradeAgreement> tradeAgreementMessageTranslator;
 
+  @NonNull
+  protected MeterRegistry meterRegistry;
+
+  private final Map<String, Timer> stageTimers = new ConcurrentHashMap<>();
+
   /**
    * Spawns Missions for any TradeAgreements pulled off the jms queue in JSON format.
    */
   @JmsListener(destination = "${jms.agreement-queue-json}",
       concurrency = "${jms.listener-concurrency}")
-  public void settleAgreementJson(final TradeAgreementMessage agreementMessage) {
+  public void settleAgreementJson(final TradeAgreementMessage agreementMessage,
+      final Message message) throws InterruptedException {
     log.info("Handling agreements {}", agreementMessage);
 
-    TradeAgreement agreement = tradeAgreementMessageTranslator.translate(agreementMessage);
-    Set<Long> missionIds = settlementService.spawnMissions(Arrays.asList(agreement));
-    log.info("Created missions {}", missionIds);
+    // The JSON payload has already been parsed by the message converter before we get here, so the
+    // parse cost for this format shows up in the container's processing time instead
+    TradeAgreement agreement = timeStage(FORMAT_JSON, "translate",
+        () -> tradeAgreementMessageTranslator.translate(agreementMessage));
+    settle(FORMAT_JSON, agreement, message);
   }
 
   /**
@@ -44,13 +72,42 @@ public class SettlementJmsListener {
    */
   @JmsListener(destination = "${jms.agreement-queue-proto}",
       concurrency = "${jms.listener-concurrency}")
-  public void settleAgreementProto(final byte[] message) {
+  public void settleAgreementProto(final byte[] body, final Message message)
+      throws InterruptedException {
     log.info("Received message. Translating.");
-    TradeAgreement agreement = tradeAgreementProtoTranslator.translate(message);
+    TradeAgreementProtoMessage protoMessage = timeStage(FORMAT_PROTO, "parse",
+        () -> tradeAgreementProtoParser.translate(body));
+    TradeAgreement agreement = timeStage(FORMAT_PROTO, "translate",
+        () -> tradeAgreementProtoTranslator.translate(protoMessage));
 
     log.info("Handling agreement {}", agreement);
+    settle(FORMAT_PROTO, agreement, message);
+  }
+
+  /*
+   * Hand the agreement to the settlement service. There's no separate validation stage: the
+   * service's method validation checks the agreement, so its cost is part of the save stage, and
+   * validating here as well would do the work twice. With lanes enabled the save stage is timed on
+   * the lane, so it covers the save itself rather than the time spent queueing it.
+   */
+  private void settle(final String format, final TradeAgreement agreement, final Message message)
+      throws InterruptedException {
+    agreementDispatcher.dispatch(agreement, message, () -> {
+      Set<Long> missionIds = timeStage(format, "save",
+          () -> settlementService.spawnMissions(Arrays.asList(agreement)));
+      log.info("Created missions {}", missionIds);
+    });
+  }
 
-    Set<Long> missionIds = settlementService.spawnMissions(Arrays.asList(agreement));
-    log.info("Created missions {}", missionIds);
+  private <T> T timeStage(final String format, final String stage, final Supplier<T> op) {
+    Timer timer = stageTimers.computeIfAbsent(format + "/" + stage,
+        key -> Timer.builder(STAGE_TIMER)
+            .description("Time taken by each stage of handling a trade agreement message")
+            .tag("format", format)
+            .tag("stage", stage)
+            .publishPercentiles(0.5, 0.99)
+            .publishPercentileHistogram()
+            .register(meterRegistry));
+    return timer.record(op);
   }
 }
@@ -10,20 +10,25 @@ import net.sf.aspect4log.Log.Level;
 import org.galatea.starter.domain.SettlementMission;
 import org.galatea.starter.domain.TradeAgreement;
 import org.galatea.starter.entrypoint.messagecontracts.ProtobufMessages.SettlementMissionProtoMessage;
+import org.galatea.starter.entrypoint.messagecontracts.ProtobufMessages.SettlementMissionProtoMessages;
 import org.galatea.starter.entrypoint.messagecontracts.ProtobufMessages.SettlementResponseProtoMessage;
 import org.galatea.starter.entrypoint.messagecontracts.ProtobufMessages.TradeAgreementProtoMessages;
 import org.galatea.starter.service.SettlementService;
+import org.galatea.starter.utils.http.converter.ProtobufSerializer;
 import org.galatea.starter.utils.translation.ITranslator;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.validation.annotation.Validated;
+import org.springframework.web.accept.ContentNegotiationManager;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.NativeWebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 /**
  * REST controller that mimics the behavior of SettlementRestController but accepts and returns only
@@ -57,8 +62,9 @@ public class SettlementProtoRestController extends BaseSettlementRestController
   public SettlementProtoRestController(final SettlementService settlementService,
       final ITranslator<TradeAgreementProtoMessages, List<TradeAgreement>> tradeAgreementTranslator,
       final ITranslator<SettlementMission, SettlementMissionProtoMessage>
-          settlementMissionTranslator) {
-    super(settlementService);
+          settlementMissionTranslator,
+      final ContentNegotiationManager contentNegotiationManager) {
+    super(settlementService, contentNegotiationManager);
     this.settlementMissionTranslator = settlementMissionTranslator;
     this.tradeAgreementTranslator = tradeAgreementTranslator;
   }
@@ -82,17 +88,23 @@ public class SettlementProtoRestController extends BaseSettlementRestController
   }
 
   /**
-   * Retrieves existing settlement mission messages.
+   * Retrieves existing settlement mission messages. Supports If-None-Match, see
+   * SettlementRestController.getMission.
    */
   @GetMapping(value = "${mvc.getMissionPath}" + "{id}", produces = APPLICATION_X_PROTOBUF)
   public ResponseEntity<SettlementMissionProtoMessage> getMission(@PathVariable final Long id,
-      @RequestParam(value = "requestId", required = false) final String requestId) {
+      @RequestParam(value = "requestId", required = false) final String requestId,
+      final NativeWebRequest request) {
     // if an external request id was provided, grab it
     processRequestId(requestId);
 
     Optional<SettlementMission> msn = getMissionInternal(id);
 
     if (msn.isPresent()) {
+      // Sets the ETag header, and the 304 status if the caller already has this version
+      if (checkMissionNotModified(msn.get(), request)) {
+        return null;
+      }
       return new ResponseEntity<>(settlementMissionTranslator.translate(msn.get()), HttpStatus.OK);
     }
 
@@ -103,4 +115,50 @@ public class SettlementProtoRestController extends BaseSettlementRestController
     // could add a test for the not-found case in order to meet coverage requirements
     return new ResponseEntity<>(HttpStatus.NOT_FOUND);
   }
+
+  /**
+   * Retrieves multiple existing settlement missions as a single SettlementMissionProtoMessages. If
+   * any of the missions doesn't exist the request fails with a 404. As with the JSON endpoint, the
+   * response has an ETag for the missions as a whole and If-None-Match is honored.
+   */
+  @GetMapping(value = "${mvc.getMissionsPath}", produces = APPLICATION_X_PROTOBUF)
+  public SettlementMissionProtoMessages getMissions(
+      @RequestParam(value = "ids") final String ids,
+      @RequestParam(value = "requestId", required = false) final String requestId,
+      final NativeWebRequest request) {
+    // if an external request id was provided, grab it
+    processRequestId(requestId);
+
+    List<SettlementMission> missions = getMissionsInternal(parseIds(ids));
+    if (checkMissionsNotModified(missions, request)) {
+      return null;
+    }
+
+    SettlementMissionProtoMessages.Builder messages = SettlementMissionProtoMessages.newBuilder();
+    for (SettlementMission mission : missions) {
+      messages.addMessage(settlementMissionTranslator.translate(mission));
+    }
+    return messages.build();
+  }
+
+  /**
+   * Retrieves multiple existing settlement missions as length-delimited
+   * SettlementMissionProtoMessages, to be read back one at a time with
+   * SettlementMissionProtoMessage.parseDelimitedFrom.
+   *
+   * <p>Each mission is written to the response as soon as it's translated, so neither side has to
+   * hold one message containing every mission. Selected with delimited=true.
+   */
+  @GetMapping(value = "${mvc.getMissionsPath}", params = "delimited=true",
+      produces = APPLICATION_X_PROTOBUF)
+  public ResponseEntity<StreamingResponseBody> getMissionsDelimited(
+      @RequestParam(value = "ids") final String ids,
+      @RequestParam(value = "requestId", required = false) final String requestId) {
+    // if an external request id was provided, grab it
+    processRequestId(requestId);
+
+    List<SettlementMission> missions = getMissionsInternal(parseIds(ids));
+    return ResponseEntity.ok().body(
+        out -> ProtobufSerializer.serializeDelimited(missions, settlementMissionTranslator, out));
+  }
 }
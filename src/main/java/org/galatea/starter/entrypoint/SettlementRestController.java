@@ -1,10 +1,8 @@
 package org.galatea.starter.entrypoint;
 
-import java.util.Arrays;
 import java.util.List;
 import java.util.Optional;
 import java.util.Set;
-import java.util.stream.Collectors;
 import lombok.NonNull;
 import lombok.extern.slf4j.Slf4j;
 import net.sf.aspect4log.Log;
@@ -21,16 +19,20 @@ import org.galatea.starter.service.SettlementService;
 import org.galatea.starter.utils.translation.ITranslator;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.dao.EmptyResultDataAccessException;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.validation.annotation.Validated;
+import org.springframework.web.accept.ContentNegotiationManager;
 import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.NativeWebRequest;
 
 /**
  * REST Controller that generates and listens to http endpoints which allow the caller to create
@@ -66,8 +68,9 @@ public class SettlementRestController extends BaseSettlementRestController {
       final ITranslator<TradeAgreementMessages, List<TradeAgreement>> tradeAgreementTranslator,
       final ITranslator<SettlementMission, SettlementMissionMessage> settlementMissionTranslator,
       final ITranslator<SettlementMissionMessage, SettlementMission>
-          settlementMissionMsgTranslator) {
-    super(settlementService);
+          settlementMissionMsgTranslator,
+      final ContentNegotiationManager contentNegotiationManager) {
+    super(settlementService, contentNegotiationManager);
     this.tradeAgreementTranslator = tradeAgreementTranslator;
     this.settlementMissionTranslator = settlementMissionTranslator;
     this.settlementMissionMsgTranslator = settlementMissionMsgTranslator;
@@ -96,16 +99,19 @@ public class SettlementRestController extends BaseSettlementRestController {
   }
 
   /**
-   * Retrieve a previously generated Mission.
+   * Retrieve a previously generated Mission. The response carries the mission's ETag, and if the
+   * request's If-None-Match already has it a 304 is returned with no body.
    */
   // @GetMapping to link http GET requests to this method
   // @PathVariable to take the id from the path and make it available as a method argument
   // @RequestParam to take a parameter from the url (ex: http://url?requestId=3123)
+  // NativeWebRequest to check the conditional request headers
   @GetMapping(value = "${mvc.getMissionPath}" + "{id}", produces = {
       MediaType.APPLICATION_JSON_VALUE,
       MediaType.APPLICATION_XML_VALUE})
   public SettlementMissionMessage getMission(@PathVariable final Long id,
-      @RequestParam(value = "requestId", required = false) final String requestId) {
+      @RequestParam(value = "requestId", required = false) final String requestId,
+      final NativeWebRequest request) {
 
     // if an external request id was provided, grab it
     processRequestId(requestId);
@@ -113,6 +119,10 @@ public class SettlementRestController extends BaseSettlementRestController {
     Optional<SettlementMission> msn = getMissionInternal(id);
 
     if (msn.isPresent()) {
+      // Sets the ETag header, and the 304 status if the caller already has this version
+      if (checkMissionNotModified(msn.get(), request)) {
+        return null;
+      }
       return settlementMissionTranslator.translate(msn.get());
     }
 
@@ -120,33 +130,39 @@ public class SettlementRestController extends BaseSettlementRestController {
   }
 
   /**
-   * Retrieve multiple previously generated Missions.
+   * Retrieve multiple previously generated Missions. As with getMission, the response has an ETag
+   * (for the missions as a whole) and If-None-Match is honored.
    */
   // @GetMapping to link http GET requests to this method
   @GetMapping(value = "${mvc.getMissionsPath}", produces = {
       MediaType.APPLICATION_JSON_VALUE,
       MediaType.APPLICATION_XML_VALUE,
       MvcConfig.TEXT_CSV_VALUE,
-      MvcConfig.APPLICATION_EXCEL_VALUE})
+      MvcConfig.APPLICATION_EXCEL_VALUE,
+      MvcConfig.APPLICATION_ARROW_STREAM_VALUE})
   public SettlementMissionList getMissions(
       // @RequestParam to take a comma-separated list of ids from the url (ex: http://url?ids=1,2,3)
       @RequestParam(value = "ids") final String ids,
       // @RequestParam to take a parameter from the url (ex: http://url?requestId=3123)
-      @RequestParam(value = "requestId", required = false) final String requestId) {
+      @RequestParam(value = "requestId", required = false) final String requestId,
+      final NativeWebRequest request) {
 
     // if an external request id was provided, grab it
     processRequestId(requestId);
 
-    List<Long> idLongs = Arrays.stream(ids.split(","))
-        .map(Long::parseLong)
-        .collect(Collectors.toList());
-    List<SettlementMission> missions = getMissionsInternal(idLongs);
+    List<SettlementMission> missions = getMissionsInternal(parseIds(ids));
 
+    // One ETag covering all the missions, so an unchanged set costs no serialization
+    if (checkMissionsNotModified(missions, request)) {
+      return null;
+    }
     return new SettlementMissionList(missions);
   }
 
   /**
-   * Update an existing mission given an ID.
+   * Update an existing mission given an ID. If an If-Match header is sent, the update is refused
+   * with a 412 unless the mission's current ETag is one of those given, and still is when it's
+   * saved.
    */
   // @PutMapping to link http PUT requests to this method
   // @PathVariable to take the id from the path and make it available as a method argument
@@ -156,16 +172,20 @@ public class SettlementRestController extends BaseSettlementRestController {
       produces = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_XML_VALUE})
   public void updateMission(@PathVariable final Long id,
       @RequestBody final SettlementMissionMessage settlementMissionMessage,
-      @RequestParam(value = "requestId", required = false) final String requestId) {
+      @RequestParam(value = "requestId", required = false) final String requestId,
+      // @RequestHeader to only update if the mission is still at the version the caller last saw
+      @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) final String ifMatch) {
 
     // if an external request id was provided, grab it
     processRequestId(requestId);
 
+    Long expectedVersion = ifMatchVersion(id, ifMatch);
+
     // Translate the message and get it back from the list
     SettlementMission settlementMission =
         settlementMissionMsgTranslator.translate(settlementMissionMessage);
 
-    Optional<SettlementMission> msn = updateMissionInternal(id, settlementMission);
+    Optional<SettlementMission> msn = updateMissionInternal(id, settlementMission, expectedVersion);
 
     if (!msn.isPresent()) {
       // The mission was not found and could not be updated
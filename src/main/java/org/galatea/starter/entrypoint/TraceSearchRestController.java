@@ -0,0 +1,78 @@
+package org.galatea.starter.entrypoint;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import net.sf.aspect4log.Log;
+import net.sf.aspect4log.Log.Level;
+import org.galatea.starter.utils.trace.TraceQuery;
+import org.galatea.starter.utils.trace.TraceStore;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+/**
+ * REST controller for searching the HTTP traces kept in the TraceStore, e.g. for the slow requests
+ * on a path during an incident, or everything done for a given request id.
+ */
+@RequiredArgsConstructor
+@Slf4j
+@Log(enterLevel = Level.INFO, exitLevel = Level.INFO)
+@RestController
+public class TraceSearchRestController extends BaseRestController {
+
+  @NonNull
+  TraceStore traceStore;
+
+  @NonNull
+  ObjectMapper objectMapper;
+
+  /**
+   * Find the traces matching all of the given criteria, newest first.
+   *
+   * @param internalRequestId the id we gave the request (the internalQueryId header)
+   * @param externalRequestId the requestId the caller gave the request
+   * @param path the request path, exactly
+   * @param minMillis least time taken, inclusive
+   * @param maxMillis most time taken, inclusive
+   * @param from earliest time received, e.g. 2020-03-01T09:30:00Z
+   * @param to latest time received
+   * @param limit the most traces to return, at most TraceStore.MAX_LIMIT
+   * @return the traces found, as logged
+   */
+  @GetMapping(value = "${mvc.traceSearchPath}", produces = MediaType.APPLICATION_JSON_VALUE)
+  public List<JsonNode> searchTraces(
+      @RequestParam(value = "internalRequestId", required = false) final String internalRequestId,
+      @RequestParam(value = "externalRequestId", required = false) final String externalRequestId,
+      @RequestParam(value = "path", required = false) final String path,
+      @RequestParam(value = "minMillis", required = false) final Long minMillis,
+      @RequestParam(value = "maxMillis", required = false) final Long maxMillis,
+      @RequestParam(value = "from", required = false) final Instant from,
+      @RequestParam(value = "to", required = false) final Instant to,
+      @RequestParam(value = "limit", defaultValue = "100") final int limit) throws IOException {
+    TraceQuery query = TraceQuery.builder()
+        .internalRequestId(internalRequestId)
+        .externalRequestId(externalRequestId)
+        .path(path)
+        .minMillis(minMillis)
+        .maxMillis(maxMillis)
+        .from(from)
+        .to(to)
+        .limit(limit)
+        .build();
+
+    List<JsonNode> traces = new ArrayList<>();
+    for (byte[] json : traceStore.search(query)) {
+      traces.add(objectMapper.readTree(json));
+    }
+    log.info("Found {} trace(s) for {}", traces.size(), query);
+    return traces;
+  }
+}
@@ -0,0 +1,27 @@
+package org.galatea.starter.entrypoint.exception;
+
+import lombok.Getter;
+
+/**
+ * An upload that failed part way through, after some of its agreements had already been saved.
+ * Carries how much was saved, so the caller knows where to carry on from.
+ */
+@Getter
+public class PartialUploadException extends RuntimeException {
+
+  private final long agreementsSaved;
+
+  private final long missionsSpawned;
+
+  /**
+   * Create a PartialUploadException for an upload that failed with the given cause once the given
+   * number of agreements (the first in the file) had been saved.
+   */
+  public PartialUploadException(final long agreementsSaved, final long missionsSpawned,
+      final Throwable cause) {
+    super("Upload failed after the first " + agreementsSaved + " agreement(s) were saved, spawning "
+        + missionsSpawned + " mission(s): " + cause.getMessage(), cause);
+    this.agreementsSaved = agreementsSaved;
+    this.missionsSpawned = missionsSpawned;
+  }
+}
@@ -0,0 +1,11 @@
+package org.galatea.starter.entrypoint.exception;
+
+public class PayloadTooLargeException extends RuntimeException {
+
+  /**
+   * Create a PayloadTooLargeException for a request body over the given limit.
+   */
+  public PayloadTooLargeException(final long maxBytes) {
+    super("Request body is larger than the limit of " + maxBytes + " bytes");
+  }
+}
@@ -0,0 +1,24 @@
+package org.galatea.starter.entrypoint.exception;
+
+public class PreconditionFailedException extends RuntimeException {
+
+  /**
+   * Create a PreconditionFailedException for an entity that doesn't match the version the caller
+   * expected it to be at.
+   */
+  public PreconditionFailedException(final Class<?> type, final String identifier,
+      final String expectedTag) {
+    super("Entity " + identifier + " of type " + type.getSimpleName()
+        + " does not match the expected entity tag " + expectedTag);
+  }
+
+  /**
+   * Create a PreconditionFailedException for an entity that was changed after its version was
+   * checked against the one the caller expected.
+   */
+  public PreconditionFailedException(final Class<?> type, final String identifier,
+      final String expectedTag, final Throwable cause) {
+    super("Entity " + identifier + " of type " + type.getSimpleName()
+        + " does not match the expected entity tag " + expectedTag, cause);
+  }
+}
@@ -0,0 +1,24 @@
+package org.galatea.starter.entrypoint.messagecontracts;
+
+import javax.xml.bind.annotation.XmlAccessType;
+import javax.xml.bind.annotation.XmlAccessorType;
+import javax.xml.bind.annotation.XmlRootElement;
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+@AllArgsConstructor(access = AccessLevel.PRIVATE) // For builder
+@NoArgsConstructor(access = AccessLevel.PRIVATE) // For spring and jackson
+@Builder
+@Data
+@Slf4j
+@XmlRootElement(name = "settlementUploadResponse")
+@XmlAccessorType(XmlAccessType.FIELD) // required if using lombok to avoid duplicate properties
+public class SettlementUploadResponseMessage {
+
+  protected long agreementsRead;
+  protected long missionsSpawned;
+}
@@ -0,0 +1,151 @@
+package org.galatea.starter.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import javax.jms.JMSException;
+import javax.jms.Message;
+import lombok.extern.slf4j.Slf4j;
+import org.galatea.starter.domain.TradeAgreement;
+import org.galatea.starter.utils.PartitionedExecutor;
+import org.slf4j.MDC;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+/**
+ * Hands the work for each agreement to a lane chosen by the agreement's instrument (or external
+ * party), so that agreements for the same key are processed strictly in the order they arrive while
+ * different keys are processed in parallel. Downstream netting relies on that per-key ordering.
+ *
+ * <p>Setting jms.agreement-lanes to 0 disables the lanes and the work runs directly on the calling
+ * listener thread.
+ *
+ * <p>When lanes are enabled:
+ *
+ * <ul>
+ * <li>Ordering is only as good as the order agreements are dispatched in. Several concurrent
+ * consumers on the same queue can hand us agreements out of order, so jms.listener-concurrency
+ * must be 1 (checked at startup) and the lanes supply the parallelism. The JSON and protobuf
+ * queues have a consumer each, and there's no order between the two queues to keep, so agreements
+ * for the same key arriving on both are only ordered within each queue.</li>
+ * <li>The listener containers run untransacted sessions with ActiveMQ's individual acknowledgement
+ * (see JmsConfig), and a message is only acknowledged here once its lane has finished with it. If
+ * the consumer's session closes or the application dies first, the broker redelivers the message
+ * (at-least-once, so an agreement can be settled twice). Work that fails on a lane goes to the
+ * failed message consumer, the same as a failure on the listener thread, and is then
+ * acknowledged.</li>
+ * <li>The listener returns as soon as the work is queued, so the container's in-flight gauge and
+ * processing timers cover receiving and queueing the message, not settling it. The save stage of
+ * jms.agreement.stage is timed on the lane, and partitioned.executor.queue.depth shows the
+ * backlog.</li>
+ * </ul>
+ */
+@Slf4j
+@Service
+public class AgreementDispatcher implements DisposableBean {
+
+  private static final long SHUTDOWN_TIMEOUT_SECONDS = 30;
+
+  private final PartitionedExecutor lanes;
+
+  private final Function<TradeAgreement, String> partitionKey;
+
+  private final BiConsumer<Message, Exception> failedMessageConsumer;
+
+  /**
+   * Initializes a new instance of this class with the required arguments that will be autowired by
+   * spring boot. Written by hand since lombok can't carry the @Value annotation over to the
+   * constructor parameter.
+   */
+  public AgreementDispatcher(final MeterRegistry meterRegistry,
+      final BiConsumer<Message, Exception> failedMessageConsumer,
+      @Value("${jms.agreement-lanes}") final int laneCount,
+      @Value("${jms.agreement-lane-capacity}") final int laneCapacity,
+      @Value("${jms.agreement-partition-key}") final String partitionKey,
+      @Value("${jms.listener-concurrency}") final String listenerConcurrency) {
+    if (laneCount > 0 && !isSingleConsumer(listenerConcurrency)) {
+      throw new IllegalStateException("jms.listener-concurrency must be 1 when jms.agreement-lanes"
+          + " is set, or agreements for the same key can be dispatched out of order. Was "
+          + listenerConcurrency);
+    }
+
+    this.failedMessageConsumer = failedMessageConsumer;
+    this.lanes = laneCount > 0
+        ? new PartitionedExecutor("agreement", laneCount, laneCapacity, meterRegistry)
+        : null;
+    this.partitionKey = partitionKeyFor(partitionKey);
+  }
+
+  /**
+   * Runs the work for the given agreement on its lane, blocking while that lane is full. If lanes
+   * are disabled the work runs immediately on the calling thread, and the container acknowledges
+   * the message as usual.
+   *
+   * @param message the message the agreement came in, acknowledged once its lane is done with it
+   */
+  public void dispatch(final TradeAgreement agreement, final Message message, final Runnable work)
+      throws InterruptedException {
+    if (lanes == null) {
+      work.run();
+      return;
+    }
+
+    // Take the listener thread's MDC (and so the request ids) along to the lane
+    Map<String, String> context = MDC.getCopyOfContextMap();
+    lanes.execute(partitionKey.apply(agreement), () -> {
+      if (context != null) {
+        MDC.setContextMap(context);
+      }
+      try {
+        try {
+          work.run();
+        } catch (RuntimeException e) {
+          // If the consumer throws, the message is left unacknowledged and so redelivered once
+          // the consumer's session closes
+          failedMessageConsumer.accept(message, e);
+        }
+        acknowledge(message);
+      } finally {
+        MDC.clear();
+      }
+    });
+  }
+
+  @Override
+  public void destroy() throws InterruptedException {
+    if (lanes != null && !lanes.shutdown(SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+      log.warn("Agreement lanes did not drain within {} seconds", SHUTDOWN_TIMEOUT_SECONDS);
+    }
+  }
+
+  private static void acknowledge(final Message message) {
+    try {
+      message.acknowledge();
+    } catch (JMSException e) {
+      // The broker will redeliver it, and the agreement will be settled again
+      log.error("Could not acknowledge message {}", message, e);
+    }
+  }
+
+  /*
+   * Whether a listener concurrency setting ("n" or "min-max") means a single consumer per queue.
+   */
+  private static boolean isSingleConsumer(final String concurrency) {
+    String max = concurrency.substring(concurrency.indexOf('-') + 1).trim();
+    return "1".equals(max);
+  }
+
+  private static Function<TradeAgreement, String> partitionKeyFor(final String partitionKey) {
+    switch (partitionKey) {
+      case "instrument":
+        return TradeAgreement::getInstrument;
+      case "externalParty":
+        return TradeAgreement::getExternalParty;
+      default:
+        throw new IllegalArgumentException("Unknown agreement partition key: " + partitionKey);
+    }
+  }
+}
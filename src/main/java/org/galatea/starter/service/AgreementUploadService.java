@@ -0,0 +1,121 @@
+package org.galatea.starter.service;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import lombok.extern.slf4j.Slf4j;
+import org.galatea.starter.domain.TradeAgreement;
+import org.galatea.starter.entrypoint.exception.PartialUploadException;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+/**
+ * Spawns missions for agreements read from an uploaded file, handing them to the settlement
+ * service in chunks as they're read rather than reading the whole file first.
+ *
+ * <p>Each chunk is saved in its own transaction. If a chunk fails (e.g. an agreement fails
+ * validation) the upload stops there, and the chunks before it stay saved. The failure is then
+ * raised as a PartialUploadException saying how many agreements were saved, so the caller can send
+ * the rest of the file again.
+ */
+@Slf4j
+@Service
+public class AgreementUploadService {
+
+  /**
+   * Something that reads agreements out of an upload, e.g. a CSV or XLSX file.
+   */
+  @FunctionalInterface
+  public interface AgreementSource {
+
+    /**
+     * Read every agreement, handing each one to the given consumer as it's read.
+     */
+    void forEach(Consumer<TradeAgreement> agreementConsumer) throws IOException;
+  }
+
+  /**
+   * How many agreements were read from an upload and how many missions they spawned.
+   */
+  @lombok.Value
+  public static class UploadResult {
+
+    private long agreements;
+
+    private long missions;
+  }
+
+  private final SettlementService settlementService;
+
+  private final int chunkSize;
+
+  /**
+   * Initializes a new instance of this class with the required arguments that will be autowired by
+   * spring boot. Written by hand since lombok can't carry the @Value annotation over to the
+   * constructor parameter.
+   */
+  public AgreementUploadService(final SettlementService settlementService,
+      @Value("${mvc.upload.chunk-size}") final int chunkSize) {
+    this.settlementService = settlementService;
+    this.chunkSize = chunkSize;
+  }
+
+  /**
+   * Spawn missions for every agreement in the given source, chunkSize agreements at a time.
+   *
+   * @throws PartialUploadException if the upload fails once some of it has been saved. A failure
+   *     before anything was saved is thrown as it is.
+   */
+  public UploadResult spawnMissions(final AgreementSource source) throws IOException {
+    Chunker chunker = new Chunker();
+    try {
+      source.forEach(chunker::add);
+      chunker.flush();
+    } catch (IOException | RuntimeException e) {
+      if (chunker.savedAgreements == 0) {
+        throw e;
+      }
+      log.warn("Upload failed after {} agreements were saved", chunker.savedAgreements);
+      throw new PartialUploadException(chunker.savedAgreements, chunker.missions, e);
+    }
+
+    log.info("Spawned {} missions from {} uploaded agreements", chunker.missions,
+        chunker.agreements);
+    return new UploadResult(chunker.agreements, chunker.missions);
+  }
+
+  /**
+   * Gathers agreements into chunks, spawning the missions for each chunk once it's full.
+   */
+  private class Chunker {
+
+    private List<TradeAgreement> chunk = new ArrayList<>(chunkSize);
+
+    private long agreements;
+
+    /* Agreements in the chunks saved so far */
+    private long savedAgreements;
+
+    private long missions;
+
+    void add(final TradeAgreement agreement) {
+      chunk.add(agreement);
+      agreements++;
+      if (chunk.size() >= chunkSize) {
+        flush();
+      }
+    }
+
+    void flush() {
+      if (chunk.isEmpty()) {
+        return;
+      }
+      missions += settlementService.spawnMissions(chunk).size();
+      savedAgreements += chunk.size();
+      log.debug("Spawned missions for a chunk of {} agreements, {} so far", chunk.size(),
+          agreements);
+      chunk = new ArrayList<>(chunkSize);
+    }
+  }
+}
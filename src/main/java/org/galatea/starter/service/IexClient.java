@@ -31,12 +31,12 @@ public interface IexClient {
    * Get the last traded price for each stock symbol passed in. See https://iextrading.com/developer/docs/#last.
    *
    * @param token API key from IexService
-   * @param symbols stock symbols to get last traded price for.
+   * @param symbols comma-separated stock symbols to get last traded price for.
    * @return a list of the last traded price for each of the symbols passed in.
    */
   @GetMapping("/tops/last")
   List<IexLastTradedPrice> getLastTradedPriceForSymbols(@RequestParam("token") String token,
-      @RequestParam("symbols") String[] symbols);
+      @RequestParam("symbols") String symbols);
 
   /**
    * Get historical prices given stock and time range.
@@ -1,29 +1,78 @@
 package org.galatea.starter.service;
 
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import lombok.NonNull;
-import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.galatea.starter.APIToken;
 import org.galatea.starter.domain.IexLastTradedPrice;
 import org.galatea.starter.domain.IexSymbol;
 import org.galatea.starter.domain.IexHistoricalPrice;
+import org.slf4j.MDC;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.util.CollectionUtils;
 
 /**
  * A layer for transformation, aggregation, and business required when retrieving data from IEX.
+ *
+ * <p>Last traded prices for many symbols are fetched in chunks, each small enough to keep the query
+ * string within iex.last-traded-price.max-query-length, and the chunks are fetched in parallel on
+ * a small pool of our own (see iex.last-traded-price).
  */
 @Slf4j
 @Service
-@RequiredArgsConstructor
-public class IexService {
+public class IexService implements DisposableBean {
+
+  private static final String SYMBOLS_PARAM = "&symbols=";
+
+  /* The longest a separating comma can be, once encoded */
+  private static final int SEPARATOR_LENGTH = "%2C".length();
 
   @NonNull
-  private IexClient iexClient;
+  private final IexClient iexClient;
   private String token = APIToken.token;
 
+  private final int maxSymbolsPerRequest;
+
+  private final int maxQueryLength;
+
+  private final ExecutorService lastTradedPriceExecutor;
+
+  /**
+   * Initializes a new instance of this class with the required arguments that will be autowired by
+   * spring boot. Written by hand since lombok can't carry the @Value annotation over to the
+   * constructor parameter.
+   */
+  public IexService(@NonNull final IexClient iexClient,
+      @Value("${iex.last-traded-price.max-symbols-per-request}") final int maxSymbolsPerRequest,
+      @Value("${iex.last-traded-price.max-query-length}") final int maxQueryLength,
+      @Value("${iex.last-traded-price.pool-size}") final int poolSize,
+      @Value("${iex.last-traded-price.queue-capacity}") final int queueCapacity) {
+    this.iexClient = iexClient;
+    this.maxSymbolsPerRequest = maxSymbolsPerRequest;
+    this.maxQueryLength = maxQueryLength;
+    // Once the queue is full the caller fetches its own chunks, which slows it down rather than
+    // failing the request
+    this.lastTradedPriceExecutor = new ThreadPoolExecutor(poolSize, poolSize, 0,
+        TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(queueCapacity),
+        new ThreadFactoryBuilder().setNameFormat("iex-last-traded-price-%d").setDaemon(true)
+            .build(),
+        new ThreadPoolExecutor.CallerRunsPolicy());
+  }
+
   /**
    * Get all stock symbols from IEX.
    *
@@ -37,14 +86,53 @@ public class IexService {
    * Get the last traded price for each Symbol that is passed in.
    *
    * @param symbols the list of symbols to get a last traded price for.
-   * @return a list of last traded price objects for each Symbol that is passed in.
+   * @return a list of last traded price objects for each Symbol that is passed in, in the order
+   *     they were passed in.
    */
   public List<IexLastTradedPrice> getLastTradedPriceForSymbols(final List<String> symbols) {
     if (CollectionUtils.isEmpty(symbols)) {
       return Collections.emptyList();
-    } else {
-      return iexClient.getLastTradedPriceForSymbols(token, symbols.toArray(new String[0]));
     }
+
+    List<List<String>> chunks = chunk(symbols, maxSymbolsPerRequest,
+        maxQueryLength - baseQueryLength(token));
+    if (chunks.size() == 1) {
+      return getLastTradedPrices(chunks.get(0));
+    }
+    log.info("Getting last traded prices for {} symbols in {} chunks", symbols.size(),
+        chunks.size());
+
+    // Take the caller's MDC (and so the request ids) along to the pool's threads
+    Map<String, String> context = MDC.getCopyOfContextMap();
+    List<CompletableFuture<List<IexLastTradedPrice>>> futures = new ArrayList<>();
+    for (List<String> chunk : chunks) {
+      futures.add(CompletableFuture.supplyAsync(() -> {
+        // May be the caller's own thread, if the pool is backed up, so put back what was there
+        Map<String, String> previous = MDC.getCopyOfContextMap();
+        setMdc(context);
+        try {
+          return getLastTradedPrices(chunk);
+        } finally {
+          setMdc(previous);
+        }
+      }, lastTradedPriceExecutor));
+    }
+
+    // Merge in the order the chunks were made, whatever order they finish in
+    List<IexLastTradedPrice> prices = new ArrayList<>(symbols.size());
+    try {
+      for (CompletableFuture<List<IexLastTradedPrice>> future : futures) {
+        prices.addAll(future.join());
+      }
+    } catch (CompletionException e) {
+      // Fail the same way a single request would have
+      futures.forEach(future -> future.cancel(false));
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      throw e;
+    }
+    return prices;
   }
 
   /**
@@ -67,4 +155,58 @@ public class IexService {
 
     return iexClient.getHistoricalPrices(token, symbol, clientRange, clientDate);
     }
+
+  @Override
+  public void destroy() {
+    lastTradedPriceExecutor.shutdownNow();
+  }
+
+  /**
+   * Splits the symbols, in order, into chunks of at most maxSymbols whose symbols parameter, once
+   * encoded, is at most maxSymbolsLength long. A symbol too long to go with any others gets a chunk
+   * of its own.
+   */
+  static List<List<String>> chunk(final List<String> symbols, final int maxSymbols,
+      final int maxSymbolsLength) {
+    List<List<String>> chunks = new ArrayList<>();
+    List<String> chunk = new ArrayList<>();
+    int length = 0;
+    for (String symbol : symbols) {
+      int symbolLength = encodedLength(symbol);
+      int added = chunk.isEmpty() ? symbolLength : SEPARATOR_LENGTH + symbolLength;
+      if (!chunk.isEmpty() && (chunk.size() == maxSymbols || length + added > maxSymbolsLength)) {
+        chunks.add(chunk);
+        chunk = new ArrayList<>();
+        added = symbolLength;
+        length = 0;
+      }
+      chunk.add(symbol);
+      length += added;
+    }
+    chunks.add(chunk);
+    return chunks;
+  }
+
+  private List<IexLastTradedPrice> getLastTradedPrices(final List<String> symbols) {
+    return iexClient.getLastTradedPriceForSymbols(token, String.join(",", symbols));
+  }
+
+  private static void setMdc(final Map<String, String> context) {
+    if (context == null) {
+      MDC.clear();
+    } else {
+      MDC.setContextMap(context);
+    }
+  }
+
+  /*
+   * Length of the query string without any symbols.
+   */
+  private static int baseQueryLength(final String token) {
+    return "token=".length() + encodedLength(token) + SYMBOLS_PARAM.length();
+  }
+
+  private static int encodedLength(final String value) {
+    return value == null ? 0 : URLEncoder.encode(value, StandardCharsets.UTF_8).length();
+  }
 }
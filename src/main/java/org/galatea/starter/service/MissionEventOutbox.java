@@ -0,0 +1,77 @@
+package org.galatea.starter.service;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.galatea.starter.domain.MissionEvent;
+import org.galatea.starter.domain.MissionEventType;
+import org.galatea.starter.domain.SettlementMission;
+import org.galatea.starter.domain.rpsy.IMissionEventRpsy;
+import org.galatea.starter.entrypoint.messagecontracts.ProtobufMessages.SettlementMissionProtoMessage;
+import org.galatea.starter.utils.jms.JmsRequestIds;
+import org.galatea.starter.utils.translation.ITranslator;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * Records mission change events in the outbox table. Must be called from within the transaction
+ * that makes the change, so that the event is committed (or rolled back) along with it.
+ */
+@RequiredArgsConstructor
+@Slf4j
+@Component
+public class MissionEventOutbox {
+
+  @NonNull
+  IMissionEventRpsy eventRpsy;
+
+  @NonNull
+  ITranslator<SettlementMission, SettlementMissionProtoMessage> settlementMissionProtoTranslator;
+
+  /**
+   * Record an event of the given type for each of the given missions.
+   *
+   * @param eventType the kind of change that was made
+   * @param missions the missions as they were saved
+   */
+  @Transactional(propagation = Propagation.MANDATORY)
+  public void record(final MissionEventType eventType, final Iterable<SettlementMission> missions) {
+    Instant now = Instant.now();
+    String internalRequestId = JmsRequestIds.currentInternalId();
+    String externalRequestId = JmsRequestIds.currentExternalId();
+    List<MissionEvent> events = new ArrayList<>();
+    for (SettlementMission mission : missions) {
+      events.add(MissionEvent.builder()
+          .eventType(eventType)
+          .missionId(mission.getId())
+          .payload(settlementMissionProtoTranslator.translate(mission).toByteArray())
+          .createdAt(now)
+          .internalRequestId(internalRequestId)
+          .externalRequestId(externalRequestId).build());
+    }
+    eventRpsy.saveAll(events);
+    log.debug("Recorded {} {} event(s)", events.size(), eventType);
+  }
+
+  /**
+   * Record the deletion of a mission. Only the id is known at this point, so that is all the
+   * payload carries.
+   *
+   * @param id identifier of the deleted mission
+   */
+  @Transactional(propagation = Propagation.MANDATORY)
+  public void recordDeleted(final Long id) {
+    eventRpsy.save(MissionEvent.builder()
+        .eventType(MissionEventType.DELETED)
+        .missionId(id)
+        .payload(SettlementMissionProtoMessage.newBuilder().setId(id).build().toByteArray())
+        .createdAt(Instant.now())
+        .internalRequestId(JmsRequestIds.currentInternalId())
+        .externalRequestId(JmsRequestIds.currentExternalId()).build());
+    log.debug("Recorded {} event for mission {}", MissionEventType.DELETED, id);
+  }
+}
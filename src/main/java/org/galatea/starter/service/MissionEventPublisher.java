@@ -0,0 +1,199 @@
+package org.galatea.starter.service;
+
+import com.google.protobuf.InvalidProtocolBufferException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import javax.jms.BytesMessage;
+import javax.jms.Topic;
+import lombok.extern.slf4j.Slf4j;
+import org.galatea.starter.domain.MissionEvent;
+import org.galatea.starter.domain.MissionEventType;
+import org.galatea.starter.domain.rpsy.IMissionEventRpsy;
+import org.galatea.starter.entrypoint.messagecontracts.ProtobufMessages.SettlementMissionProtoMessage;
+import org.galatea.starter.entrypoint.messagecontracts.ProtobufMessages.SettlementMissionProtoMessages;
+import org.galatea.starter.utils.jms.JmsRequestIds;
+import org.galatea.starter.utils.translation.TranslationException;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.jms.JmsException;
+import org.springframework.jms.core.JmsTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Relays committed mission events from the outbox table to the mission event topic.
+ *
+ * <p>Events are read oldest first and sent as SettlementMissionProtoMessages batches, one JMS
+ * message per run of consecutive events of the same type. The type is carried in the
+ * {@value #EVENT_TYPE_PROPERTY} message property. Rows are only deleted after the send succeeds,
+ * so delivery is at-least-once: a crash between the send and the delete will re-publish the batch.
+ *
+ * <p>Each batch is read, sent and deleted in one transaction that holds row locks on the batch
+ * (SELECT ... FOR UPDATE SKIP LOCKED, where the database supports it), so when several nodes poll
+ * the same outbox each event is only sent by the node that claimed it.
+ *
+ * <p>An event whose payload can't be read would otherwise block the outbox forever, so it is marked
+ * as poisoned and left in the table for someone to look at, and counted in
+ * {@value #POISONED_COUNTER}. The rest of the batch is still published.
+ *
+ * <p>Each message also carries the ids of the requests that made the changes, see JmsRequestIds. A
+ * message holding changes from several requests carries their ids comma-separated.
+ */
+@Slf4j
+@Service
+public class MissionEventPublisher {
+
+  public static final String EVENT_TYPE_PROPERTY = "missionEventType";
+
+  /* Counter of events set aside because their payload couldn't be read */
+  public static final String POISONED_COUNTER = "mission.events.poisoned";
+
+  private final IMissionEventRpsy eventRpsy;
+
+  private final JmsTemplate jmsTemplate;
+
+  private final Topic missionEventTopic;
+
+  private final int batchSize;
+
+  private final TransactionTemplate transactionTemplate;
+
+  private final Counter poisoned;
+
+  /**
+   * Initializes a new instance of this class with the required arguments that will be autowired by
+   * spring boot. Written by hand since lombok can't carry the @Value annotation over to the
+   * constructor parameter.
+   */
+  public MissionEventPublisher(final IMissionEventRpsy eventRpsy, final JmsTemplate jmsTemplate,
+      final Topic missionEventTopic, final PlatformTransactionManager transactionManager,
+      final MeterRegistry meterRegistry,
+      @Value("${jms.mission-event-batch-size}") final int batchSize) {
+    this.eventRpsy = eventRpsy;
+    this.jmsTemplate = jmsTemplate;
+    this.missionEventTopic = missionEventTopic;
+    this.transactionTemplate = new TransactionTemplate(transactionManager);
+    this.batchSize = batchSize;
+    this.poisoned = Counter.builder(POISONED_COUNTER)
+        .description("Mission events set aside because their payload couldn't be read")
+        .register(meterRegistry);
+  }
+
+  /**
+   * Publish everything currently in the outbox. Keeps going until a short batch is read, so a
+   * backlog is drained in a single run rather than one batch per poll interval.
+   */
+  @Scheduled(fixedDelayString = "${jms.mission-event-poll-interval-millis}")
+  public void publishPendingEvents() {
+    Integer claimed;
+    do {
+      claimed = transactionTemplate.execute(status -> publishBatch());
+    } while (claimed != null && claimed == batchSize);
+  }
+
+  /*
+   * Claim, publish and delete one batch. Runs in a transaction, so the row locks taken by the read
+   * are held until the batch has been deleted. Returns how many events were claimed, or 0 if the
+   * batch couldn't be sent and should be left for the next poll.
+   */
+  private int publishBatch() {
+    List<MissionEvent> batch = eventRpsy.findPendingForUpdate(PageRequest.of(0, batchSize));
+    if (batch.isEmpty()) {
+      return 0;
+    }
+
+    List<MissionEvent> readable = new ArrayList<>(batch.size());
+    List<SettlementMissionProtoMessage> messages = new ArrayList<>(batch.size());
+    List<Long> poisonedIds = new ArrayList<>();
+    for (MissionEvent event : batch) {
+      try {
+        messages.add(parse(event));
+        readable.add(event);
+      } catch (TranslationException e) {
+        log.error("Setting aside mission event {} for mission {}.", event.getId(),
+            event.getMissionId(), e);
+        poisonedIds.add(event.getId());
+      }
+    }
+    if (!poisonedIds.isEmpty()) {
+      eventRpsy.markPoisoned(poisonedIds);
+      poisoned.increment(poisonedIds.size());
+    }
+
+    if (!readable.isEmpty()) {
+      try {
+        publish(readable, messages);
+      } catch (JmsException e) {
+        // Leave the rows in place, they'll be picked up again on the next poll
+        log.warn("Could not publish {} mission event(s). Will retry.", readable.size(), e);
+        return 0;
+      }
+
+      eventRpsy.deleteByIdIn(readable.stream().map(MissionEvent::getId)
+          .collect(Collectors.toList()));
+      log.info("Published {} mission event(s) to {}", readable.size(), missionEventTopic);
+    }
+    return batch.size();
+  }
+
+  /*
+   * Send the batch as one message per run of consecutive same-typed events, so that subscribers see
+   * changes to the same mission in the order they happened. messages holds each event's parsed
+   * payload.
+   */
+  private void publish(final List<MissionEvent> batch,
+      final List<SettlementMissionProtoMessage> messages) {
+    int runStart = 0;
+    for (int i = 1; i <= batch.size(); i++) {
+      if (i == batch.size() || batch.get(i).getEventType() != batch.get(runStart).getEventType()) {
+        send(batch.get(runStart).getEventType(), batch.subList(runStart, i),
+            messages.subList(runStart, i));
+        runStart = i;
+      }
+    }
+  }
+
+  private void send(final MissionEventType eventType, final List<MissionEvent> events,
+      final List<SettlementMissionProtoMessage> messages) {
+    byte[] body = SettlementMissionProtoMessages.newBuilder()
+        .addAllMessage(messages)
+        .build().toByteArray();
+    String internalRequestIds = requestIds(events, MissionEvent::getInternalRequestId);
+    String externalRequestIds = requestIds(events, MissionEvent::getExternalRequestId);
+
+    jmsTemplate.send(missionEventTopic, session -> {
+      BytesMessage message = session.createBytesMessage();
+      message.writeBytes(body);
+      message.setStringProperty(EVENT_TYPE_PROPERTY, eventType.name());
+      JmsRequestIds.toMessage(message, internalRequestIds, externalRequestIds);
+      return message;
+    });
+  }
+
+  /*
+   * The distinct request ids of the given events, comma-separated in order, or null if none of them
+   * were made by a request.
+   */
+  private static String requestIds(final List<MissionEvent> events,
+      final Function<MissionEvent, String> requestId) {
+    String ids = events.stream().map(requestId).filter(Objects::nonNull).distinct()
+        .collect(Collectors.joining(","));
+    return ids.isEmpty() ? null : ids;
+  }
+
+  private static SettlementMissionProtoMessage parse(final MissionEvent event) {
+    try {
+      return SettlementMissionProtoMessage.parseFrom(event.getPayload());
+    } catch (InvalidProtocolBufferException e) {
+      throw new TranslationException("Could not read the payload of mission event "
+          + event.getId(), e);
+    }
+  }
+}
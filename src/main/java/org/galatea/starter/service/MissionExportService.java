@@ -0,0 +1,55 @@
+package org.galatea.starter.service;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.stream.Stream;
+import javax.persistence.EntityManager;
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.galatea.starter.domain.SettlementMission;
+import org.galatea.starter.domain.rpsy.ISettlementMissionRpsy;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * Reads every mission out of the database for export, without ever holding more than a fetch-size
+ * batch of them in memory.
+ */
+@RequiredArgsConstructor
+@Slf4j
+@Service
+public class MissionExportService {
+
+  /**
+   * Something that writes out missions as they're read, e.g. to an HTTP response.
+   */
+  @FunctionalInterface
+  public interface MissionWriter {
+
+    /**
+     * Write the given missions. They can only be iterated over once.
+     */
+    void write(Iterable<SettlementMission> missions) throws IOException;
+  }
+
+  @NonNull
+  ISettlementMissionRpsy missionrpsy;
+
+  @NonNull
+  EntityManager entityManager;
+
+  /**
+   * Streams all missions, in id order, to the given writer.
+   *
+   * <p>Each mission is detached from the persistence context as it's handed over, so the context
+   * doesn't accumulate every mission read over the course of the export.
+   */
+  @Transactional(readOnly = true)
+  public void exportAll(final MissionWriter writer) throws IOException {
+    try (Stream<SettlementMission> missions = missionrpsy.streamAllOrderedById()) {
+      Iterator<SettlementMission> detaching = missions.peek(entityManager::detach).iterator();
+      writer.write(() -> detaching);
+    }
+  }
+}
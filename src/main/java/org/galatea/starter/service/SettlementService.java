@@ -2,6 +2,7 @@ package org.galatea.starter.service;
 
 import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Optional;
@@ -13,11 +14,13 @@ import lombok.NonNull;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import net.sf.aspect4log.Log;
+import org.galatea.starter.domain.MissionEventType;
 import org.galatea.starter.domain.SettlementMission;
 import org.galatea.starter.domain.TradeAgreement;
 import org.galatea.starter.domain.rpsy.ISettlementMissionRpsy;
 import org.galatea.starter.entrypoint.exception.EntityNotFoundException;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 import org.springframework.validation.annotation.Validated;
 
 @RequiredArgsConstructor
@@ -33,18 +36,23 @@ public class SettlementService {
   @NonNull
   IAgreementTransformer agreementTransformer;
 
+  @NonNull
+  MissionEventOutbox missionEventOutbox;
+
   /**
    * Create missions based on the agreements provided.
    *
    * @param agreements the agreements used to generate missions
    * @return the ids of the missions that were created
    */
+  @Transactional
   public Set<Long> spawnMissions(@Valid final List<TradeAgreement> agreements) {
 
     // Map each agreement to a mission, collect to a list, and then same in bulk
     Iterable<SettlementMission> savedMissions = missionrpsy.saveAll(agreements.stream()
         .map(agr -> agreementTransformer.transform(agr)).collect(Collectors.toList()));
     log.debug("The following missions were saved: {}", savedMissions);
+    missionEventOutbox.record(MissionEventType.CREATED, savedMissions);
 
     // We have to do all of this StreamSupport crap since the repository returns an iterable instead
     // of a normal collection
@@ -94,12 +102,21 @@ public class SettlementService {
    *
    * @param id identifier of the mission
    * @param mission the mission to update
+   * @param expectedVersion the version the mission must still be at, or null to go by the version
+   *     in the mission itself. Checked by the update, so a concurrent change fails the save with an
+   *     ObjectOptimisticLockingFailureException
    * @return optional containing the saved mission
    */
-  public Optional<SettlementMission> updateMission(final Long id, final SettlementMission mission) {
+  @Transactional
+  public Optional<SettlementMission> updateMission(final Long id, final SettlementMission mission,
+      final Long expectedVersion) {
     mission.setId(id);
+    if (expectedVersion != null) {
+      mission.setVersion(expectedVersion);
+    }
     SettlementMission savedMission = missionrpsy.save(mission);
     log.info("The following mission was updated: {}", savedMission);
+    missionEventOutbox.record(MissionEventType.UPDATED, Collections.singletonList(savedMission));
     return Optional.ofNullable(savedMission);
   }
 
@@ -119,8 +136,10 @@ public class SettlementService {
    *
    * @param id identifier of the mission to delete
    */
+  @Transactional
   public void deleteMission(final Long id) {
     missionrpsy.deleteById(id);
+    missionEventOutbox.recordDeleted(id);
     log.info("Mission with id '{}' was deleted", id);
   }
 }
@@ -0,0 +1,129 @@
+package org.galatea.starter.utils;
+
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A fixed-size queue that any number of threads can offer to and a single thread polls from,
+ * without locks.
+ *
+ * <p>Each slot carries a sequence number saying whose turn it is: a producer claims the next
+ * position with a CAS and then publishes its element by bumping the slot's sequence, which is the
+ * consumer's cue that the slot is ready. Offering to a full buffer fails straight away rather than
+ * waiting for room, so producers never block.
+ *
+ * @param <E> the type of the elements
+ */
+public class BoundedRingBuffer<E> {
+
+  private final AtomicReferenceArray<E> slots;
+
+  /* Per slot: equal to the position when free to write, position + 1 once written */
+  private final AtomicLongArray sequences;
+
+  private final int mask;
+
+  /* Next position to write, shared by the producers */
+  private final AtomicLong head = new AtomicLong();
+
+  /* Next position to read. Only the consumer writes it, volatile so size() can read it */
+  private volatile long tail;
+
+  /**
+   * Creates an empty buffer.
+   *
+   * @param capacity the most elements held at once, rounded up to a power of two
+   */
+  public BoundedRingBuffer(final int capacity) {
+    if (capacity < 1 || capacity > 1 << 30) {
+      throw new IllegalArgumentException("Capacity must be between 1 and 2^30, was " + capacity);
+    }
+    int size = Integer.highestOneBit(capacity);
+    if (size < capacity) {
+      size <<= 1;
+    }
+
+    this.slots = new AtomicReferenceArray<>(size);
+    this.sequences = new AtomicLongArray(size);
+    this.mask = size - 1;
+    for (int i = 0; i < size; i++) {
+      sequences.set(i, i);
+    }
+  }
+
+  /**
+   * Adds the element if there's room. Safe to call from any thread.
+   *
+   * @return false if the buffer is full
+   */
+  public boolean offer(final E element) {
+    long pos = head.get();
+    while (true) {
+      int index = (int) (pos & mask);
+      long diff = sequences.get(index) - pos;
+      if (diff == 0) {
+        if (head.compareAndSet(pos, pos + 1)) {
+          slots.lazySet(index, element);
+          sequences.set(index, pos + 1);
+          return true;
+        }
+        pos = head.get();
+      } else if (diff < 0) {
+        // The slot still holds the element from a lap ago, which the consumer hasn't taken yet
+        return false;
+      } else {
+        // Another producer got this position first
+        pos = head.get();
+      }
+    }
+  }
+
+  /**
+   * Removes the oldest element. Must only be called from the single consumer thread.
+   *
+   * @return the element, or null if the buffer is empty
+   */
+  public E poll() {
+    long pos = tail;
+    int index = (int) (pos & mask);
+    if (sequences.get(index) != pos + 1) {
+      return null;
+    }
+    E element = slots.get(index);
+    slots.lazySet(index, null);
+    // Free the slot for the producer one lap ahead
+    sequences.set(index, pos + mask + 1);
+    tail = pos + 1;
+    return element;
+  }
+
+  /**
+   * Moves up to max elements, oldest first, into the given collection. Must only be called from
+   * the single consumer thread.
+   *
+   * @return the number of elements moved
+   */
+  public int drainTo(final Collection<? super E> target, final int max) {
+    int count = 0;
+    E element;
+    while (count < max && (element = poll()) != null) {
+      target.add(element);
+      count++;
+    }
+    return count;
+  }
+
+  /**
+   * Roughly how many elements are waiting, it may be stale by the time it's returned.
+   */
+  public int size() {
+    long size = head.get() - tail;
+    return (int) Math.max(0, Math.min(size, mask + 1));
+  }
+
+  public int capacity() {
+    return mask + 1;
+  }
+}
@@ -0,0 +1,29 @@
+package org.galatea.starter.utils;
+
+import lombok.Builder;
+import lombok.Value;
+import org.springframework.boot.actuate.trace.http.HttpTrace;
+
+/**
+ * An HttpTrace plus the things we capture that actuator's trace has no room for.
+ */
+@Value
+@Builder
+public class FuseHttpTrace {
+
+  private HttpTrace trace;
+
+  /* Ids of the request, as they were in the MDC while it was handled */
+  private String internalRequestId;
+
+  private String externalRequestId;
+
+  /* The start of the request body, up to mvc.max-size-trace-payload bytes, if it's text */
+  private String requestPayload;
+
+  /* The start of the response body, up to mvc.max-size-trace-payload bytes, if it's text */
+  private String responsePayload;
+
+  /* Where a slow request spent its time, as sampled stacks in collapsed (flame graph) format */
+  private String profile;
+}
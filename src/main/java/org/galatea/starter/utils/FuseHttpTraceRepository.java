@@ -2,29 +2,173 @@ package org.galatea.starter.utils;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
 import lombok.EqualsAndHashCode;
-import lombok.RequiredArgsConstructor;
+import lombok.NonNull;
 import lombok.ToString;
 import lombok.extern.slf4j.Slf4j;
+import org.galatea.starter.utils.jms.JmsRequestIds;
+import org.galatea.starter.utils.trace.TraceStore;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.boot.actuate.trace.http.HttpTrace;
 import org.springframework.boot.actuate.trace.http.InMemoryHttpTraceRepository;
 
-@RequiredArgsConstructor
-@ToString(callSuper = true)
-@EqualsAndHashCode(callSuper = true)
+/**
+ * Logs each trace as JSON and keeps the most recent ones for actuator's trace endpoint.
+ *
+ * <p>Request threads only put the trace on a lock-free ring buffer. A background thread takes them
+ * off in batches to encode, log and store, so the JSON encoding and the synchronized list behind
+ * InMemoryHttpTraceRepository stay off the request path. If traces arrive faster than they can be
+ * written the buffer fills up, and further traces are dropped (and counted) rather than making
+ * requests wait.
+ *
+ * <p>If given a TraceStore, traces are also kept there so they can be searched.
+ */
+@ToString(callSuper = true, onlyExplicitlyIncluded = true)
+@EqualsAndHashCode(callSuper = true, onlyExplicitlyIncluded = true)
 @Slf4j
-public class FuseHttpTraceRepository extends InMemoryHttpTraceRepository {
+public class FuseHttpTraceRepository extends InMemoryHttpTraceRepository
+    implements DisposableBean {
+
+  /* Counter of traces dropped because the buffer was full */
+  public static final String DROPPED_COUNTER = "http.trace.dropped";
+
+  /* Gauge of how many traces are waiting to be written */
+  public static final String QUEUE_DEPTH_GAUGE = "http.trace.queue.depth";
+
+  private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+
+  private static final long SHUTDOWN_TIMEOUT_MILLIS = 5000;
 
   private final ObjectMapper objectMapper;
 
+  private final BoundedRingBuffer<FuseHttpTrace> buffer;
+
+  private final int batchSize;
+
+  private final Counter dropped;
+
+  private final TraceStore traceStore;
+
+  private final Thread drainer;
+
+  private volatile boolean shutdown;
+
+  /**
+   * Creates the repository and starts its drainer thread.
+   *
+   * @param objectMapper encodes the traces that are logged
+   * @param capacity how many traces can wait to be written before new ones are dropped
+   * @param batchSize the most traces written per pass of the drainer
+   * @param meterRegistry where the dropped count and queue depth are registered
+   */
+  public FuseHttpTraceRepository(@NonNull final ObjectMapper objectMapper, final int capacity,
+      final int batchSize, @NonNull final MeterRegistry meterRegistry) {
+    this(objectMapper, capacity, batchSize, meterRegistry, null);
+  }
+
+  /**
+   * Creates the repository and starts its drainer thread.
+   *
+   * @param objectMapper encodes the traces that are logged
+   * @param capacity how many traces can wait to be written before new ones are dropped
+   * @param batchSize the most traces written per pass of the drainer
+   * @param meterRegistry where the dropped count and queue depth are registered
+   * @param traceStore where traces are kept to be searched, or null not to keep them
+   */
+  public FuseHttpTraceRepository(@NonNull final ObjectMapper objectMapper, final int capacity,
+      final int batchSize, @NonNull final MeterRegistry meterRegistry,
+      final TraceStore traceStore) {
+    this.objectMapper = objectMapper;
+    this.traceStore = traceStore;
+    this.buffer = new BoundedRingBuffer<>(capacity);
+    this.batchSize = batchSize;
+    this.dropped = Counter.builder(DROPPED_COUNTER)
+        .description("Traces dropped because the trace buffer was full")
+        .register(meterRegistry);
+    Gauge.builder(QUEUE_DEPTH_GAUGE, buffer, BoundedRingBuffer::size)
+        .description("Traces waiting to be written")
+        .register(meterRegistry);
+
+    this.drainer = new Thread(this::drain, "http-trace-drainer");
+    drainer.setDaemon(true);
+    drainer.start();
+  }
+
   @Override
   public void add(final HttpTrace trace) {
+    // Still on the request thread, so the MDC has the request's ids
+    add(FuseHttpTrace.builder()
+        .trace(trace)
+        .internalRequestId(JmsRequestIds.currentInternalId())
+        .externalRequestId(JmsRequestIds.currentExternalId())
+        .build());
+  }
+
+  /**
+   * Queues the trace, along with any payloads captured, to be logged and kept for actuator.
+   * Never blocks; if the buffer is full the trace is dropped.
+   */
+  public void add(final FuseHttpTrace trace) {
+    if (!buffer.offer(trace)) {
+      dropped.increment();
+    }
+  }
+
+  /**
+   * Stops the drainer once it has written what's already queued.
+   */
+  @Override
+  public void destroy() throws InterruptedException {
+    shutdown = true;
+    LockSupport.unpark(drainer);
+    drainer.join(SHUTDOWN_TIMEOUT_MILLIS);
+    if (drainer.isAlive()) {
+      log.warn("Timed out writing {} queued traces", buffer.size());
+    }
+  }
+
+  private void drain() {
+    List<FuseHttpTrace> batch = new ArrayList<>(batchSize);
+    while (true) {
+      if (buffer.drainTo(batch, batchSize) == 0) {
+        if (shutdown) {
+          return;
+        }
+        // Producers don't wake us, that would cost them, so check back shortly
+        LockSupport.parkNanos(IDLE_PARK_NANOS);
+        continue;
+      }
+
+      for (FuseHttpTrace trace : batch) {
+        write(trace);
+      }
+      batch.clear();
+    }
+  }
+
+  private void write(final FuseHttpTrace trace) {
     // HttpTrace has no toString, nor do its inner classes...
     try {
-      log.info("Adding trace info: {}", objectMapper.writeValueAsString(trace));
+      byte[] json = objectMapper.writeValueAsBytes(trace);
+      log.info("Adding trace info: {}", new String(json, StandardCharsets.UTF_8));
+      if (traceStore != null) {
+        traceStore.append(trace, json);
+      }
     } catch (JsonProcessingException e) {
       log.warn("Error logging trace info: ", e);
+    } catch (IOException | RuntimeException e) {
+      // One bad trace mustn't stop the drainer
+      log.warn("Error storing trace info: ", e);
     }
-    super.add(trace);
+    super.add(trace.getTrace());
   }
 }
@@ -0,0 +1,134 @@
+package org.galatea.starter.utils;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Runs tasks on a fixed set of single-threaded lanes, picking the lane from a key supplied with each
+ * task. Tasks with the same key always land on the same lane, so they run one at a time in the order
+ * they were submitted, while tasks with different keys can run in parallel.
+ *
+ * <p>Each lane has a bounded queue. Submitting to a full lane blocks the caller until there is
+ * room, which pushes back on whoever is feeding us rather than letting the backlog grow without
+ * limit.
+ */
+@Slf4j
+public class PartitionedExecutor {
+
+  /* Gauge of how many tasks are waiting on each lane, tagged by executor name and lane index */
+  public static final String QUEUE_DEPTH_GAUGE = "partitioned.executor.queue.depth";
+
+  private static final long IDLE_POLL_MILLIS = 100;
+
+  private final String name;
+
+  private final List<Lane> lanes;
+
+  private volatile boolean shutdown;
+
+  /**
+   * Creates the executor and starts its lane threads.
+   *
+   * @param name used in thread names and as a metric tag
+   * @param laneCount how many lanes (and so threads) to run
+   * @param laneCapacity how many tasks each lane can have waiting before submit blocks
+   * @param meterRegistry where the per-lane queue depth gauges are registered
+   */
+  public PartitionedExecutor(@NonNull final String name, final int laneCount,
+      final int laneCapacity, @NonNull final MeterRegistry meterRegistry) {
+    if (laneCount < 1) {
+      throw new IllegalArgumentException("Lane count must be at least 1, was " + laneCount);
+    }
+
+    this.name = name;
+    this.lanes = new ArrayList<>(laneCount);
+    for (int i = 0; i < laneCount; i++) {
+      Lane lane = new Lane(name + "-lane-" + i, new LinkedBlockingQueue<>(laneCapacity));
+      Gauge.builder(QUEUE_DEPTH_GAUGE, lane.queue, BlockingQueue::size)
+          .description("Tasks waiting to run on a lane")
+          .tag("executor", name)
+          .tag("lane", String.valueOf(i))
+          .register(meterRegistry);
+      lanes.add(lane);
+      lane.thread.start();
+    }
+  }
+
+  /**
+   * Queues the task on the lane for the given key, blocking while that lane is full.
+   *
+   * @throws RejectedExecutionException if the executor has been shut down
+   * @throws InterruptedException if interrupted while waiting for room on the lane
+   */
+  public void execute(@NonNull final Object key, @NonNull final Runnable task)
+      throws InterruptedException {
+    if (shutdown) {
+      throw new RejectedExecutionException(name + " has been shut down");
+    }
+    lanes.get(laneFor(key)).queue.put(task);
+  }
+
+  /**
+   * Stops accepting tasks and waits for the lanes to finish the tasks already queued.
+   *
+   * @return true if all lanes finished within the timeout
+   */
+  public boolean shutdown(final long timeout, final TimeUnit unit) throws InterruptedException {
+    shutdown = true;
+    long deadline = System.nanoTime() + unit.toNanos(timeout);
+    for (Lane lane : lanes) {
+      lane.thread.join(Math.max(1, TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime())));
+    }
+    return lanes.stream().noneMatch(lane -> lane.thread.isAlive());
+  }
+
+  int laneFor(final Object key) {
+    return Math.floorMod(key.hashCode(), lanes.size());
+  }
+
+  private class Lane implements Runnable {
+
+    private final BlockingQueue<Runnable> queue;
+
+    private final Thread thread;
+
+    Lane(final String threadName, final BlockingQueue<Runnable> queue) {
+      this.queue = queue;
+      this.thread = new Thread(this, threadName);
+    }
+
+    @Override
+    public void run() {
+      // Once shut down, keep going until the queue is drained rather than dropping what was
+      // already accepted
+      while (!shutdown || !queue.isEmpty()) {
+        Runnable task;
+        try {
+          // Poll rather than take so that an idle lane notices shutdown
+          task = queue.poll(IDLE_POLL_MILLIS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          return;
+        }
+        if (task == null) {
+          continue;
+        }
+
+        try {
+          task.run();
+        } catch (RuntimeException e) {
+          // One bad task mustn't take the lane, and every later task for its keys, down with it
+          log.error("Task failed on {}", Thread.currentThread().getName(), e);
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,145 @@
+package org.galatea.starter.utils;
+
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.net.NetworkInterface;
+import java.net.SocketException;
+import java.net.UnknownHostException;
+import java.time.Instant;
+import java.util.Collections;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Generates Snowflake-style request ids: unique across nodes, roughly ordered by time, and cheap
+ * enough to make one for every request.
+ *
+ * <p>An id is a positive long made up of (high to low bits):
+ *
+ * <ul>
+ * <li>41 bits of milliseconds since 2020-01-01, good until 2089</li>
+ * <li>10 bits of node id, which must differ between nodes</li>
+ * <li>12 bits of sequence, counting ids made by the node in the same millisecond</li>
+ * </ul>
+ *
+ * <p>The last timestamp and sequence handed out are kept together in one AtomicLong, so making an
+ * id is a single compare-and-set however many threads ask. A node that needs more than 4096 ids
+ * in a millisecond borrows from the next millisecond rather than waiting for it.
+ */
+@Slf4j
+public class RequestIdGenerator {
+
+  /* 2020-01-01T00:00:00Z */
+  static final long EPOCH_MILLIS = 1577836800000L;
+
+  static final int NODE_BITS = 10;
+  static final int SEQUENCE_BITS = 12;
+
+  public static final int MAX_NODE_ID = (1 << NODE_BITS) - 1;
+
+  private static final long SEQUENCE_MASK = (1L << SEQUENCE_BITS) - 1;
+  private static final int TIMESTAMP_SHIFT = NODE_BITS + SEQUENCE_BITS;
+
+  private final int nodeId;
+
+  /* The last id's timestamp and sequence, as (millis since EPOCH_MILLIS) << SEQUENCE_BITS | seq */
+  private final AtomicLong last = new AtomicLong();
+
+  /**
+   * Creates a generator for the given node.
+   *
+   * @param nodeId between 0 and MAX_NODE_ID, unique to this node
+   */
+  public RequestIdGenerator(final int nodeId) {
+    if (nodeId < 0 || nodeId > MAX_NODE_ID) {
+      throw new IllegalArgumentException(
+          "Node id must be between 0 and " + MAX_NODE_ID + ", was " + nodeId);
+    }
+    this.nodeId = nodeId;
+  }
+
+  /**
+   * Creates a generator whose node id is taken from the low bits of this host's IPv4 address.
+   * That's unique for nodes on the same subnet, but set the node id explicitly if it may not be.
+   *
+   * <p>The host name often resolves to a loopback address (127.0.1.1 on Debian), which every host
+   * shares, so in that case the address of the first network interface that's up is used
+   * instead. If there's no such interface the node id is random.
+   */
+  public static RequestIdGenerator forLocalHost() {
+    int nodeId;
+    byte[] address = localAddress();
+    if (address != null) {
+      nodeId = ((address[address.length - 2] & 0xFF) << 8 | (address[address.length - 1] & 0xFF))
+          & MAX_NODE_ID;
+    } else {
+      nodeId = ThreadLocalRandom.current().nextInt(MAX_NODE_ID + 1);
+      log.warn("Could not find an address for this host, using random node id {}", nodeId);
+    }
+    log.info("Generating request ids as node {}", nodeId);
+    return new RequestIdGenerator(nodeId);
+  }
+
+  /**
+   * The next id for this node. Ids made by one thread always increase.
+   */
+  public long nextId() {
+    long now = System.currentTimeMillis() - EPOCH_MILLIS;
+    // One past the last id, or the first of this millisecond if the clock has moved on. If the
+    // clock goes backwards this carries on from where we were rather than repeat ids
+    long next = last.updateAndGet(previous -> Math.max(previous + 1, now << SEQUENCE_BITS));
+
+    return (next >>> SEQUENCE_BITS) << TIMESTAMP_SHIFT
+        | (long) nodeId << SEQUENCE_BITS
+        | (next & SEQUENCE_MASK);
+  }
+
+  public int getNodeId() {
+    return nodeId;
+  }
+
+  /**
+   * When the given id was generated, to the millisecond.
+   */
+  public static Instant timestampOf(final long id) {
+    return Instant.ofEpochMilli((id >>> TIMESTAMP_SHIFT) + EPOCH_MILLIS);
+  }
+
+  /**
+   * Which node generated the given id.
+   */
+  public static int nodeIdOf(final long id) {
+    return (int) (id >>> SEQUENCE_BITS) & MAX_NODE_ID;
+  }
+
+  /*
+   * This host's IPv4 address, or null if it has none but loopback.
+   */
+  private static byte[] localAddress() {
+    try {
+      InetAddress localHost = InetAddress.getLocalHost();
+      if (localHost instanceof Inet4Address && !localHost.isLoopbackAddress()) {
+        return localHost.getAddress();
+      }
+    } catch (UnknownHostException e) {
+      log.debug("Could not resolve the local host name", e);
+    }
+
+    try {
+      for (NetworkInterface nic : Collections.list(NetworkInterface.getNetworkInterfaces())) {
+        if (!nic.isUp() || nic.isLoopback() || nic.isVirtual()) {
+          continue;
+        }
+        for (InetAddress address : Collections.list(nic.getInetAddresses())) {
+          if (address instanceof Inet4Address && !address.isLinkLocalAddress()) {
+            return address.getAddress();
+          }
+        }
+      }
+    } catch (SocketException e) {
+      log.warn("Could not list the network interfaces", e);
+    }
+    return null;
+  }
+}
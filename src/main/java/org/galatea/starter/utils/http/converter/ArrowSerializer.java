@@ -0,0 +1,125 @@
+package org.galatea.starter.utils.http.converter;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.arrow.memory.BufferAllocator;
+import org.apache.arrow.memory.RootAllocator;
+import org.apache.arrow.vector.BigIntVector;
+import org.apache.arrow.vector.Float8Vector;
+import org.apache.arrow.vector.VarCharVector;
+import org.apache.arrow.vector.VectorSchemaRoot;
+import org.apache.arrow.vector.ipc.ArrowStreamWriter;
+import org.apache.arrow.vector.types.FloatingPointPrecision;
+import org.apache.arrow.vector.types.pojo.ArrowType;
+import org.apache.arrow.vector.types.pojo.Field;
+import org.apache.arrow.vector.types.pojo.Schema;
+import org.apache.commons.io.output.CloseShieldOutputStream;
+import org.galatea.starter.domain.SettlementMission;
+
+/**
+ * Writes SettlementMissions in the Apache Arrow IPC streaming format, a columnar format that
+ * analytics tools (pandas, Spark, DuckDB etc.) can load without parsing text.
+ *
+ * <p>Unlike CsvSerializer and XlsxSerializer this isn't generic, since Arrow needs a typed column
+ * for each field; the schema here mirrors SettlementMission.
+ */
+@Slf4j
+public class ArrowSerializer {
+
+  /*
+   * Missions are written in record batches of this many rows. Only one batch is held in memory at
+   * a time, and bigger batches compress and scan better on the reading side.
+   */
+  static final int BATCH_SIZE = 8192;
+
+  static final Schema MISSION_SCHEMA = new Schema(Arrays.asList(
+      Field.nullable("id", new ArrowType.Int(64, true)),
+      Field.nullable("instrument", ArrowType.Utf8.INSTANCE),
+      Field.nullable("externalParty", ArrowType.Utf8.INSTANCE),
+      Field.nullable("depot", ArrowType.Utf8.INSTANCE),
+      Field.nullable("direction", ArrowType.Utf8.INSTANCE),
+      Field.nullable("qty", new ArrowType.FloatingPoint(FloatingPointPrecision.DOUBLE)),
+      Field.nullable("version", new ArrowType.Int(64, true))));
+
+  /* Arrow vectors live off-heap. Each export gets its own child allocator of this one */
+  private static final BufferAllocator ROOT_ALLOCATOR = new RootAllocator();
+
+  private ArrowSerializer() {}
+
+  /**
+   * Write the given missions to the stream as an Arrow IPC stream, a batch at a time. The stream
+   * is not closed.
+   */
+  public static void serializeToArrow(final Iterable<SettlementMission> missions,
+      final OutputStream out) throws IOException {
+    try (BufferAllocator allocator =
+        ROOT_ALLOCATOR.newChildAllocator("arrow-export", 0, Long.MAX_VALUE);
+        VectorSchemaRoot batch = VectorSchemaRoot.create(MISSION_SCHEMA, allocator);
+        // Closing the writer closes its channel, so shield the caller's stream from that
+        ArrowStreamWriter writer = new ArrowStreamWriter(batch, null,
+            Channels.newChannel(new CloseShieldOutputStream(out)))) {
+      BigIntVector id = (BigIntVector) batch.getVector("id");
+      VarCharVector instrument = (VarCharVector) batch.getVector("instrument");
+      VarCharVector externalParty = (VarCharVector) batch.getVector("externalParty");
+      VarCharVector depot = (VarCharVector) batch.getVector("depot");
+      VarCharVector direction = (VarCharVector) batch.getVector("direction");
+      Float8Vector qty = (Float8Vector) batch.getVector("qty");
+      BigIntVector version = (BigIntVector) batch.getVector("version");
+
+      writer.start();
+      batch.allocateNew();
+      int row = 0;
+      for (SettlementMission mission : missions) {
+        setLong(id, row, mission.getId());
+        setString(instrument, row, mission.getInstrument());
+        setString(externalParty, row, mission.getExternalParty());
+        setString(depot, row, mission.getDepot());
+        setString(direction, row, mission.getDirection());
+        setDouble(qty, row, mission.getQty());
+        setLong(version, row, mission.getVersion());
+        row++;
+
+        if (row == BATCH_SIZE) {
+          batch.setRowCount(row);
+          writer.writeBatch();
+          // Reuses the vectors, releasing the previous batch's buffers
+          batch.allocateNew();
+          row = 0;
+        }
+      }
+      if (row > 0) {
+        batch.setRowCount(row);
+        writer.writeBatch();
+      }
+      writer.end();
+    }
+  }
+
+  private static void setLong(final BigIntVector vector, final int row, final Long value) {
+    if (value == null) {
+      vector.setNull(row);
+    } else {
+      vector.setSafe(row, value);
+    }
+  }
+
+  private static void setDouble(final Float8Vector vector, final int row, final Double value) {
+    if (value == null) {
+      vector.setNull(row);
+    } else {
+      vector.setSafe(row, value);
+    }
+  }
+
+  private static void setString(final VarCharVector vector, final int row, final String value) {
+    if (value == null) {
+      vector.setNull(row);
+    } else {
+      vector.setSafe(row, value.getBytes(StandardCharsets.UTF_8));
+    }
+  }
+}
@@ -1,14 +1,43 @@
 package org.galatea.starter.utils.http.converter;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.MapperFeature;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SequenceWriter;
 import com.fasterxml.jackson.dataformat.csv.CsvMapper;
 import com.fasterxml.jackson.dataformat.csv.CsvSchema;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
 import lombok.extern.slf4j.Slf4j;
 
 @Slf4j
 public class CsvSerializer {
 
+  // Note that Jackson CSV doesn't work on objects with fields that hold complex objects
+  // See https://github.com/FasterXML/jackson-dataformat-csv/issues/9
+  // The mapper and the writers it creates are thread-safe once configured, so they're shared.
+  // Leave the output (and input) stream open when we're done with it, it belongs to the caller.
+  private static final CsvMapper MAPPER = new CsvMapper();
+
+  static {
+    MAPPER.disable(MapperFeature.SORT_PROPERTIES_ALPHABETICALLY);
+    MAPPER.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+    MAPPER.disable(JsonParser.Feature.AUTO_CLOSE_SOURCE);
+  }
+
+  /* Building the schema introspects the class, so do it once per class */
+  private static final Map<Class<?>, ObjectWriter> WRITERS = new ConcurrentHashMap<>();
+
+  private static final Map<Class<?>, ObjectReader> READERS = new ConcurrentHashMap<>();
+
   private CsvSerializer() {}
 
   /**
@@ -27,15 +56,65 @@ public class CsvSerializer {
    */
   public static <T> String serializeToCsv(final Iterable<T> rows, final Class<T> clazz)
       throws IOException {
-    // Note that Jackson CSV doesn't work on objects with fields that hold complex objects
-    // See https://github.com/FasterXML/jackson-dataformat-csv/issues/9
-    CsvMapper mapper = new CsvMapper();
-    mapper.disable(MapperFeature.SORT_PROPERTIES_ALPHABETICALLY);
+    return writerFor(clazz).writeValueAsString(rows);
+    // See CsvWriterTest for examples of Jackson CSV behavior
+  }
+
+  /**
+   * Serialize the given objects to a CSV document, writing each row to the given stream as it goes
+   * rather than building the whole document in memory. The output is UTF-8 and the same as
+   * {@link #serializeToCsv(Iterable, Class)}. The stream is not closed.
+   *
+   * @param rows the collection of objects that should be serialized into the CSV document
+   * @param clazz the class that is the type of the row data
+   * @param out where to write the CSV document
+   * @param <T> the type of the row data
+   */
+  public static <T> void serializeToCsv(final Iterable<T> rows, final Class<T> clazz,
+      final OutputStream out) throws IOException {
+    try (SequenceWriter rowWriter = writerFor(clazz).writeValues(out)) {
+      for (T row : rows) {
+        rowWriter.write(row);
+      }
+    }
+  }
+
+  /**
+   * Read a CSV document with a header row, handing each data row to the given consumer as soon as
+   * it's parsed, so only one row is held in memory at a time. Columns are matched to properties by
+   * the names in the header row, in any order; columns that don't match a property are ignored.
+   * The stream is not closed.
+   *
+   * @param in the CSV document
+   * @param clazz the class that is the type of the row data
+   * @param rowConsumer called with each row, in order
+   * @param <T> the type of the row data
+   * @return the number of rows read
+   */
+  public static <T> long deserializeFromCsv(final InputStream in, final Class<T> clazz,
+      final Consumer<? super T> rowConsumer) throws IOException {
+    long count = 0;
+    try (MappingIterator<T> rows = READERS.computeIfAbsent(clazz, CsvSerializer::newReader)
+        .readValues(in)) {
+      while (rows.hasNextValue()) {
+        rowConsumer.accept(rows.nextValue());
+        count++;
+      }
+    }
+    return count;
+  }
+
+  private static ObjectReader newReader(final Class<?> clazz) {
+    // Take the columns from the header row rather than the class, so they can come in any order
+    return MAPPER.readerFor(clazz)
+        .with(CsvSchema.emptySchema().withHeader())
+        .without(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+  }
+
+  private static ObjectWriter writerFor(final Class<?> clazz) {
     // Jackson CSV uses the property names for the header row by default. To have a custom header
     // for one or more columns, see
     // https://stackoverflow.com/questions/40221223/jackson-dataformat-csv-are-custom-column-names-possible
-    CsvSchema schema = mapper.schemaFor(clazz).withHeader();
-    return mapper.writer(schema).writeValueAsString(rows);
-    // See CsvWriterTest for examples of Jackson CSV behavior
+    return WRITERS.computeIfAbsent(clazz, key -> MAPPER.writer(MAPPER.schemaFor(key).withHeader()));
   }
 }
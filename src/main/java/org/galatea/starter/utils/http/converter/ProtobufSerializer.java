@@ -0,0 +1,37 @@
+package org.galatea.starter.utils.http.converter;
+
+import com.google.protobuf.MessageLite;
+import java.io.IOException;
+import java.io.OutputStream;
+import lombok.extern.slf4j.Slf4j;
+import org.galatea.starter.utils.translation.ITranslator;
+
+/**
+ * Writes a sequence of objects as length-delimited protobuf messages.
+ *
+ * <p>Protobuf has no container format for a sequence of messages, so each message is preceded by
+ * its length as a varint. Readers get them back one at a time with parseDelimitedFrom, which
+ * returns null once the stream is exhausted.
+ */
+@Slf4j
+public class ProtobufSerializer {
+
+  private ProtobufSerializer() {}
+
+  /**
+   * Translate each row to a protobuf message and write it to the given stream straight away, so
+   * only one message is held in memory at a time. The stream is not closed.
+   *
+   * @param rows the objects to write
+   * @param translator translates each row to its protobuf message
+   * @param out where to write the messages
+   * @param <T> the type of the row data
+   */
+  public static <T> void serializeDelimited(final Iterable<T> rows,
+      final ITranslator<T, ? extends MessageLite> translator, final OutputStream out)
+      throws IOException {
+    for (T row : rows) {
+      translator.translate(row).writeDelimitedTo(out);
+    }
+  }
+}
@@ -44,8 +44,9 @@ public class SettlementMissionXlsxConverter
   protected void writeInternal(final SettlementMissionList settlementMissionList,
       final HttpOutputMessage outputMessage) throws IOException {
     log.info("Converting SettlementMissionList to XLSX for HTTP response");
-    outputMessage.getBody().write(XlsxSerializer.serializeToXlsx(
-        settlementMissionList.getSettlementMissions(), SettlementMission.class));
+    // Stream straight to the response rather than building the whole spreadsheet in memory first
+    XlsxSerializer.serializeToXlsx(settlementMissionList.getSettlementMissions(),
+        SettlementMission.class, outputMessage.getBody());
     log.info("Converted SettlementMissionList to XLSX");
   }
 
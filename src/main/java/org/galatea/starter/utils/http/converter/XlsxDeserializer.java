@@ -0,0 +1,218 @@
+package org.galatea.starter.utils.http.converter;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.io.ByteStreams;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import javax.xml.XMLConstants;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParserFactory;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.poi.openxml4j.exceptions.OpenXML4JException;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
+import org.apache.poi.ss.usermodel.DataFormatter;
+import org.apache.poi.ss.usermodel.DateUtil;
+import org.apache.poi.ss.util.CellReference;
+import org.apache.poi.ss.util.NumberToTextConverter;
+import org.apache.poi.xssf.eventusermodel.ReadOnlySharedStringsTable;
+import org.apache.poi.xssf.eventusermodel.XSSFReader;
+import org.apache.poi.xssf.eventusermodel.XSSFSheetXMLHandler;
+import org.apache.poi.xssf.eventusermodel.XSSFSheetXMLHandler.SheetContentsHandler;
+import org.apache.poi.xssf.usermodel.XSSFComment;
+import org.galatea.starter.entrypoint.exception.PayloadTooLargeException;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+
+/**
+ * Reads rows out of the first sheet of an XLSX spreadsheet, the reverse of XlsxSerializer.
+ *
+ * <p>The sheet is parsed with POI's SAX event model rather than loaded into an XSSFWorkbook, so
+ * only the row being read (plus the workbook's shared string table) is held in memory however many
+ * rows the sheet has.
+ */
+@Slf4j
+// See XlsxDeserializerTest for example input
+public class XlsxDeserializer {
+
+  /* Maps each row's header-to-value map on to the row class, honoring @JsonProperty headers */
+  private static final ObjectMapper MAPPER = new ObjectMapper()
+      .disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+
+  private XlsxDeserializer() {}
+
+  /**
+   * Read a spreadsheet with a header row, handing each data row to the given consumer as soon as
+   * it's parsed. Columns are matched to properties by the names in the header row, in any order;
+   * columns that don't match a property are ignored, as are empty rows. The stream is not closed.
+   *
+   * <p>A spreadsheet is a zip file, which POI can only read lazily from a file, so the stream is
+   * first copied to a temp file. maxBytes bounds how much disk that can take.
+   *
+   * @param in the XLSX spreadsheet
+   * @param maxBytes the largest spreadsheet accepted
+   * @param clazz the class that is the type of the row data
+   * @param rowConsumer called with each row, in order
+   * @param <T> the type of the row data
+   * @return the number of rows read
+   * @throws PayloadTooLargeException if the spreadsheet is over maxBytes, before any rows are read
+   */
+  public static <T> long deserializeFromXlsx(final InputStream in, final long maxBytes,
+      final Class<T> clazz, final Consumer<? super T> rowConsumer) throws IOException {
+    Path spooled = Files.createTempFile("upload", ".xlsx");
+    try {
+      // Copy one byte more than the limit, to tell a file of exactly maxBytes from a bigger one
+      long size = Files.copy(ByteStreams.limit(in, maxBytes + 1), spooled,
+          StandardCopyOption.REPLACE_EXISTING);
+      if (size > maxBytes) {
+        throw new PayloadTooLargeException(maxBytes);
+      }
+      return deserializeFromXlsx(spooled.toFile(), clazz, rowConsumer);
+    } finally {
+      Files.deleteIfExists(spooled);
+    }
+  }
+
+  /**
+   * Read a spreadsheet file with a header row, handing each data row to the given consumer as soon
+   * as it's parsed. See {@link #deserializeFromXlsx(InputStream, long, Class, Consumer)}.
+   */
+  public static <T> long deserializeFromXlsx(final File file, final Class<T> clazz,
+      final Consumer<? super T> rowConsumer) throws IOException {
+    OPCPackage pkg;
+    try {
+      pkg = OPCPackage.open(file, PackageAccess.READ);
+    } catch (OpenXML4JException e) {
+      throw new IOException("Unable to open spreadsheet", e);
+    }
+
+    try {
+      XSSFReader reader = new XSSFReader(pkg);
+      Iterator<InputStream> sheets = reader.getSheetsData();
+      if (!sheets.hasNext()) {
+        return 0;
+      }
+
+      RowHandler<T> rows = new RowHandler<>(clazz, rowConsumer);
+      XMLReader parser = newXmlReader();
+      parser.setContentHandler(new XSSFSheetXMLHandler(reader.getStylesTable(),
+          new ReadOnlySharedStringsTable(pkg), rows, new RawNumberFormatter(), false));
+      try (InputStream sheet = sheets.next()) {
+        parser.parse(new InputSource(sheet));
+      }
+      log.info("Read {} rows from spreadsheet", rows.count);
+      return rows.count;
+    } catch (OpenXML4JException | SAXException | ParserConfigurationException e) {
+      throw new IOException("Unable to read spreadsheet", e);
+    } finally {
+      // Read-only packages are discarded rather than closed, closing would try to save them
+      pkg.revert();
+    }
+  }
+
+  private static XMLReader newXmlReader() throws ParserConfigurationException, SAXException {
+    // Sheets come from outside, so don't resolve any external entities they declare
+    SAXParserFactory factory = SAXParserFactory.newInstance();
+    factory.setNamespaceAware(true);
+    factory.setFeature(XMLConstants.FEATURE_SECURE_PROCESSING, true);
+    factory.setFeature("http://apache.org/xml/features/disallow-doctype-decl", true);
+    return factory.newSAXParser().getXMLReader();
+  }
+
+  /**
+   * Collects the cells of each row as the sheet is parsed. The first non-empty row is taken as the
+   * header row, every later non-empty row is mapped to the row class and handed on.
+   */
+  private static class RowHandler<T> implements SheetContentsHandler {
+
+    private final Class<T> clazz;
+
+    private final Consumer<? super T> rowConsumer;
+
+    /* Header for each column index, null until the header row has been read */
+    private List<String> headers;
+
+    private final List<String> headerCells = new ArrayList<>();
+
+    private final Map<String, String> values = new LinkedHashMap<>();
+
+    /* Column of the next cell, for cells that come without a reference */
+    private int nextCol;
+
+    private long count;
+
+    RowHandler(final Class<T> clazz, final Consumer<? super T> rowConsumer) {
+      this.clazz = clazz;
+      this.rowConsumer = rowConsumer;
+    }
+
+    @Override
+    public void startRow(final int rowNum) {
+      headerCells.clear();
+      values.clear();
+      nextCol = 0;
+    }
+
+    @Override
+    public void endRow(final int rowNum) {
+      if (headers == null) {
+        if (!headerCells.isEmpty()) {
+          headers = new ArrayList<>(headerCells);
+        }
+      } else if (!values.isEmpty()) {
+        rowConsumer.accept(MAPPER.convertValue(values, clazz));
+        count++;
+      }
+    }
+
+    @Override
+    public void cell(final String cellReference, final String formattedValue,
+        final XSSFComment comment) {
+      // Cells are reported left to right, but blank cells are skipped
+      int col = cellReference == null ? nextCol : new CellReference(cellReference).getCol();
+      nextCol = col + 1;
+
+      if (headers == null) {
+        while (headerCells.size() < col) {
+          headerCells.add(null);
+        }
+        headerCells.add(formattedValue);
+      } else if (col < headers.size() && headers.get(col) != null) {
+        values.put(headers.get(col), formattedValue);
+      }
+    }
+
+    @Override
+    public void headerFooter(final String text, final boolean isHeader, final String tagName) {
+      // Page headers and footers aren't data
+    }
+  }
+
+  /**
+   * Leaves numbers as they're stored rather than as they're displayed, e.g. 1234.5 rather than
+   * "1,234.50", so they parse back to the number they are. Dates are still formatted.
+   */
+  private static class RawNumberFormatter extends DataFormatter {
+
+    @Override
+    public String formatRawCellContents(final double value, final int formatIndex,
+        final String formatString) {
+      if (DateUtil.isADateFormat(formatIndex, formatString)) {
+        return super.formatRawCellContents(value, formatIndex, formatString);
+      }
+      return NumberToTextConverter.toText(value);
+    }
+  }
+}
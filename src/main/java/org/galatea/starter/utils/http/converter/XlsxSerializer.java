@@ -4,20 +4,33 @@ import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Array;
 import java.lang.reflect.Field;
 import java.lang.reflect.Modifier;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import lombok.SneakyThrows;
+import lombok.Value;
 import lombok.extern.slf4j.Slf4j;
-import org.apache.commons.lang3.reflect.FieldUtils;
 import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellStyle;
 import org.apache.poi.ss.usermodel.Row;
 import org.apache.poi.ss.usermodel.Sheet;
 import org.apache.poi.ss.usermodel.Workbook;
-import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
 
 @Slf4j
 // See XlsxSerializerTest for example output
@@ -25,11 +38,56 @@ public class XlsxSerializer {
 
   private XlsxSerializer() {}
 
+  /*
+   * How many rows SXSSF keeps in memory before flushing the oldest to its temp file. We only ever
+   * write rows in order and never go back to them, so this just needs to be big enough to amortize
+   * the flushes.
+   */
+  private static final int ROW_ACCESS_WINDOW = 100;
+
+  /* Getters take the row as an Object and return the field value as an Object */
+  private static final MethodType GETTER_TYPE =
+      MethodType.methodType(Object.class, Object.class);
+
+  private static final Map<Class<?>, SerializationPlan> PLANS = new ConcurrentHashMap<>();
+
+  /* Shows as many decimal places as the value needs (up to double precision), but at least one */
+  private static final String DECIMAL_FORMAT = "0.0##############";
+  private static final String DATE_FORMAT = "yyyy-mm-dd";
+  private static final String DATE_TIME_FORMAT = "yyyy-mm-dd hh:mm:ss";
+
+  /* Whole numbers bigger than this can't be held exactly by a numeric (double) cell */
+  private static final long MAX_EXACT_WHOLE_NUMBER = 1L << 53;
+
+  /**
+   * The headers and field getters for one row class, worked out once and then reused for every
+   * spreadsheet of that class. Public so XlsxSerializerBenchmark can time reading cells through it.
+   */
+  @Value
+  public static class SerializationPlan {
+
+    private List<String> headers;
+
+    private List<MethodHandle> getters;
+
+    /**
+     * Read the value for the given column from the given row.
+     */
+    @SneakyThrows // Field getters don't throw checked exceptions, but invokeExact is declared to
+    public Object readCell(final Object row, final int col) {
+      return (Object) getters.get(col).invokeExact(row);
+    }
+  }
+
   /**
    * Serialize the given objects to an XLSX spreadsheet.
    *
-   * <p>Doesn't do any special handling of nested complex objects or collections in the given
-   * row objects - each field in the row object is basically toString()'ed and put in a cell.
+   * <p>Numbers, booleans and dates are written as native cells of that type. Doesn't do any
+   * special handling of nested complex objects or collections in the given row objects - each
+   * other field in the row object is basically toString()'ed and put in a cell.
+   *
+   * <p>This holds the whole spreadsheet in memory as a byte array, prefer
+   * {@link #serializeToXlsx(Iterable, Class, OutputStream)} when there's a stream to write to.
    *
    * @param rows the row data that the spreadsheet should hold
    * @param clazz the class that is the type of the row data
@@ -38,15 +96,72 @@ public class XlsxSerializer {
    */
   public static <T> byte[] serializeToXlsx(final Iterable<T> rows, final Class<T> clazz)
       throws IOException {
+    try (ByteArrayOutputStream baos = new ByteArrayOutputStream()) {
+      serializeToXlsx(rows, clazz, baos);
+      return baos.toByteArray();
+    } catch (IOException e) {
+      log.error("Unable to write spreadsheet to bytes", e);
+      throw e;
+    }
+  }
+
+  /**
+   * Serialize the given objects to an XLSX spreadsheet, writing it to the given stream.
+   *
+   * <p>Rows are built with SXSSF, so only the last {@value #ROW_ACCESS_WINDOW} rows are held in
+   * memory at a time and the rest are spooled to a (compressed) temp file until the workbook is
+   * written out. Memory use stays flat however many rows there are. The stream is not closed.
+   *
+   * @param rows the row data that the spreadsheet should hold
+   * @param clazz the class that is the type of the row data
+   * @param out where to write the spreadsheet
+   * @param <T> the type of the row data
+   */
+  public static <T> void serializeToXlsx(final Iterable<T> rows, final Class<T> clazz,
+      final OutputStream out) throws IOException {
     // XSSF is used for xlsx-format spreadsheets, HSSF is used for xls-format
     // SXSSF is the streaming version of XSSF, and is useful for working with large spreadsheets
-    try (Workbook wb = new XSSFWorkbook()) {
+    SXSSFWorkbook wb = new SXSSFWorkbook(ROW_ACCESS_WINDOW);
+    // The temp files can get big for large exports, compressing them is cheap in comparison
+    wb.setCompressTempFiles(true);
+    try {
       Sheet sheet = wb.createSheet(clazz.getSimpleName());
-      List<Field> fieldsToSerialize = getFieldsToSerialize(clazz);
-      populateHeaderRow(sheet, getHeaderValues(fieldsToSerialize));
-      populateDataRows(sheet, fieldsToSerialize, rows);
-      return writeSpreadsheetToBytes(wb);
+      SerializationPlan plan = planFor(clazz);
+      populateHeaderRow(sheet, plan.getHeaders());
+      populateDataRows(sheet, plan, rows);
+      wb.write(out);
+    } finally {
+      // close() doesn't remove the temp files, dispose() does
+      wb.dispose();
+      wb.close();
+    }
+  }
+
+  /**
+   * Get the serialization plan for the given class, building it the first time the class is seen.
+   */
+  public static SerializationPlan planFor(final Class<?> clazz) {
+    return PLANS.computeIfAbsent(clazz, XlsxSerializer::buildPlan);
+  }
+
+  /*
+   * Walk the class hierarchy for the fields to serialize and build a getter for each. This is the
+   * reflection-heavy part, so it's only done once per class.
+   */
+  @SneakyThrows(IllegalAccessException.class)
+  private static SerializationPlan buildPlan(final Class<?> clazz) {
+    List<Field> fields = getFieldsToSerialize(clazz);
+    List<MethodHandle> getters = new ArrayList<>(fields.size());
+    MethodHandles.Lookup lookup = MethodHandles.lookup();
+    for (Field field : fields) {
+      // LambdaMetafactory can only target methods, not fields, so a method handle straight onto
+      // the field is as direct as we can get. Once adapted to GETTER_TYPE it can be invoked
+      // exactly, with no boxing of arguments into an array or access checks per call.
+      field.setAccessible(true);
+      getters.add(lookup.unreflectGetter(field).asType(GETTER_TYPE));
     }
+    return new SerializationPlan(Collections.unmodifiableList(getHeaderValues(fields)),
+        Collections.unmodifiableList(getters));
   }
 
   /*
@@ -123,18 +238,118 @@ public class XlsxSerializer {
   /*
    * Populate the rows of the given sheet using the given row data.
    */
-  @SneakyThrows(IllegalAccessException.class)
-  private static <T> void populateDataRows(final Sheet sheet, final List<Field> fieldsToSerialize,
+  private static <T> void populateDataRows(final Sheet sheet, final SerializationPlan plan,
       final Iterable<T> rows) {
+    CellStyles styles = new CellStyles(sheet.getWorkbook());
+    int columns = plan.getGetters().size();
     int rowIndex = 1; // header is row 0
     for (T row : rows) {
       Row dataRow = sheet.createRow(rowIndex);
       rowIndex++;
-      for (int col = 0; col < fieldsToSerialize.size(); col++) {
+      for (int col = 0; col < columns; col++) {
         Cell dataCell = dataRow.createCell(col);
-        Object cellObject = FieldUtils.readField(fieldsToSerialize.get(col), row, true);
-        dataCell.setCellValue(stringify(cellObject));
+        Object cellObject = plan.readCell(row, col);
+        setCellValue(dataCell, cellObject, styles);
+      }
+    }
+  }
+
+  /*
+   * Write the value as a native cell of its type where there is one, so that it's stored as a
+   * number rather than as a string, and falls back to a string otherwise.
+   */
+  private static void setCellValue(final Cell cell, final Object value, final CellStyles styles) {
+    if (value instanceof Boolean) {
+      cell.setCellValue((Boolean) value);
+    } else if (isExactWholeNumber(value)) {
+      // The default (General) format shows whole numbers as they are, no style needed
+      cell.setCellValue(((Number) value).doubleValue());
+    } else if (isFiniteDecimal(value)) {
+      cell.setCellValue(((Number) value).doubleValue());
+      cell.setCellStyle(styles.decimal());
+    } else if (value instanceof LocalDateTime) {
+      cell.setCellValue(toDate((LocalDateTime) value));
+      cell.setCellStyle(styles.dateTime());
+    } else if (value instanceof LocalDate) {
+      cell.setCellValue(toDate(((LocalDate) value).atStartOfDay()));
+      cell.setCellStyle(styles.date());
+    } else if (value instanceof Date) {
+      cell.setCellValue((Date) value);
+      cell.setCellStyle(styles.dateTime());
+    } else {
+      cell.setCellValue(stringify(value));
+    }
+  }
+
+  private static boolean isExactWholeNumber(final Object value) {
+    if (value instanceof Long || value instanceof Integer || value instanceof Short
+        || value instanceof Byte) {
+      long number = ((Number) value).longValue();
+      return -MAX_EXACT_WHOLE_NUMBER <= number && number <= MAX_EXACT_WHOLE_NUMBER;
+    }
+    return false;
+  }
+
+  private static boolean isFiniteDecimal(final Object value) {
+    if (value instanceof Double || value instanceof Float || value instanceof BigDecimal) {
+      // NaN and infinity have no numeric cell representation
+      return Double.isFinite(((Number) value).doubleValue());
+    }
+    return false;
+  }
+
+  /*
+   * Excel dates have no time zone. POI turns a Date into one using the default time zone, so
+   * convert using the same zone to get back the local date/time we started with.
+   */
+  private static Date toDate(final LocalDateTime dateTime) {
+    return Date.from(dateTime.atZone(ZoneId.systemDefault()).toInstant());
+  }
+
+  /**
+   * Cell styles for the typed cells, created the first time each is needed and then shared by all
+   * cells of that kind. Every style is written to the file, and a workbook can only hold about 64k
+   * of them, so they mustn't be created per cell.
+   */
+  private static class CellStyles {
+
+    private final Workbook workbook;
+
+    private CellStyle decimal;
+
+    private CellStyle date;
+
+    private CellStyle dateTime;
+
+    CellStyles(final Workbook workbook) {
+      this.workbook = workbook;
+    }
+
+    CellStyle decimal() {
+      if (decimal == null) {
+        decimal = withFormat(DECIMAL_FORMAT);
+      }
+      return decimal;
+    }
+
+    CellStyle date() {
+      if (date == null) {
+        date = withFormat(DATE_FORMAT);
+      }
+      return date;
+    }
+
+    CellStyle dateTime() {
+      if (dateTime == null) {
+        dateTime = withFormat(DATE_TIME_FORMAT);
       }
+      return dateTime;
+    }
+
+    private CellStyle withFormat(final String format) {
+      CellStyle style = workbook.createCellStyle();
+      style.setDataFormat(workbook.createDataFormat().getFormat(format));
+      return style;
     }
   }
 
@@ -160,14 +375,4 @@ public class XlsxSerializer {
       return obj.toString();
     }
   }
-
-  private static byte[] writeSpreadsheetToBytes(final Workbook wb) throws IOException {
-    try (ByteArrayOutputStream baos = new ByteArrayOutputStream()) {
-      wb.write(baos);
-      return baos.toByteArray();
-    } catch (IOException e) {
-      log.error("Unable to write spreadsheet to bytes", e);
-      throw e;
-    }
-  }
 }
@@ -1,5 +1,6 @@
 package org.galatea.starter.utils.jms;
 
+import io.micrometer.core.instrument.MeterRegistry;
 import java.util.function.BiConsumer;
 import javax.jms.Message;
 import lombok.EqualsAndHashCode;
@@ -7,6 +8,7 @@ import lombok.NonNull;
 import lombok.RequiredArgsConstructor;
 import lombok.ToString;
 import lombok.extern.slf4j.Slf4j;
+import org.galatea.starter.utils.RequestIdGenerator;
 import org.springframework.jms.config.DefaultJmsListenerContainerFactory;
 import org.springframework.jms.listener.DefaultMessageListenerContainer;
 
@@ -20,9 +22,16 @@ public class FuseJmsListenerContainerFactory extends DefaultJmsListenerContainer
   @NonNull
   protected BiConsumer<Message, Exception> failedMessageConsumer;
 
+  @NonNull
+  protected MeterRegistry meterRegistry;
+
+  @NonNull
+  protected RequestIdGenerator requestIdGenerator;
+
   @Override
   protected DefaultMessageListenerContainer createContainerInstance() {
-    return new FuseMessageListenerContainer(failedMessageConsumer);
+    return new FuseMessageListenerContainer(failedMessageConsumer, meterRegistry,
+        requestIdGenerator);
   }
 
 }
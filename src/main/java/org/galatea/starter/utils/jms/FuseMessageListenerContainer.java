@@ -1,5 +1,10 @@
 package org.galatea.starter.utils.jms;
 
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.BiConsumer;
 import javax.jms.JMSException;
 import javax.jms.Message;
@@ -10,6 +15,8 @@ import lombok.RequiredArgsConstructor;
 import lombok.SneakyThrows;
 import lombok.ToString;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.activemq.ActiveMQSession;
+import org.galatea.starter.utils.RequestIdGenerator;
 import org.springframework.jms.listener.DefaultMessageListenerContainer;
 
 @RequiredArgsConstructor
@@ -21,9 +28,55 @@ public class FuseMessageListenerContainer extends DefaultMessageListenerContaine
   @NonNull
   protected BiConsumer<Message, Exception> failedMessageConsumer;
 
+  @NonNull
+  protected MeterRegistry meterRegistry;
+
+  @NonNull
+  protected RequestIdGenerator requestIdGenerator;
+
+  /* Number of messages currently being handled by this container's consumers */
+  private final AtomicInteger inFlight = new AtomicInteger();
+
+  private Timer messageAge;
+
+  private Timer processedOk;
+
+  private Timer processedFailed;
+
+  /**
+   * Registers this container's meters once the destination is known, then carries on with the usual
+   * initialization.
+   */
+  @Override
+  public void initialize() {
+    String destination = String.valueOf(getDestinationName());
+
+    Gauge.builder("jms.listener.in.flight", inFlight, AtomicInteger::get)
+        .description("Messages currently being processed")
+        .tag("destination", destination)
+        .register(meterRegistry);
+    messageAge = Timer.builder("jms.listener.message.age")
+        .description("Time between the message being sent (JMSTimestamp) and being received")
+        .tag("destination", destination)
+        .publishPercentiles(0.5, 0.99)
+        .publishPercentileHistogram()
+        .register(meterRegistry);
+    processedOk = processingTimer(destination, "success");
+    processedFailed = processingTimer(destination, "failed");
+
+    super.initialize();
+  }
+
   @Override
   @SneakyThrows
   protected void invokeListener(final Session session, final Message message) {
+    recordMessageAge(message);
+    // So that the listener's logs (and any messages it sends) carry the id of the request that
+    // caused this message
+    JmsRequestIds.toMdc(message, requestIdGenerator);
+    inFlight.incrementAndGet();
+    long start = System.nanoTime();
+    Timer outcome = processedFailed;
 
     // We expect the listener to handle any retryable exceptions internally. If the exception
     // reaches the catch block, then we assume that the message has failed processing and should
@@ -33,8 +86,54 @@ public class FuseMessageListenerContainer extends DefaultMessageListenerContaine
     // this is not encouraged, there may be certain circumstances where that is necessary.
     try {
       super.invokeListener(session, message);
+      outcome = processedOk;
     } catch (JMSException e) {
       failedMessageConsumer.accept(message, e);
+      acknowledgeIfIndividual(session, message);
+    } catch (RuntimeException e) {
+      acknowledgeIfIndividual(session, message);
+      throw e;
+    } finally {
+      JmsRequestIds.clearMdc();
+      inFlight.decrementAndGet();
+      outcome.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+    }
+  }
+
+  /*
+   * With individual acknowledgement (agreement lanes, see AgreementDispatcher) a message is only
+   * acknowledged once a lane has handled it. One that fails before reaching a lane has to be
+   * acknowledged here, the same as the container would in the other modes, or it would sit
+   * unacknowledged until the session closed.
+   */
+  private static void acknowledgeIfIndividual(final Session session, final Message message)
+      throws JMSException {
+    if (session.getAcknowledgeMode() == ActiveMQSession.INDIVIDUAL_ACKNOWLEDGE) {
+      message.acknowledge();
+    }
+  }
+
+  private Timer processingTimer(final String destination, final String outcome) {
+    // The count of this timer gives throughput, the distribution gives per-message latency
+    return Timer.builder("jms.listener.processing")
+        .description("Time taken to handle a message, from receipt to listener return. With "
+            + "agreement lanes the listener returns once the work is queued")
+        .tag("destination", destination)
+        .tag("outcome", outcome)
+        .publishPercentiles(0.5, 0.99)
+        .publishPercentileHistogram()
+        .register(meterRegistry);
+  }
+
+  private void recordMessageAge(final Message message) {
+    try {
+      long sentAt = message.getJMSTimestamp();
+      // Producers may disable timestamps, in which case this is 0
+      if (sentAt > 0) {
+        messageAge.record(Math.max(0, System.currentTimeMillis() - sentAt), TimeUnit.MILLISECONDS);
+      }
+    } catch (JMSException e) {
+      log.debug("Could not read JMSTimestamp of message {}", message, e);
     }
   }
 }
@@ -0,0 +1,69 @@
+package org.galatea.starter.utils.jms;
+
+import java.util.Optional;
+import java.util.concurrent.ThreadFactory;
+import lombok.AccessLevel;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.core.task.TaskExecutor;
+
+/**
+ * Creates the TaskExecutor that listener containers run their consumers on.
+ *
+ * <p>Each consumer of a DefaultMessageListenerContainer is a long-running loop that spends most of
+ * its time blocked (on the broker, then on the database), so a thread per consumer is the right
+ * model. What we can choose is what kind of thread: a platform thread (the container's default),
+ * or a virtual thread when running on a JDK that has them. Virtual threads make it cheap to run
+ * many more concurrent consumers than we could afford platform threads for.
+ */
+@RequiredArgsConstructor(access = AccessLevel.PRIVATE)
+@Slf4j
+public class JmsListenerExecutors {
+
+  public static final String PLATFORM = "platform";
+  public static final String VIRTUAL = "virtual";
+
+  private static final String THREAD_NAME_PREFIX = "jms-listener-";
+
+  /**
+   * Creates an executor for the given mode.
+   *
+   * @param mode either {@value #PLATFORM} or {@value #VIRTUAL}. If virtual threads are requested
+   *     but the running JDK doesn't support them, platform threads are used instead.
+   * @return an executor that starts a new thread for each consumer
+   */
+  public static TaskExecutor forMode(final String mode) {
+    if (VIRTUAL.equalsIgnoreCase(mode)) {
+      Optional<ThreadFactory> virtualThreads = virtualThreadFactory();
+      if (virtualThreads.isPresent()) {
+        log.info("JMS listener consumers will run on virtual threads");
+        return new SimpleAsyncTaskExecutor(virtualThreads.get());
+      }
+      log.warn("Virtual threads are not available on Java {}. Using platform threads instead.",
+          System.getProperty("java.version"));
+    } else if (!PLATFORM.equalsIgnoreCase(mode)) {
+      throw new IllegalArgumentException("Unknown JMS listener executor mode: " + mode);
+    }
+
+    return new SimpleAsyncTaskExecutor(THREAD_NAME_PREFIX);
+  }
+
+  /*
+   * Thread.ofVirtual() only exists from Java 21 (preview in 19/20), and we compile against an older
+   * release, so we have to look it up reflectively.
+   */
+  static Optional<ThreadFactory> virtualThreadFactory() {
+    try {
+      Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+      Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+      builder = builderClass.getMethod("name", String.class, long.class)
+          .invoke(builder, THREAD_NAME_PREFIX, 0L);
+      return Optional.of((ThreadFactory) builderClass.getMethod("factory").invoke(builder));
+    } catch (ReflectiveOperationException | RuntimeException e) {
+      // Either not there at all, or there as a preview feature that hasn't been enabled
+      log.debug("Virtual threads are not available", e);
+      return Optional.empty();
+    }
+  }
+}
@@ -0,0 +1,93 @@
+package org.galatea.starter.utils.jms;
+
+import static org.galatea.starter.entrypoint.BaseRestController.EXTERNAL_REQUEST_ID;
+import static org.galatea.starter.entrypoint.BaseRestController.INTERNAL_REQUEST_ID;
+
+import javax.jms.JMSException;
+import javax.jms.Message;
+import lombok.extern.slf4j.Slf4j;
+import org.galatea.starter.utils.RequestIdGenerator;
+import org.slf4j.MDC;
+
+/**
+ * Carries request ids across JMS, so that the logs for a request can be followed from the REST call
+ * that started it through to the messages it caused, on whichever node handles them.
+ *
+ * <p>The ids travel as message properties. JMS property names must be Java identifiers, hence the
+ * camel case rather than the MDC keys.
+ */
+@Slf4j
+public class JmsRequestIds {
+
+  public static final String INTERNAL_REQUEST_ID_PROPERTY = "internalRequestId";
+
+  public static final String EXTERNAL_REQUEST_ID_PROPERTY = "externalRequestId";
+
+  private JmsRequestIds() {}
+
+  /**
+   * The internal id of the request being handled on this thread, or null if there isn't one.
+   */
+  public static String currentInternalId() {
+    return fromMdc(INTERNAL_REQUEST_ID);
+  }
+
+  /**
+   * The external id of the request being handled on this thread, or null if there isn't one.
+   */
+  public static String currentExternalId() {
+    return fromMdc(EXTERNAL_REQUEST_ID);
+  }
+
+  /**
+   * Set the given ids on an outgoing message. Null ids are left off.
+   */
+  public static void toMessage(final Message message, final String internalId,
+      final String externalId) throws JMSException {
+    if (internalId != null) {
+      message.setStringProperty(INTERNAL_REQUEST_ID_PROPERTY, internalId);
+    }
+    if (externalId != null) {
+      message.setStringProperty(EXTERNAL_REQUEST_ID_PROPERTY, externalId);
+    }
+  }
+
+  /**
+   * Put the ids carried by a received message in the MDC. A message that doesn't carry an internal
+   * id (e.g. one from outside) is given a new one, so its handling can still be picked out of the
+   * logs.
+   */
+  public static void toMdc(final Message message, final RequestIdGenerator generator) {
+    String internalId = null;
+    String externalId = null;
+    try {
+      internalId = message.getStringProperty(INTERNAL_REQUEST_ID_PROPERTY);
+      externalId = message.getStringProperty(EXTERNAL_REQUEST_ID_PROPERTY);
+    } catch (JMSException e) {
+      log.debug("Could not read request ids of message {}", message, e);
+    }
+
+    if (internalId == null) {
+      internalId = Long.toString(generator.nextId());
+    }
+    // The keys used here must align with the keys defined in the logging config's log-pattern
+    MDC.put(INTERNAL_REQUEST_ID, internalId + " - ");
+    if (externalId != null) {
+      MDC.put(EXTERNAL_REQUEST_ID, externalId + " - ");
+    }
+  }
+
+  /**
+   * Remove the ids put in the MDC by toMdc, ready for the next message on this thread.
+   */
+  public static void clearMdc() {
+    MDC.remove(INTERNAL_REQUEST_ID);
+    MDC.remove(EXTERNAL_REQUEST_ID);
+  }
+
+  private static String fromMdc(final String key) {
+    String value = MDC.get(key);
+    // Ids have a ' - ' in MDC, to separate them from the message
+    return value == null ? null : value.replace(" - ", "");
+  }
+}
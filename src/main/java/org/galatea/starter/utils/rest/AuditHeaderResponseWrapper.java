@@ -0,0 +1,73 @@
+package org.galatea.starter.utils.rest;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.concurrent.atomic.AtomicBoolean;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+
+/**
+ * Runs a callback once, just before the response could first be committed, so that it can still
+ * add headers. Used for responses whose body isn't buffered: once the handler starts writing the
+ * body the headers may already be on their way to the client, and anything added after that is
+ * silently dropped.
+ */
+class AuditHeaderResponseWrapper extends HttpServletResponseWrapper {
+
+  private final Runnable beforeCommit;
+
+  /* A streamed body may be written from another thread to the one that handled the request */
+  private final AtomicBoolean done = new AtomicBoolean();
+
+  AuditHeaderResponseWrapper(final HttpServletResponse response, final Runnable beforeCommit) {
+    super(response);
+    this.beforeCommit = beforeCommit;
+  }
+
+  /**
+   * Run the callback, unless it has already run. Called when the body is first asked for, and by
+   * the filter once the request has been handled for responses that have no body.
+   */
+  void beforeCommit() {
+    if (done.compareAndSet(false, true) && !isCommitted()) {
+      beforeCommit.run();
+    }
+  }
+
+  @Override
+  public ServletOutputStream getOutputStream() throws IOException {
+    beforeCommit();
+    return super.getOutputStream();
+  }
+
+  @Override
+  public PrintWriter getWriter() throws IOException {
+    beforeCommit();
+    return super.getWriter();
+  }
+
+  @Override
+  public void flushBuffer() throws IOException {
+    beforeCommit();
+    super.flushBuffer();
+  }
+
+  @Override
+  public void sendError(final int sc) throws IOException {
+    beforeCommit();
+    super.sendError(sc);
+  }
+
+  @Override
+  public void sendError(final int sc, final String msg) throws IOException {
+    beforeCommit();
+    super.sendError(sc, msg);
+  }
+
+  @Override
+  public void sendRedirect(final String location) throws IOException {
+    beforeCommit();
+    super.sendRedirect(location);
+  }
+}
@@ -0,0 +1,254 @@
+package org.galatea.starter.utils.rest;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.concurrent.atomic.AtomicBoolean;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+
+/**
+ * Like ContentCachingResponseWrapper, but only caches the first limit bytes of the body.
+ *
+ * <p>A body that fits within the limit is held back until copyBodyToResponse is called, so headers
+ * can still be added once the request has been handled. As soon as the body outgrows the limit,
+ * the callback is run (the last chance to add headers), what's been cached is sent, and the rest
+ * of the body streams straight through. Either way the first limit bytes are kept for the trace.
+ *
+ * <p>The body of an async request may be written from another thread while the filter is still
+ * finishing up, so writing and releasing the body are synchronized.
+ */
+class BoundedCachingResponseWrapper extends HttpServletResponseWrapper {
+
+  private final int limit;
+
+  private final Runnable beforeCommit;
+
+  private final AtomicBoolean beforeCommitDone = new AtomicBoolean();
+
+  /* The first limit bytes of the body. Until we've spilled, this is also everything written */
+  private final ByteArrayOutputStream captured;
+
+  /* Whether the body is now going straight to the response */
+  private volatile boolean spilled;
+
+  /* Content length set by the handler, held back along with the body */
+  private Long contentLength;
+
+  private ServletOutputStream outputStream;
+
+  private PrintWriter writer;
+
+  BoundedCachingResponseWrapper(final HttpServletResponse response, final int limit,
+      final Runnable beforeCommit) {
+    super(response);
+    this.limit = limit;
+    this.beforeCommit = beforeCommit;
+    this.captured = new ByteArrayOutputStream(Math.min(limit, 1024));
+  }
+
+  /**
+   * Run the callback, unless it has already run.
+   */
+  void beforeCommit() {
+    if (beforeCommitDone.compareAndSet(false, true) && !isCommitted()) {
+      beforeCommit.run();
+    }
+  }
+
+  /**
+   * The start of the body, up to limit bytes.
+   */
+  byte[] getCapturedPayload() {
+    return captured.toByteArray();
+  }
+
+  /**
+   * Send whatever of the body is still held back. Runs the callback first if it hasn't run.
+   */
+  synchronized void copyBodyToResponse() throws IOException {
+    if (writer != null) {
+      writer.flush();
+    }
+    if (!spilled) {
+      spilled = true;
+      beforeCommit();
+      if (!isCommitted()) {
+        super.setContentLengthLong(contentLength != null ? contentLength : captured.size());
+      }
+      if (captured.size() > 0) {
+        captured.writeTo(super.getOutputStream());
+      }
+    }
+  }
+
+  /**
+   * Stop holding the body back, for a response that will be finished after the filter has
+   * returned (an async request). Unlike copyBodyToResponse this doesn't set the content length,
+   * since the body isn't all written yet.
+   */
+  synchronized void streamRest() throws IOException {
+    if (writer != null) {
+      writer.flush();
+    }
+    if (!spilled) {
+      spill();
+    }
+  }
+
+  @Override
+  public ServletOutputStream getOutputStream() throws IOException {
+    if (outputStream == null) {
+      outputStream = new BoundedOutputStream(super.getOutputStream());
+    }
+    return outputStream;
+  }
+
+  @Override
+  public PrintWriter getWriter() throws IOException {
+    if (writer == null) {
+      writer = new PrintWriter(new OutputStreamWriter(getOutputStream(), getCharacterEncoding()));
+    }
+    return writer;
+  }
+
+  @Override
+  public void setContentLength(final int len) {
+    setContentLengthLong(len);
+  }
+
+  @Override
+  public void setContentLengthLong(final long len) {
+    if (spilled) {
+      super.setContentLengthLong(len);
+    } else {
+      contentLength = len;
+    }
+  }
+
+  @Override
+  public void flushBuffer() throws IOException {
+    // Flushing would commit the response, so wait until we're sending the body anyway
+    if (spilled) {
+      if (writer != null) {
+        writer.flush();
+      }
+      super.flushBuffer();
+    }
+  }
+
+  @Override
+  public void resetBuffer() {
+    super.resetBuffer();
+    if (!spilled) {
+      captured.reset();
+    }
+  }
+
+  @Override
+  public void reset() {
+    super.reset();
+    if (!spilled) {
+      captured.reset();
+      contentLength = null;
+    }
+  }
+
+  @Override
+  public void sendError(final int sc) throws IOException {
+    sendingOtherBody();
+    super.sendError(sc);
+  }
+
+  @Override
+  public void sendError(final int sc, final String msg) throws IOException {
+    sendingOtherBody();
+    super.sendError(sc, msg);
+  }
+
+  @Override
+  public void sendRedirect(final String location) throws IOException {
+    sendingOtherBody();
+    super.sendRedirect(location);
+  }
+
+  /*
+   * The container is about to commit the response with a body of its own, discarding ours.
+   */
+  private void sendingOtherBody() {
+    beforeCommit();
+    spilled = true;
+  }
+
+  private void spill() throws IOException {
+    spilled = true;
+    beforeCommit();
+    if (contentLength != null) {
+      super.setContentLengthLong(contentLength);
+    }
+    captured.writeTo(super.getOutputStream());
+  }
+
+  private class BoundedOutputStream extends ServletOutputStream {
+
+    private final ServletOutputStream target;
+
+    BoundedOutputStream(final ServletOutputStream target) {
+      this.target = target;
+    }
+
+    @Override
+    public void write(final int b) throws IOException {
+      write(new byte[] {(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(final byte[] b, final int off, final int len) throws IOException {
+      synchronized (BoundedCachingResponseWrapper.this) {
+        writeBounded(b, off, len);
+      }
+    }
+
+    private void writeBounded(final byte[] b, final int off, final int len) throws IOException {
+      if (spilled) {
+        int toCapture = Math.min(len, limit - captured.size());
+        if (toCapture > 0) {
+          captured.write(b, off, toCapture);
+        }
+        target.write(b, off, len);
+        return;
+      }
+
+      if (captured.size() + len <= limit) {
+        captured.write(b, off, len);
+        return;
+      }
+
+      // Too big to hold back any longer: keep what fits for the trace and send the lot
+      int fits = limit - captured.size();
+      captured.write(b, off, fits);
+      spill();
+      target.write(b, off + fits, len - fits);
+    }
+
+    @Override
+    public void flush() throws IOException {
+      if (spilled) {
+        target.flush();
+      }
+    }
+
+    @Override
+    public boolean isReady() {
+      return target.isReady();
+    }
+
+    @Override
+    public void setWriteListener(final WriteListener writeListener) {
+      target.setWriteListener(writeListener);
+    }
+  }
+}
@@ -1,34 +1,80 @@
 package org.galatea.starter.utils.rest;
 
 import static org.galatea.starter.entrypoint.BaseRestController.EXTERNAL_REQUEST_ID;
+import static org.galatea.starter.entrypoint.BaseRestController.INTERNAL_REQUEST_ID;
 
 import java.io.IOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.security.Principal;
 import java.time.Instant;
 import java.time.temporal.ChronoUnit;
-import java.util.Random;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.function.Predicate;
+import java.util.function.Supplier;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
 import javax.servlet.FilterChain;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpSession;
 import lombok.EqualsAndHashCode;
 import lombok.NonNull;
-import lombok.SneakyThrows;
+import lombok.Setter;
 import lombok.ToString;
 import lombok.extern.slf4j.Slf4j;
+import org.galatea.starter.utils.FuseHttpTrace;
+import org.galatea.starter.utils.FuseHttpTraceRepository;
+import org.galatea.starter.utils.RequestIdGenerator;
+import org.galatea.starter.utils.jms.JmsRequestIds;
 import org.slf4j.MDC;
 import org.springframework.boot.actuate.trace.http.HttpExchangeTracer;
+import org.springframework.boot.actuate.trace.http.HttpTrace;
 import org.springframework.boot.actuate.trace.http.HttpTraceRepository;
+import org.springframework.boot.actuate.trace.http.TraceableRequest;
+import org.springframework.boot.actuate.trace.http.TraceableResponse;
 import org.springframework.boot.actuate.web.trace.servlet.HttpTraceFilter;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.InvalidMediaTypeException;
+import org.springframework.http.MediaType;
 import org.springframework.web.util.ContentCachingRequestWrapper;
-import org.springframework.web.util.ContentCachingResponseWrapper;
-import org.springframework.web.util.WebUtils;
+import org.springframework.web.util.UriComponentsBuilder;
 
 /**
  * Builds upon spring actuator's web request tracer to capture interesting audit information. We
  * capture some additional timing data as well The filter also adds these audit fields as headers to
  * the response.
  *
+ * <p>Only a sample of requests is traced, see TraceSampler. The rest skip tracing and body caching
+ * altogether and just get the audit headers, unless they fail, in which case they're traced
+ * (without bodies) anyway.
+ *
+ * <p>Traced requests keep the first maxPayloadLength bytes of the request and response bodies, if
+ * they're text. A response body that fits is held back so the audit headers can go on it at the
+ * end; a bigger one is sent on as soon as it outgrows the limit, so it's never held in full.
+ * Responses on streamed paths (pathsToStream) aren't held back at all: they go straight to the
+ * client and only a copy of their start is kept. A trace of a request that goes async is recorded
+ * once it completes.
+ *
+ * <p>The audit headers have to go on before the response is committed, so requestElapsedTimeMillis
+ * is the time until the response started going out rather than until the request finished. For a
+ * traced response that fits in maxPayloadLength that's when handling finished, and for a bigger
+ * one it's when the body outgrew the limit. For unsampled and streamed responses it's when the
+ * handler first asked for the body's stream or writer (or finished, if there was no body). Either
+ * way it leaves out whatever time was spent writing the rest of the body; a sampled trace has the
+ * full time taken.
+ *
+ * <p>Given a SlowRequestProfiler, requests that run past its threshold have their stacks sampled,
+ * and the profile goes on the trace. This applies on every path, and slow requests are traced even
+ * if they weren't sampled.
+ *
  * @author rbasu
  */
 @ToString
@@ -36,12 +82,34 @@ import org.springframework.web.util.WebUtils;
 @Slf4j
 public class FuseHttpTraceFilter extends HttpTraceFilter {
 
-  private static final String INTERNAL_REQUEST_ID = "internal-request-id";
+  @NonNull
+  protected final Predicate<String> pathsToSkip;
 
-  private static final Random QUERY_ID_GENERATOR = new Random();
+  @NonNull
+  protected final Predicate<String> pathsToStream;
 
   @NonNull
-  protected final Predicate<String> pathsToSkip;
+  protected final TraceSampler sampler;
+
+  /* The superclass keeps these to itself, but we need them to trace unsampled requests ourselves */
+  @NonNull
+  protected final HttpTraceRepository repository;
+
+  @NonNull
+  protected final HttpExchangeTracer tracer;
+
+  /* How much of each request and response body a trace keeps */
+  @Setter
+  protected int maxPayloadLength = 50000;
+
+  /* Makes the internal request ids. Set it to give this node a known node id */
+  @Setter
+  @NonNull
+  protected RequestIdGenerator requestIdGenerator = RequestIdGenerator.forLocalHost();
+
+  /* Profiles slow requests, or null not to */
+  @Setter
+  protected SlowRequestProfiler profiler;
 
   /**
    * Sadly we have to write our own constructor since lombok can't call super with args.
@@ -52,8 +120,43 @@ public class FuseHttpTraceFilter extends HttpTraceFilter {
    */
   public FuseHttpTraceFilter(final HttpTraceRepository repository, final HttpExchangeTracer tracer,
       final Predicate<String> pathsToSkip) {
+    this(repository, tracer, pathsToSkip, path -> false);
+  }
+
+  /**
+   * Creates a filter that also leaves the request and response bodies of some paths alone.
+   *
+   * @param repository the repository where we store our trace
+   * @param pathsToSkip a predicate that will return try if we want to a skip a certain url
+   *     path
+   * @param pathsToStream a predicate that will return true for url paths whose request or
+   *     response body is streamed, and so must not be cached in memory (it may be arbitrarily
+   *     large, and a response may be written after this filter has finished)
+   */
+  public FuseHttpTraceFilter(final HttpTraceRepository repository, final HttpExchangeTracer tracer,
+      final Predicate<String> pathsToSkip, final Predicate<String> pathsToStream) {
+    this(repository, tracer, pathsToSkip, pathsToStream, TraceSampler.ALWAYS);
+  }
+
+  /**
+   * Creates a filter that only traces a sample of requests.
+   *
+   * @param repository the repository where we store our trace
+   * @param pathsToSkip a predicate that will return try if we want to a skip a certain url
+   *     path
+   * @param pathsToStream a predicate that will return true for url paths whose request or
+   *     response body is streamed, see above
+   * @param sampler decides which requests are traced
+   */
+  public FuseHttpTraceFilter(final HttpTraceRepository repository, final HttpExchangeTracer tracer,
+      final Predicate<String> pathsToSkip, final Predicate<String> pathsToStream,
+      final TraceSampler sampler) {
     super(repository, tracer);
     this.pathsToSkip = pathsToSkip;
+    this.pathsToStream = pathsToStream;
+    this.sampler = sampler;
+    this.repository = repository;
+    this.tracer = tracer;
   }
 
   @Override
@@ -62,9 +165,7 @@ public class FuseHttpTraceFilter extends HttpTraceFilter {
       throws ServletException, IOException {
 
     // generate the internal request Id
-    // we want positive numbers only, so use nextInt(upperBound)
-    String internallyGeneratedId =
-        Integer.toString(QUERY_ID_GENERATOR.nextInt(Integer.MAX_VALUE));
+    String internallyGeneratedId = Long.toString(requestIdGenerator.nextId());
 
     log.debug("Created internal request id: {}", internallyGeneratedId);
 
@@ -79,38 +180,251 @@ public class FuseHttpTraceFilter extends HttpTraceFilter {
       return;
     }
 
-    boolean isFirstRequest = !isAsyncDispatch(request);
-    HttpServletRequest requestToUse = request;
-    HttpServletResponse responseToUse = response;
-
-    // We need to do this for the request and response since you can only read the stream that holds
-    // the payload once
-    if (isFirstRequest && !(request instanceof ContentCachingRequestWrapper)) {
-      requestToUse = new ContentCachingRequestWrapper(request);
+    // Async dispatches only get here if the filter is set to see them. The request that went async
+    // already has its audit headers, and its trace is recorded when it completes
+    if (isAsyncDispatch(request)) {
+      try {
+        filterChain.doFilter(request, response);
+      } finally {
+        MDC.clear();
+      }
+      return;
     }
-    if (isFirstRequest && !(response instanceof ContentCachingRequestWrapper)) {
-      responseToUse = new ContentCachingResponseWrapper(response);
+
+    if (!sampler.sample(request.getRequestURI())) {
+      doFilterUnsampled(request, response, filterChain, Instant.now());
+    } else if (pathsToStream.test(request.getRequestURI())) {
+      doFilterStreamed(request, response, filterChain, Instant.now());
+    } else {
+      doFilterSampled(request, response, filterChain, Instant.now());
     }
+  }
 
-    doFilterInternalHelper(requestToUse, responseToUse, filterChain, Instant.now());
+  /*
+   * Trace a request along with the start of its bodies. We need to wrap the request and response
+   * for this since you can only read the stream that holds the payload once.
+   */
+  private void doFilterSampled(final HttpServletRequest request,
+      final HttpServletResponse response, final FilterChain filterChain,
+      final Instant requestReceivedTime) throws ServletException, IOException {
+    ContentCachingRequestWrapper requestToUse =
+        new ContentCachingRequestWrapper(request, maxPayloadLength);
+    BoundedCachingResponseWrapper responseToUse = new BoundedCachingResponseWrapper(response,
+        maxPayloadLength, () -> addAuditHeaders(requestReceivedTime, response));
+
+    HttpTrace trace = isRequestValid(request) ? tracer.receivedRequest(new TracedRequest(request))
+        : null;
+    int status = HttpStatus.INTERNAL_SERVER_ERROR.value();
+    SlowRequestProfiler.Watch watch = profiler == null ? null : profiler.watch();
+    try {
+      filterChain.doFilter(requestToUse, responseToUse);
+      status = response.getStatus();
+    } finally {
+      String profile = watch == null ? null : watch.stop();
+      if (request.isAsyncStarted()) {
+        // The body is still to be written (e.g. a StreamingResponseBody), so it can't be held back
+        responseToUse.streamRest();
+      } else {
+        // Adds the audit headers too, unless the body has already outgrown the limit
+        responseToUse.copyBodyToResponse();
+      }
+      if (trace != null) {
+        FuseHttpTrace.FuseHttpTraceBuilder builder = FuseHttpTrace.builder()
+            .trace(trace)
+            .internalRequestId(JmsRequestIds.currentInternalId())
+            .externalRequestId(JmsRequestIds.currentExternalId())
+            .requestPayload(payloadText(requestToUse.getContentAsByteArray(),
+                request.getContentType()))
+            .profile(profile);
+        finishTrace(request, response, trace, status, () -> builder
+            .responsePayload(payloadText(responseToUse.getCapturedPayload(),
+                response.getContentType()))
+            .build());
+      }
+      MDC.clear();
+    }
   }
 
-  @SneakyThrows
-  // what's this method responsible for?
-  protected void doFilterInternalHelper(final HttpServletRequest request,
+  /*
+   * Trace a request whose bodies are streamed, such as an export or an upload. The request body is
+   * left alone, and the response body goes straight to the client, keeping a copy of its start.
+   */
+  private void doFilterStreamed(final HttpServletRequest request,
       final HttpServletResponse response, final FilterChain filterChain,
-      final Instant requestReceivedTime) {
+      final Instant requestReceivedTime) throws ServletException, IOException {
+    TeeResponseWrapper responseToUse = new TeeResponseWrapper(response, maxPayloadLength,
+        () -> addAuditHeaders(requestReceivedTime, response));
 
+    HttpTrace trace = isRequestValid(request) ? tracer.receivedRequest(new TracedRequest(request))
+        : null;
+    int status = HttpStatus.INTERNAL_SERVER_ERROR.value();
+    SlowRequestProfiler.Watch watch = profiler == null ? null : profiler.watch();
     try {
-      super.doFilterInternal(request, response, filterChain);
+      filterChain.doFilter(request, responseToUse);
+      status = response.getStatus();
     } finally {
-      addAuditHeaders(requestReceivedTime.toString(), response);
-      updateResponse(response);
+      String profile = watch == null ? null : watch.stop();
+      if (!request.isAsyncStarted()) {
+        // In case there was no body
+        responseToUse.beforeCommit();
+      }
+      if (trace != null) {
+        FuseHttpTrace.FuseHttpTraceBuilder builder = FuseHttpTrace.builder()
+            .trace(trace)
+            .internalRequestId(JmsRequestIds.currentInternalId())
+            .externalRequestId(JmsRequestIds.currentExternalId())
+            .profile(profile);
+        finishTrace(request, response, trace, status, () -> builder
+            .responsePayload(payloadText(responseToUse.getCapturedPayload(),
+                response.getContentType()))
+            .build());
+      }
       MDC.clear();
     }
   }
 
-  private void addAuditHeaders(final String requestReceivedTime,
+  /*
+   * Record the trace once the response is done: now, or if the request has gone async, when the
+   * async request completes, so the trace has the final status and time taken and as much of the
+   * body as was captured.
+   */
+  private void finishTrace(final HttpServletRequest request, final HttpServletResponse response,
+      final HttpTrace trace, final int status, final Supplier<FuseHttpTrace> fuseTrace) {
+    // The request may have been recycled by the time an async request completes
+    Principal principal = request.getUserPrincipal();
+    String sessionId = getSessionId(request);
+
+    if (!request.isAsyncStarted()) {
+      tracer.sendingResponse(trace, new TracedResponse(response, status), () -> principal,
+          () -> sessionId);
+      record(fuseTrace.get());
+      return;
+    }
+
+    request.getAsyncContext().addListener(new AsyncListener() {
+      @Override
+      public void onComplete(final AsyncEvent event) {
+        tracer.sendingResponse(trace, new TracedResponse(response, response.getStatus()),
+            () -> principal, () -> sessionId);
+        record(fuseTrace.get());
+      }
+
+      @Override
+      public void onTimeout(final AsyncEvent event) {
+        // Completes after
+      }
+
+      @Override
+      public void onError(final AsyncEvent event) {
+        // Completes after
+      }
+
+      @Override
+      public void onStartAsync(final AsyncEvent event) {
+        // MVC only starts async once per request
+      }
+    });
+  }
+
+  /*
+   * Handle a request that isn't being traced. Nothing is cached, so the audit headers are added
+   * just before the response is committed rather than at the end.
+   */
+  private void doFilterUnsampled(final HttpServletRequest request,
+      final HttpServletResponse response, final FilterChain filterChain,
+      final Instant requestReceivedTime) throws ServletException, IOException {
+    AuditHeaderResponseWrapper responseToUse = new AuditHeaderResponseWrapper(response,
+        () -> addAuditHeaders(requestReceivedTime, response));
+    boolean failed = true;
+    SlowRequestProfiler.Watch watch = profiler == null ? null : profiler.watch();
+    try {
+      filterChain.doFilter(request, responseToUse);
+      failed = response.getStatus() >= 400;
+    } finally {
+      String profile = watch == null ? null : watch.stop();
+      responseToUse.beforeCommit();
+      if ((failed && sampler.isTraceErrors()) || profile != null) {
+        traceUnsampled(request, response, failed, profile);
+      }
+      MDC.clear();
+    }
+  }
+
+  /*
+   * Trace a request that wasn't sampled but failed or was slow. By now all we have is what's left
+   * of the request and response, so unlike a sampled trace the time taken isn't recorded.
+   */
+  private void traceUnsampled(final HttpServletRequest request,
+      final HttpServletResponse response, final boolean failed, final String profile) {
+    // An exception on its way out hasn't been turned into an error status yet
+    int status = !failed || response.getStatus() >= 400 ? response.getStatus() : 500;
+    if (!isRequestValid(request)) {
+      return;
+    }
+    HttpTrace trace = tracer.receivedRequest(new TracedRequest(request));
+    tracer.sendingResponse(trace, new TracedResponse(response, status),
+        request::getUserPrincipal, () -> getSessionId(request));
+    record(FuseHttpTrace.builder()
+        .trace(trace)
+        .internalRequestId(JmsRequestIds.currentInternalId())
+        .externalRequestId(JmsRequestIds.currentExternalId())
+        .profile(profile)
+        .build());
+  }
+
+  private void record(final FuseHttpTrace trace) {
+    if (repository instanceof FuseHttpTraceRepository) {
+      ((FuseHttpTraceRepository) repository).add(trace);
+    } else {
+      repository.add(trace.getTrace());
+    }
+  }
+
+  private static String getSessionId(final HttpServletRequest request) {
+    HttpSession session = request.getSession(false);
+    return session == null ? null : session.getId();
+  }
+
+  /*
+   * Whether the request's URI can be traced at all (actuator's own filter checks the same).
+   */
+  private static boolean isRequestValid(final HttpServletRequest request) {
+    try {
+      new URI(request.getRequestURL().toString());
+      return true;
+    } catch (URISyntaxException e) {
+      return false;
+    }
+  }
+
+  /*
+   * The payload as text, or null if it's empty or isn't text (there's no point logging binary).
+   */
+  private static String payloadText(final byte[] payload, final String contentType) {
+    if (payload.length == 0 || contentType == null) {
+      return null;
+    }
+
+    MediaType mediaType;
+    try {
+      mediaType = MediaType.parseMediaType(contentType);
+    } catch (InvalidMediaTypeException e) {
+      return null;
+    }
+    String subtype = mediaType.getSubtype();
+    boolean isText = "text".equals(mediaType.getType()) || "json".equals(subtype)
+        || "xml".equals(subtype) || subtype.endsWith("+json") || subtype.endsWith("+xml");
+    if (!isText) {
+      return null;
+    }
+
+    // The limit may have cut a multi-byte character in two, which decodes as a replacement char
+    Charset charset = mediaType.getCharset() == null ? StandardCharsets.UTF_8
+        : mediaType.getCharset();
+    return new String(payload, charset);
+  }
+
+  private void addAuditHeaders(final Instant requestReceivedTime,
       final HttpServletResponse response) {
     log.info("Attempting to add audit headers");
     String internalQueryId = MDC.get(INTERNAL_REQUEST_ID);
@@ -124,10 +438,12 @@ public class FuseHttpTraceFilter extends HttpTraceFilter {
           externalQueryId.replace(" - ", "")); // externalQueryId has a ' - ' in MDC
     }
 
-    logAndAddAuditHeader(response, "requestReceivedTime", requestReceivedTime);
+    logAndAddAuditHeader(response, "requestReceivedTime", requestReceivedTime.toString());
 
+    // Latency distributions per endpoint are in the http.server.requests metrics, this is just for
+    // the one request, up to its response being committed (see above)
     String requestElapsedTimeMillis =
-        String.valueOf(Instant.parse(requestReceivedTime).until(Instant.now(), ChronoUnit.MILLIS));
+        String.valueOf(requestReceivedTime.until(Instant.now(), ChronoUnit.MILLIS));
     logAndAddAuditHeader(response, "requestElapsedTimeMillis", requestElapsedTimeMillis);
   }
 
@@ -145,13 +461,68 @@ public class FuseHttpTraceFilter extends HttpTraceFilter {
   }
 
   /**
-   * Updates the response because we add headers *after* the filter has been applied. This way we
-   * ensure that any fields that were created during request handling (e.g. externalQueryId) will
-   * make it onto the response.
+   * The parts of a request that a trace records.
+   */
+  private static class TracedRequest implements TraceableRequest {
+
+    private final HttpServletRequest request;
+
+    TracedRequest(final HttpServletRequest request) {
+      this.request = request;
+    }
+
+    @Override
+    public String getMethod() {
+      return request.getMethod();
+    }
+
+    @Override
+    public URI getUri() {
+      return UriComponentsBuilder.fromHttpUrl(request.getRequestURL().toString())
+          .query(request.getQueryString()).build(false).toUri();
+    }
+
+    @Override
+    public Map<String, List<String>> getHeaders() {
+      Map<String, List<String>> headers = new LinkedHashMap<>();
+      for (String name : Collections.list(request.getHeaderNames())) {
+        headers.put(name, Collections.list(request.getHeaders(name)));
+      }
+      return headers;
+    }
+
+    @Override
+    public String getRemoteAddress() {
+      return request.getRemoteAddr();
+    }
+  }
+
+  /**
+   * The parts of a response that a trace records.
    */
-  private void updateResponse(final HttpServletResponse response) throws IOException {
-    ContentCachingResponseWrapper responseWrapper =
-        WebUtils.getNativeResponse(response, ContentCachingResponseWrapper.class);
-    responseWrapper.copyBodyToResponse();
+  private static class TracedResponse implements TraceableResponse {
+
+    private final HttpServletResponse response;
+
+    private final int status;
+
+    TracedResponse(final HttpServletResponse response, final int status) {
+      this.response = response;
+      this.status = status;
+    }
+
+    @Override
+    public int getStatus() {
+      return status;
+    }
+
+    @Override
+    public Map<String, List<String>> getHeaders() {
+      Map<String, List<String>> headers = new LinkedHashMap<>();
+      for (String name : response.getHeaderNames()) {
+        headers.put(name, new ArrayList<>(response.getHeaders(name)));
+      }
+      return headers;
+    }
   }
 }
@@ -0,0 +1,57 @@
+package org.galatea.starter.utils.rest;
+
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.config.MeterFilter;
+import io.micrometer.core.instrument.distribution.DistributionStatisticConfig;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import lombok.NonNull;
+
+/**
+ * Has the timers of the given name (e.g. actuator's http.server.requests, one per uri pattern,
+ * method and status) keep a latency distribution rather than just a count and total.
+ *
+ * <p>Percentiles are worked out on the node over a sliding window: micrometer keeps bufferLength
+ * HdrHistograms, each covering window, and rotates the oldest out every window / bufferLength. The
+ * histogram buckets and SLO buckets are published as well, so Prometheus can aggregate them across
+ * nodes (the percentiles themselves can't be).
+ */
+public class LatencyDistributionFilter implements MeterFilter {
+
+  private final String name;
+
+  private final DistributionStatisticConfig distribution;
+
+  /**
+   * Creates the filter.
+   *
+   * @param name name of the timers to configure
+   * @param percentiles e.g. 0.5, 0.99, 0.999
+   * @param sloMillis latencies in millis to publish a count of requests at or under, may be empty
+   * @param window how far back the percentiles look
+   * @param bufferLength how many histograms the window is split over
+   */
+  public LatencyDistributionFilter(@NonNull final String name, @NonNull final double[] percentiles,
+      @NonNull final long[] sloMillis, @NonNull final Duration window,
+      final int bufferLength) {
+    this.name = name;
+    this.distribution = DistributionStatisticConfig.builder()
+        .percentiles(percentiles)
+        .percentilesHistogram(true)
+        .sla(Arrays.stream(sloMillis).map(TimeUnit.MILLISECONDS::toNanos).toArray())
+        .expiry(window)
+        .bufferLength(bufferLength)
+        .build();
+  }
+
+  @Override
+  public DistributionStatisticConfig configure(final Meter.Id id,
+      final DistributionStatisticConfig config) {
+    if (id.getType() != Meter.Type.TIMER || !id.getName().equals(name)) {
+      return config;
+    }
+    // Ours wins over what the timer was registered with, which leaves histograms off by default
+    return distribution.merge(config);
+  }
+}
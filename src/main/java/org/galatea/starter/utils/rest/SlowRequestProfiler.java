@@ -0,0 +1,188 @@
+package org.galatea.starter.utils.rest;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import lombok.NonNull;
+import lombok.ToString;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+
+/**
+ * Samples the stacks of threads handling requests that are taking too long, so a trace can show
+ * where a slow request spent its time.
+ *
+ * <p>A request's thread is watched from when it's handed on until it's done. Once it has been
+ * going for longer than the threshold, its stack is sampled every sampleInterval until it finishes
+ * (or maxSamples are taken). Requests quicker than the threshold cost no more than adding and
+ * removing the watch; one background thread does the sampling for all of them, taking the stacks
+ * of every overdue thread at once.
+ *
+ * <p>The samples are counted by distinct stack and given back in the collapsed format that flame
+ * graph tools read (e.g. flamegraph.pl or speedscope): one line per stack, its frames from the
+ * root down separated by semicolons, then a space and how many samples had it.
+ */
+@ToString(onlyExplicitlyIncluded = true)
+@Slf4j
+public class SlowRequestProfiler implements DisposableBean {
+
+  private final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+
+  @ToString.Include
+  private final long thresholdNanos;
+
+  @ToString.Include
+  private final int maxDepth;
+
+  @ToString.Include
+  private final int maxSamples;
+
+  private final Set<Watch> watches = ConcurrentHashMap.newKeySet();
+
+  private final ScheduledExecutorService sampler;
+
+  /**
+   * Creates the profiler and starts its sampling thread.
+   *
+   * @param threshold how long a request runs before its stack is sampled
+   * @param sampleInterval time between samples of a slow request
+   * @param maxDepth most frames kept of each stack, counting from the top
+   * @param maxSamples most samples taken of one request
+   */
+  public SlowRequestProfiler(@NonNull final Duration threshold,
+      @NonNull final Duration sampleInterval, final int maxDepth, final int maxSamples) {
+    if (sampleInterval.isZero() || sampleInterval.isNegative()) {
+      throw new IllegalArgumentException("Sample interval must be positive, was " + sampleInterval);
+    }
+    this.thresholdNanos = threshold.toNanos();
+    this.maxDepth = maxDepth;
+    this.maxSamples = maxSamples;
+    this.sampler = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+        .setNameFormat("slow-request-profiler").setDaemon(true).build());
+    long intervalNanos = sampleInterval.toNanos();
+    sampler.scheduleAtFixedRate(this::sample, intervalNanos, intervalNanos, TimeUnit.NANOSECONDS);
+  }
+
+  /**
+   * Starts watching the current thread. The caller must stop the watch once the request is done.
+   */
+  public Watch watch() {
+    Watch watch = new Watch(Thread.currentThread(), System.nanoTime());
+    watches.add(watch);
+    return watch;
+  }
+
+  @Override
+  public void destroy() {
+    sampler.shutdownNow();
+  }
+
+  private void sample() {
+    try {
+      long now = System.nanoTime();
+      List<Watch> overdue = new ArrayList<>();
+      for (Watch watch : watches) {
+        if (now - watch.started >= thresholdNanos) {
+          overdue.add(watch);
+        }
+      }
+      if (overdue.isEmpty()) {
+        return;
+      }
+
+      long[] ids = new long[overdue.size()];
+      for (int i = 0; i < ids.length; i++) {
+        ids[i] = overdue.get(i).thread.getId();
+      }
+      ThreadInfo[] infos = threads.getThreadInfo(ids, maxDepth);
+      for (int i = 0; i < infos.length; i++) {
+        // Null if the thread has died since
+        if (infos[i] != null) {
+          overdue.get(i).add(infos[i].getStackTrace());
+        }
+      }
+    } catch (RuntimeException e) {
+      // Anything thrown out of here would cancel the sampling for good
+      log.warn("Error sampling slow requests", e);
+    }
+  }
+
+  /**
+   * The frames of a stack from the root down, as one line of a collapsed profile (without the
+   * count).
+   */
+  static String collapse(final StackTraceElement[] stack) {
+    StringBuilder collapsed = new StringBuilder();
+    for (int i = stack.length - 1; i >= 0; i--) {
+      if (collapsed.length() > 0) {
+        collapsed.append(';');
+      }
+      collapsed.append(stack[i].getClassName()).append('.').append(stack[i].getMethodName());
+    }
+    return collapsed.toString();
+  }
+
+  /**
+   * A request being watched.
+   */
+  public final class Watch {
+
+    private final Thread thread;
+
+    private final long started;
+
+    /* Sample count by collapsed stack, guarded by this */
+    private final Map<String, Integer> samples = new LinkedHashMap<>();
+
+    private int sampleCount;
+
+    private boolean stopped;
+
+    private Watch(final Thread thread, final long started) {
+      this.thread = thread;
+      this.started = started;
+    }
+
+    /**
+     * Stops watching the request.
+     *
+     * @return the profile of the request in collapsed format, or null if it was never sampled
+     */
+    public String stop() {
+      watches.remove(this);
+      synchronized (this) {
+        stopped = true;
+        if (samples.isEmpty()) {
+          return null;
+        }
+        StringBuilder profile = new StringBuilder();
+        samples.forEach((stack, count) ->
+            profile.append(stack).append(' ').append(count).append('\n'));
+        return profile.toString();
+      }
+    }
+
+    private synchronized void add(final StackTraceElement[] stack) {
+      // The request may have finished while its stack was being taken
+      if (stopped || stack.length == 0) {
+        return;
+      }
+      samples.merge(collapse(stack), 1, Integer::sum);
+      if (++sampleCount >= maxSamples) {
+        log.debug("Took the most samples allowed of {}", thread.getName());
+        watches.remove(this);
+      }
+    }
+  }
+}
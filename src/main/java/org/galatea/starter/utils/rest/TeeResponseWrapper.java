@@ -0,0 +1,111 @@
+package org.galatea.starter.utils.rest;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Sends the body straight on to the client as it's written, keeping a copy of the first limit
+ * bytes for the trace. For streamed responses, such as the exports, where holding anything back
+ * would delay the first byte. The callback is run just before the response could first be
+ * committed, as with AuditHeaderResponseWrapper.
+ */
+class TeeResponseWrapper extends AuditHeaderResponseWrapper {
+
+  private final int limit;
+
+  /* Written by whichever thread writes the body, and synchronized, so safe to read from another */
+  private final ByteArrayOutputStream captured;
+
+  private ServletOutputStream outputStream;
+
+  private PrintWriter writer;
+
+  TeeResponseWrapper(final HttpServletResponse response, final int limit,
+      final Runnable beforeCommit) {
+    super(response, beforeCommit);
+    this.limit = limit;
+    this.captured = new ByteArrayOutputStream(Math.min(limit, 1024));
+  }
+
+  /**
+   * The start of the body written so far, up to limit bytes.
+   */
+  byte[] getCapturedPayload() {
+    return captured.toByteArray();
+  }
+
+  @Override
+  public synchronized ServletOutputStream getOutputStream() throws IOException {
+    if (outputStream == null) {
+      outputStream = new TeeOutputStream(super.getOutputStream());
+    }
+    return outputStream;
+  }
+
+  @Override
+  public synchronized PrintWriter getWriter() throws IOException {
+    if (writer == null) {
+      writer = new PrintWriter(new OutputStreamWriter(getOutputStream(), getCharacterEncoding()));
+    }
+    return writer;
+  }
+
+  @Override
+  public void flushBuffer() throws IOException {
+    if (writer != null) {
+      writer.flush();
+    }
+    super.flushBuffer();
+  }
+
+  private class TeeOutputStream extends ServletOutputStream {
+
+    private final ServletOutputStream target;
+
+    TeeOutputStream(final ServletOutputStream target) {
+      this.target = target;
+    }
+
+    @Override
+    public void write(final int b) throws IOException {
+      if (captured.size() < limit) {
+        captured.write(b);
+      }
+      target.write(b);
+    }
+
+    @Override
+    public void write(final byte[] b, final int off, final int len) throws IOException {
+      int toCapture = Math.min(len, limit - captured.size());
+      if (toCapture > 0) {
+        captured.write(b, off, toCapture);
+      }
+      target.write(b, off, len);
+    }
+
+    @Override
+    public void flush() throws IOException {
+      target.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+      target.close();
+    }
+
+    @Override
+    public boolean isReady() {
+      return target.isReady();
+    }
+
+    @Override
+    public void setWriteListener(final WriteListener writeListener) {
+      target.setWriteListener(writeListener);
+    }
+  }
+}
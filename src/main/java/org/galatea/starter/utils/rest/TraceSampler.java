@@ -0,0 +1,101 @@
+package org.galatea.starter.utils.rest;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import lombok.Getter;
+import lombok.ToString;
+import lombok.Value;
+
+/**
+ * Decides which requests FuseHttpTraceFilter traces in full. Each request is sampled when it
+ * arrives (head-based), with the rate of the longest path prefix rule that matches it, or the
+ * default rate if none do.
+ */
+@ToString
+public class TraceSampler {
+
+  /**
+   * Traces every request, the behavior before sampling was added.
+   */
+  public static final TraceSampler ALWAYS =
+      new TraceSampler(1.0, Collections.emptyList(), true);
+
+  private final double defaultRate;
+
+  /* Longest prefix first, so the most specific rule wins */
+  private final List<PathRule> pathRules;
+
+  /**
+   * Whether requests that weren't sampled should still be traced (without bodies) if they fail.
+   */
+  @Getter
+  private final boolean traceErrors;
+
+  @Value
+  private static class PathRule {
+
+    private String prefix;
+
+    private double rate;
+  }
+
+  /**
+   * Creates a sampler.
+   *
+   * @param defaultRate the share of requests to trace, from 0 (none) to 1 (all)
+   * @param pathRates rules overriding the default rate for paths starting with a prefix, each
+   *     written as prefix=rate, e.g. /settlementEngine/mission/=0.01
+   * @param traceErrors whether to trace requests that fail even if they weren't sampled
+   */
+  public TraceSampler(final double defaultRate, final List<String> pathRates,
+      final boolean traceErrors) {
+    this.defaultRate = checkRate(defaultRate);
+    this.traceErrors = traceErrors;
+
+    List<PathRule> rules = new ArrayList<>();
+    for (String pathRate : pathRates) {
+      if (pathRate.trim().isEmpty()) {
+        continue;
+      }
+      int separator = pathRate.lastIndexOf('=');
+      if (separator < 0) {
+        throw new IllegalArgumentException(
+            "Trace sampling rule '" + pathRate + "' should be written as prefix=rate");
+      }
+      rules.add(new PathRule(pathRate.substring(0, separator).trim(),
+          checkRate(Double.parseDouble(pathRate.substring(separator + 1).trim()))));
+    }
+    rules.sort(Comparator.comparingInt((PathRule rule) -> rule.getPrefix().length()).reversed());
+    this.pathRules = rules;
+  }
+
+  /**
+   * Returns true if the request for the given path should be traced in full.
+   */
+  public boolean sample(final String path) {
+    double rate = rateFor(path);
+    return rate >= 1.0 || (rate > 0.0 && ThreadLocalRandom.current().nextDouble() < rate);
+  }
+
+  /**
+   * The sampling rate that applies to the given path.
+   */
+  double rateFor(final String path) {
+    for (PathRule rule : pathRules) {
+      if (path.startsWith(rule.getPrefix())) {
+        return rule.getRate();
+      }
+    }
+    return defaultRate;
+  }
+
+  private static double checkRate(final double rate) {
+    if (rate < 0.0 || rate > 1.0) {
+      throw new IllegalArgumentException("Trace sampling rate " + rate + " is not between 0 and 1");
+    }
+    return rate;
+  }
+}
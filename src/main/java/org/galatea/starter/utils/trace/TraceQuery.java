@@ -0,0 +1,59 @@
+package org.galatea.starter.utils.trace;
+
+import java.time.Instant;
+import lombok.Builder;
+import lombok.Value;
+
+/**
+ * What to search the trace store for. Every criterion given must match; those left null match
+ * anything.
+ */
+@Value
+@Builder
+public class TraceQuery {
+
+  /* Upper bounds (exclusive) of the latency buckets traces are indexed by, the last is unbounded */
+  static final long[] LATENCY_BUCKETS_MILLIS = {10, 50, 100, 250, 500, 1000, 5000};
+
+  private String internalRequestId;
+
+  private String externalRequestId;
+
+  /* The request path, exactly, without the query string */
+  private String path;
+
+  /* Time taken, inclusive. Traces whose time taken isn't known don't match either */
+  private Long minMillis;
+
+  private Long maxMillis;
+
+  /* When the request was received, inclusive */
+  private Instant from;
+
+  private Instant to;
+
+  /* The most traces returned, newest first */
+  private int limit;
+
+  /**
+   * The latency bucket the given time taken falls in.
+   */
+  static int latencyBucket(final long millis) {
+    for (int i = 0; i < LATENCY_BUCKETS_MILLIS.length; i++) {
+      if (millis < LATENCY_BUCKETS_MILLIS[i]) {
+        return i;
+      }
+    }
+    return LATENCY_BUCKETS_MILLIS.length;
+  }
+
+  boolean matches(final TraceSegment.Entry entry) {
+    return (internalRequestId == null || internalRequestId.equals(entry.getInternalId()))
+        && (externalRequestId == null || externalRequestId.equals(entry.getExternalId()))
+        && (path == null || path.equals(entry.getPath()))
+        && (minMillis == null || entry.getTimeTaken() >= minMillis)
+        && (maxMillis == null || entry.getTimeTaken() >= 0 && entry.getTimeTaken() <= maxMillis)
+        && (from == null || entry.getTimestamp() >= from.toEpochMilli())
+        && (to == null || entry.getTimestamp() <= to.toEpochMilli());
+  }
+}
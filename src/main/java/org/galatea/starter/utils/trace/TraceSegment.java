@@ -0,0 +1,363 @@
+package org.galatea.starter.utils.trace;
+
+import com.google.common.collect.Lists;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import lombok.Value;
+
+/**
+ * One append-only file of traces, plus an in-memory index of what's in it.
+ *
+ * <p>Each record is laid out as:
+ *
+ * <pre>
+ * int    length of the rest of the record
+ * long   timestamp, epoch millis
+ * long   time taken, millis (-1 if unknown)
+ * int    response status
+ * string internal request id
+ * string external request id
+ * string path
+ * int    length of the trace JSON, then the JSON
+ * </pre>
+ *
+ * <p>where each string is an unsigned short byte count followed by that many bytes of UTF-8. The
+ * length goes in last, so a record torn by a crash reads as the end of the file (the gap left for
+ * the length reads as zero).
+ *
+ * <p>The file is read and written through a FileChannel rather than mapped, so once a segment is
+ * deleted nothing of it is left in memory or on disk; a mapping would hold on to both until it was
+ * garbage collected. Appends and deletes need TraceStore's write lock, reads can run together.
+ */
+class TraceSegment {
+
+  /* Most bytes kept of each string field */
+  private static final int MAX_STRING_BYTES = 0xFFFF;
+
+  /* Fixed part of a record after its length: timestamp, time taken, status and the lengths */
+  private static final int FIXED_BYTES = 8 + 8 + 4 + 3 * 2 + 4;
+
+  private final Path file;
+
+  private final FileChannel channel;
+
+  /* Most bytes the file may grow to */
+  private final int sizeBytes;
+
+  /* Segments read back on startup aren't appended to */
+  private final boolean readOnly;
+
+  private final long createdMillis;
+
+  private long lastMillis;
+
+  private int writePosition;
+
+  private final List<Entry> entries = new ArrayList<>();
+
+  private final Map<String, List<Entry>> byInternalId = new HashMap<>();
+
+  private final Map<String, List<Entry>> byExternalId = new HashMap<>();
+
+  private final Map<String, List<Entry>> byPath = new HashMap<>();
+
+  private final List<List<Entry>> byLatencyBucket = new ArrayList<>();
+
+  private TraceSegment(final Path file, final FileChannel channel, final int sizeBytes,
+      final boolean readOnly, final long createdMillis) {
+    this.file = file;
+    this.channel = channel;
+    this.sizeBytes = sizeBytes;
+    this.readOnly = readOnly;
+    this.createdMillis = createdMillis;
+    this.lastMillis = createdMillis;
+    for (int i = 0; i < TraceQuery.LATENCY_BUCKETS_MILLIS.length + 1; i++) {
+      byLatencyBucket.add(new ArrayList<>());
+    }
+  }
+
+  /**
+   * Creates an empty segment file that can grow to the given size.
+   */
+  static TraceSegment create(final Path file, final int sizeBytes, final long createdMillis)
+      throws IOException {
+    FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW,
+        StandardOpenOption.READ, StandardOpenOption.WRITE);
+    return new TraceSegment(file, channel, sizeBytes, false, createdMillis);
+  }
+
+  /**
+   * Opens an existing segment file read-only and indexes the records in it.
+   */
+  static TraceSegment open(final Path file, final long createdMillis) throws IOException {
+    FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+    try {
+      TraceSegment segment = new TraceSegment(file, channel, (int) channel.size(), true,
+          createdMillis);
+      int offset = 0;
+      ByteBuffer record;
+      while ((record = segment.readRecord(offset)) != null) {
+        long timestamp = record.getLong();
+        long timeTaken = record.getLong();
+        int status = record.getInt();
+        String internalId = readString(record);
+        String externalId = readString(record);
+        String path = segment.sharedPath(readString(record));
+        segment.index(new Entry(offset, timestamp, timeTaken, status, internalId, externalId,
+            path));
+        offset += 4 + record.limit();
+      }
+      return segment;
+    } catch (IOException | RuntimeException e) {
+      channel.close();
+      throw e;
+    }
+  }
+
+  /**
+   * Appends a record.
+   *
+   * @return false if there isn't room for it, in which case nothing is written
+   */
+  boolean append(final long timestamp, final long timeTaken, final int status,
+      final String internalId, final String externalId, final String path, final byte[] json)
+      throws IOException {
+    byte[] internalBytes = toBytes(internalId);
+    byte[] externalBytes = toBytes(externalId);
+    byte[] pathBytes = toBytes(path);
+    int length = FIXED_BYTES + internalBytes.length + externalBytes.length + pathBytes.length
+        + json.length;
+    if (readOnly || (long) writePosition + 4 + length > sizeBytes) {
+      return false;
+    }
+
+    ByteBuffer out = ByteBuffer.allocate(length);
+    out.putLong(timestamp);
+    out.putLong(timeTaken);
+    out.putInt(status);
+    writeString(out, internalBytes);
+    writeString(out, externalBytes);
+    writeString(out, pathBytes);
+    out.putInt(json.length);
+    out.put(json);
+    out.flip();
+    writeFully(out, writePosition + 4);
+    ByteBuffer lengthBytes = ByteBuffer.allocate(4);
+    lengthBytes.putInt(0, length);
+    writeFully(lengthBytes, writePosition);
+
+    index(new Entry(writePosition, timestamp, timeTaken, status, fromBytes(internalBytes),
+        fromBytes(externalBytes), sharedPath(fromBytes(pathBytes))));
+    writePosition += 4 + length;
+    return true;
+  }
+
+  /**
+   * Reads back the trace JSON of a record.
+   */
+  byte[] readJson(final Entry entry) throws IOException {
+    ByteBuffer record = readRecord(entry.getOffset());
+    if (record == null) {
+      throw new IOException("No trace at " + entry.getOffset() + " in " + file);
+    }
+    record.position(8 + 8 + 4);
+    for (int i = 0; i < 3; i++) {
+      record.position(record.position() + 2 + Short.toUnsignedInt(record.getShort()));
+    }
+    byte[] json = new byte[record.getInt()];
+    record.get(json);
+    return json;
+  }
+
+  /**
+   * Write what's been appended out to disk. The OS would get to it anyway, this just bounds how
+   * much a crash of the machine (rather than the process) can lose.
+   */
+  void force() throws IOException {
+    if (!readOnly) {
+      channel.force(false);
+    }
+  }
+
+  /**
+   * Closes the file, after which the segment can't be read.
+   */
+  void close() throws IOException {
+    channel.close();
+  }
+
+  /**
+   * Closes and deletes the file.
+   */
+  void delete() throws IOException {
+    channel.close();
+    Files.deleteIfExists(file);
+  }
+
+  /**
+   * The records that could match the query, newest first. Uses the most selective index the query
+   * allows; the caller still has to check each entry against the query.
+   */
+  List<Entry> candidates(final TraceQuery query) {
+    List<Entry> candidates;
+    if (query.getInternalRequestId() != null) {
+      candidates = byInternalId.getOrDefault(query.getInternalRequestId(), Collections.emptyList());
+    } else if (query.getExternalRequestId() != null) {
+      candidates = byExternalId.getOrDefault(query.getExternalRequestId(), Collections.emptyList());
+    } else if (query.getPath() != null) {
+      candidates = byPath.getOrDefault(query.getPath(), Collections.emptyList());
+    } else if (query.getMinMillis() != null) {
+      // Buckets are only in time order within themselves, so put them back in record order
+      candidates = new ArrayList<>();
+      int last = TraceQuery.latencyBucket(query.getMaxMillis() == null ? Long.MAX_VALUE
+          : query.getMaxMillis());
+      for (int i = TraceQuery.latencyBucket(query.getMinMillis()); i <= last; i++) {
+        candidates.addAll(byLatencyBucket.get(i));
+      }
+      candidates.sort((a, b) -> Integer.compare(a.getOffset(), b.getOffset()));
+    } else {
+      candidates = entries;
+    }
+
+    return Lists.reverse(candidates);
+  }
+
+  Path getFile() {
+    return file;
+  }
+
+  long getCreatedMillis() {
+    return createdMillis;
+  }
+
+  /* Time of the newest record, or when the segment was created if it's empty */
+  long getLastMillis() {
+    return lastMillis;
+  }
+
+  int size() {
+    return entries.size();
+  }
+
+  /*
+   * The record at the given offset, positioned after its length, or null if there isn't a whole
+   * record there.
+   */
+  private ByteBuffer readRecord(final int offset) throws IOException {
+    ByteBuffer lengthBytes = ByteBuffer.allocate(4);
+    if (!readFully(lengthBytes, offset)) {
+      return null;
+    }
+    int length = lengthBytes.getInt(0);
+    if (length <= 0 || length > channel.size() - offset - 4) {
+      return null;
+    }
+    ByteBuffer record = ByteBuffer.allocate(length);
+    if (!readFully(record, offset + 4)) {
+      return null;
+    }
+    record.flip();
+    return record;
+  }
+
+  /*
+   * Fills the buffer from the given position in the file, unless the file ends first.
+   */
+  private boolean readFully(final ByteBuffer buffer, final long position) throws IOException {
+    while (buffer.hasRemaining()) {
+      if (channel.read(buffer, position + buffer.position()) < 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private void writeFully(final ByteBuffer buffer, final long position) throws IOException {
+    while (buffer.hasRemaining()) {
+      channel.write(buffer, position + buffer.position());
+    }
+  }
+
+  /*
+   * There are only a few distinct paths, so entries share one copy of each.
+   */
+  private String sharedPath(final String path) {
+    List<Entry> samePath = path == null ? null : byPath.get(path);
+    return samePath == null ? path : samePath.get(0).getPath();
+  }
+
+  private void index(final Entry entry) {
+    entries.add(entry);
+    lastMillis = Math.max(lastMillis, entry.getTimestamp());
+    if (entry.getInternalId() != null) {
+      // Ids are nearly always unique, so size for one
+      byInternalId.computeIfAbsent(entry.getInternalId(), k -> new ArrayList<>(1)).add(entry);
+    }
+    if (entry.getExternalId() != null) {
+      byExternalId.computeIfAbsent(entry.getExternalId(), k -> new ArrayList<>(1)).add(entry);
+    }
+    if (entry.getPath() != null) {
+      byPath.computeIfAbsent(entry.getPath(), k -> new ArrayList<>()).add(entry);
+    }
+    if (entry.getTimeTaken() >= 0) {
+      byLatencyBucket.get(TraceQuery.latencyBucket(entry.getTimeTaken())).add(entry);
+    }
+  }
+
+  private static byte[] toBytes(final String value) {
+    if (value == null) {
+      return new byte[0];
+    }
+    byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+    return bytes.length <= MAX_STRING_BYTES ? bytes
+        : Arrays.copyOf(bytes, MAX_STRING_BYTES);
+  }
+
+  private static String fromBytes(final byte[] bytes) {
+    // Empty and absent are the same thing here
+    return bytes.length == 0 ? null : new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  private static void writeString(final ByteBuffer out, final byte[] bytes) {
+    out.putShort((short) bytes.length);
+    out.put(bytes);
+  }
+
+  private static String readString(final ByteBuffer in) {
+    byte[] bytes = new byte[Short.toUnsignedInt(in.getShort())];
+    in.get(bytes);
+    return fromBytes(bytes);
+  }
+
+  /**
+   * Where a record is and what it's indexed by.
+   */
+  @Value
+  static class Entry {
+
+    private int offset;
+
+    private long timestamp;
+
+    private long timeTaken;
+
+    private int status;
+
+    private String internalId;
+
+    private String externalId;
+
+    private String path;
+  }
+}
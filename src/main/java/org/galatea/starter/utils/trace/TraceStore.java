@@ -0,0 +1,345 @@
+package org.galatea.starter.utils.trace;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.galatea.starter.utils.FuseHttpTrace;
+import org.springframework.boot.actuate.trace.http.HttpTrace;
+
+/**
+ * Keeps traces on disk for a while so they can be searched, e.g. for the slow requests around an
+ * incident.
+ *
+ * <p>Traces are appended to segment files in a numbered subdirectory of the given directory, the
+ * first one no other store has locked. So instances sharing a directory (e.g. on one host) each
+ * keep to their own segments, while a restarted instance usually gets back its old subdirectory and
+ * the traces in it.
+ *
+ * <p>A new segment is started when the current one is full or has been open for segmentDuration,
+ * and whole segments are deleted once everything in them is older than the retention, or when there
+ * are more than maxSegments of them, so disk use is bounded by maxSegments * segmentBytes. Each
+ * segment is indexed in memory by internal and external request id, path and latency bucket; the
+ * index is rebuilt from the files on startup. The index costs a few hundred bytes of heap per
+ * trace, so the oldest segments are also deleted once more than maxIndexedTraces are indexed.
+ *
+ * <p>Appends are expected from a single thread (FuseHttpTraceRepository's drainer), searches from
+ * any. A read-write lock keeps them apart.
+ */
+@Slf4j
+public class TraceStore implements Closeable {
+
+  private static final String SEGMENT_PREFIX = "traces-";
+
+  private static final String SEGMENT_SUFFIX = ".seg";
+
+  /* Held by the store using a subdirectory */
+  private static final String LOCK_FILE = "store.lock";
+
+  /* Most stores that can share a directory */
+  private static final int MAX_INSTANCES = 64;
+
+  /* Searches return at most this many traces, however many are asked for */
+  public static final int MAX_LIMIT = 1000;
+
+  private final Path directory;
+
+  private final int segmentBytes;
+
+  private final Duration segmentDuration;
+
+  private final Duration retention;
+
+  private final int maxSegments;
+
+  private final int maxIndexedTraces;
+
+  private final Clock clock;
+
+  /* Keeps other stores out of our subdirectory */
+  private final FileLock directoryLock;
+
+  /* Oldest first, the last is the one being appended to (if there is one) */
+  private final Deque<TraceSegment> segments = new ArrayDeque<>();
+
+  private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+  private TraceSegment current;
+
+  /* Traces indexed across all the segments */
+  private int indexedTraces;
+
+  /**
+   * Opens the store, indexing any segments already in the directory.
+   *
+   * @param directory where the segment files are kept, in a subdirectory of it, created if need be
+   * @param segmentBytes size of each segment file
+   * @param segmentDuration longest a segment is appended to
+   * @param retention how long traces are kept
+   * @param maxSegments most segment files kept, however recent
+   * @param maxIndexedTraces most traces kept indexed in memory, however recent
+   */
+  public TraceStore(@NonNull final Path directory, final int segmentBytes,
+      @NonNull final Duration segmentDuration, @NonNull final Duration retention,
+      final int maxSegments, final int maxIndexedTraces) throws IOException {
+    this(directory, segmentBytes, segmentDuration, retention, maxSegments, maxIndexedTraces,
+        Clock.systemUTC());
+  }
+
+  TraceStore(final Path directory, final int segmentBytes, final Duration segmentDuration,
+      final Duration retention, final int maxSegments, final int maxIndexedTraces,
+      final Clock clock) throws IOException {
+    if (maxSegments < 1) {
+      throw new IllegalArgumentException("Must keep at least 1 segment, was " + maxSegments);
+    }
+    if (maxIndexedTraces < 1) {
+      throw new IllegalArgumentException(
+          "Must index at least 1 trace, was " + maxIndexedTraces);
+    }
+    this.segmentBytes = segmentBytes;
+    this.segmentDuration = segmentDuration;
+    this.retention = retention;
+    this.maxSegments = maxSegments;
+    this.maxIndexedTraces = maxIndexedTraces;
+    this.clock = clock;
+
+    FileLock lock = null;
+    Path claimed = null;
+    for (int i = 0; i < MAX_INSTANCES && lock == null; i++) {
+      claimed = directory.resolve(String.valueOf(i));
+      lock = tryLock(claimed);
+    }
+    if (lock == null) {
+      throw new IOException(
+          "All " + MAX_INSTANCES + " trace store directories in " + directory + " are in use");
+    }
+    this.directory = claimed;
+    this.directoryLock = lock;
+
+    List<TraceSegment> existing = new ArrayList<>();
+    try (DirectoryStream<Path> files =
+        Files.newDirectoryStream(this.directory, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+      for (Path file : files) {
+        Long createdMillis = createdMillis(file);
+        if (createdMillis == null) {
+          continue;
+        }
+        try {
+          existing.add(TraceSegment.open(file, createdMillis));
+        } catch (IOException e) {
+          log.warn("Skipping unreadable trace segment {}", file, e);
+        }
+      }
+    }
+    existing.sort(Comparator.comparingLong(TraceSegment::getCreatedMillis));
+    segments.addAll(existing);
+    for (TraceSegment segment : existing) {
+      indexedTraces += segment.size();
+    }
+    expire();
+    log.info("Opened trace store in {} with {} segment(s)", this.directory, segments.size());
+  }
+
+  /**
+   * Stores the trace, given along with its JSON encoding. A trace too big for a segment is dropped.
+   */
+  public void append(final FuseHttpTrace trace, final byte[] json) throws IOException {
+    HttpTrace httpTrace = trace.getTrace();
+    append(httpTrace.getTimestamp().toEpochMilli(),
+        httpTrace.getTimeTaken() == null ? -1 : httpTrace.getTimeTaken(),
+        httpTrace.getResponse() == null ? 0 : httpTrace.getResponse().getStatus(),
+        trace.getInternalRequestId(), trace.getExternalRequestId(),
+        httpTrace.getRequest().getUri().getPath(), json);
+  }
+
+  void append(final long timestamp, final long timeTaken, final int status,
+      final String internalId, final String externalId, final String path, final byte[] json)
+      throws IOException {
+    lock.writeLock().lock();
+    try {
+      long now = clock.millis();
+      if (current == null || now - current.getCreatedMillis() >= segmentDuration.toMillis()
+          || current.size() >= maxIndexedTraces) {
+        roll(now);
+      }
+      if (!current.append(timestamp, timeTaken, status, internalId, externalId, path, json)) {
+        // Full, start another. If it doesn't fit in an empty segment it never will
+        roll(now);
+        if (!current.append(timestamp, timeTaken, status, internalId, externalId, path, json)) {
+          log.warn("Trace of {} bytes is too big to store", json.length);
+          return;
+        }
+      }
+      indexedTraces++;
+      if (indexedTraces > maxIndexedTraces) {
+        expire();
+      }
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * Finds the traces matching the query, newest first.
+   *
+   * @return the JSON of each trace found, as given to append
+   */
+  public List<byte[]> search(@NonNull final TraceQuery query) throws IOException {
+    int limit = Math.min(query.getLimit() > 0 ? query.getLimit() : MAX_LIMIT, MAX_LIMIT);
+    List<byte[]> found = new ArrayList<>();
+
+    lock.readLock().lock();
+    try {
+      Iterator<TraceSegment> newestFirst = segments.descendingIterator();
+      while (newestFirst.hasNext() && found.size() < limit) {
+        TraceSegment segment = newestFirst.next();
+        // Skip segments entirely outside the time range. Timestamps are when requests arrived
+        // but traces are written when they finish, so a segment can hold requests that arrived a
+        // while before it was created
+        if (query.getTo() != null
+            && segment.getCreatedMillis() - segmentDuration.toMillis()
+            > query.getTo().toEpochMilli()) {
+          continue;
+        }
+        if (query.getFrom() != null && segment.getLastMillis() < query.getFrom().toEpochMilli()) {
+          continue;
+        }
+
+        for (TraceSegment.Entry entry : segment.candidates(query)) {
+          if (query.matches(entry)) {
+            found.add(segment.readJson(entry));
+            if (found.size() == limit) {
+              break;
+            }
+          }
+        }
+      }
+    } finally {
+      lock.readLock().unlock();
+    }
+    return found;
+  }
+
+  /**
+   * Deletes segments past the retention, or beyond maxSegments or maxIndexedTraces. Called whenever
+   * a segment is started, so traces may be kept up to segmentDuration past the retention, and when
+   * there are too many traces indexed.
+   */
+  void expire() {
+    long cutoff = clock.millis() - retention.toMillis();
+    while (!segments.isEmpty() && segments.peekFirst() != current
+        && (segments.size() > maxSegments || indexedTraces > maxIndexedTraces
+        || segments.peekFirst().getLastMillis() < cutoff)) {
+      TraceSegment oldest = segments.removeFirst();
+      indexedTraces -= oldest.size();
+      try {
+        oldest.delete();
+        log.info("Deleted trace segment {} holding {} trace(s)", oldest.getFile(), oldest.size());
+      } catch (IOException e) {
+        log.warn("Could not delete trace segment {}", oldest.getFile(), e);
+      }
+    }
+  }
+
+  int segmentCount() {
+    lock.readLock().lock();
+    try {
+      return segments.size();
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  int indexedTraceCount() {
+    lock.readLock().lock();
+    try {
+      return indexedTraces;
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Closes the segment files and gives up the subdirectory, after which the store can't be used.
+   */
+  @Override
+  public void close() throws IOException {
+    lock.writeLock().lock();
+    try {
+      if (current != null) {
+        current.force();
+        current = null;
+      }
+      for (TraceSegment segment : segments) {
+        segment.close();
+      }
+      segments.clear();
+      directoryLock.acquiredBy().close();
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  private void roll(final long now) throws IOException {
+    if (current != null) {
+      current.force();
+    }
+    // Names must be unique, even if two segments are started in the same millisecond
+    TraceSegment newest = segments.peekLast();
+    long createdMillis = newest == null ? now : Math.max(now, newest.getCreatedMillis() + 1);
+    Path file = directory.resolve(SEGMENT_PREFIX + createdMillis + SEGMENT_SUFFIX);
+    current = TraceSegment.create(file, segmentBytes, createdMillis);
+    segments.addLast(current);
+    expire();
+  }
+
+  /*
+   * Locks the given directory for this store, creating it if need be, or returns null if another
+   * store has it.
+   */
+  private static FileLock tryLock(final Path directory) throws IOException {
+    Files.createDirectories(directory);
+    FileChannel channel = FileChannel.open(directory.resolve(LOCK_FILE),
+        StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+    try {
+      FileLock lock = channel.tryLock();
+      if (lock != null) {
+        return lock;
+      }
+    } catch (OverlappingFileLockException e) {
+      // Another store in this JVM has it
+    } catch (IOException | RuntimeException e) {
+      channel.close();
+      throw e;
+    }
+    channel.close();
+    return null;
+  }
+
+  private static Long createdMillis(final Path file) {
+    String name = file.getFileName().toString();
+    try {
+      return Long.parseLong(
+          name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+    } catch (NumberFormatException e) {
+      return null;
+    }
+  }
+}
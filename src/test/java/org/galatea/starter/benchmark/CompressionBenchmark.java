@@ -0,0 +1,90 @@
+package org.galatea.starter.benchmark;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import org.apache.commons.io.output.CountingOutputStream;
+import org.apache.commons.io.output.NullOutputStream;
+import org.galatea.starter.domain.SettlementMission;
+import org.galatea.starter.testutils.TestDataGenerator;
+import org.galatea.starter.utils.http.converter.CsvSerializer;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * CPU cost of compressing a mission export at different deflate levels (mvc.compression.level),
+ * the same algorithm the server's gzip compression uses. Divide the export size by the time per op
+ * for throughput. The export and compressed sizes at each level, and the ratio between them, are
+ * reported as secondary results.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CompressionBenchmark {
+
+  private static final int ROWS = 100_000;
+
+  @Param({"1", "4", "6", "9"})
+  public int level;
+
+  private byte[] csv;
+
+  @Setup
+  public void setup() throws IOException {
+    List<SettlementMission> missions = IntStream.range(0, ROWS)
+        .mapToObj(i -> TestDataGenerator.defaultSettlementMissionData()
+            .id((long) i).qty(i % 1000 + 0.5).build())
+        .collect(Collectors.toList());
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    CsvSerializer.serializeToCsv(missions, SettlementMission.class, out);
+    csv = out.toByteArray();
+  }
+
+  @Benchmark
+  public long compressCsvExport(final Sizes sizes) throws IOException {
+    Deflater deflater = new Deflater(level, true);
+    CountingOutputStream counter = new CountingOutputStream(new NullOutputStream());
+    try (DeflaterOutputStream out = new DeflaterOutputStream(counter, deflater)) {
+      out.write(csv);
+    } finally {
+      deflater.end();
+    }
+    sizes.csvBytes = csv.length;
+    sizes.compressedBytes = counter.getByteCount();
+    return sizes.compressedBytes;
+  }
+
+  /**
+   * Sizes of the last export compressed, which JMH reports next to the timing.
+   */
+  @AuxCounters(AuxCounters.Type.EVENTS)
+  @State(Scope.Thread)
+  public static class Sizes {
+
+    public long csvBytes;
+
+    public long compressedBytes;
+
+    public double ratio() {
+      return compressedBytes == 0 ? 0 : (double) csvBytes / compressedBytes;
+    }
+  }
+}
@@ -0,0 +1,118 @@
+package org.galatea.starter.benchmark;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import javax.jms.MessageListener;
+import org.apache.activemq.ActiveMQConnectionFactory;
+import org.apache.activemq.broker.BrokerService;
+import org.galatea.starter.utils.jms.JmsListenerExecutors;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.jms.connection.CachingConnectionFactory;
+import org.springframework.jms.core.JmsTemplate;
+import org.springframework.jms.listener.DefaultMessageListenerContainer;
+
+/**
+ * Compares listener throughput with consumers on platform threads vs virtual threads, for a
+ * listener that spends most of its time blocked (as ours does on the database).
+ *
+ * <p>Both modes are run with the same number of visible CPUs (see the Fork annotation), so any
+ * difference in messages/second comes from the threading model rather than from extra cores. Virtual
+ * threads need Java 21+; on older JDKs the virtual runs fall back to platform threads and the two
+ * results should match.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 10)
+@Measurement(iterations = 5, time = 10)
+@Fork(value = 1, jvmArgsAppend = "-XX:ActiveProcessorCount=2")
+@State(Scope.Benchmark)
+public class JmsListenerExecutorBenchmark {
+
+  private static final String QUEUE = "benchmark.agreement";
+
+  private static final int MESSAGES_PER_OP = 1000;
+
+  @Param({JmsListenerExecutors.PLATFORM, JmsListenerExecutors.VIRTUAL})
+  public String executorMode;
+
+  @Param({"50", "500"})
+  public int concurrency;
+
+  /* Time the listener spends blocked per message, standing in for the database round trip */
+  @Param({"2"})
+  public long blockingMillis;
+
+  private BrokerService broker;
+
+  private DefaultMessageListenerContainer container;
+
+  private CachingConnectionFactory producerConnectionFactory;
+
+  private JmsTemplate jmsTemplate;
+
+  private volatile CountDownLatch processed;
+
+  @Setup(Level.Trial)
+  public void setup() throws Exception {
+    broker = new BrokerService();
+    broker.setBrokerName("benchmark");
+    broker.setPersistent(false);
+    broker.setUseJmx(false);
+    broker.start();
+
+    ActiveMQConnectionFactory connectionFactory =
+        new ActiveMQConnectionFactory("vm://benchmark?create=false");
+    // Spread messages evenly over the consumers rather than letting the first few hoard them
+    connectionFactory.getPrefetchPolicy().setQueuePrefetch(1);
+
+    container = new DefaultMessageListenerContainer();
+    container.setConnectionFactory(connectionFactory);
+    container.setDestinationName(QUEUE);
+    container.setConcurrentConsumers(concurrency);
+    container.setMaxConcurrentConsumers(concurrency);
+    container.setTaskExecutor(JmsListenerExecutors.forMode(executorMode));
+    container.setMessageListener((MessageListener) message -> {
+      try {
+        Thread.sleep(blockingMillis);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      processed.countDown();
+    });
+    container.afterPropertiesSet();
+    container.start();
+
+    producerConnectionFactory = new CachingConnectionFactory(connectionFactory);
+    jmsTemplate = new JmsTemplate(producerConnectionFactory);
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(MESSAGES_PER_OP)
+  public void processMessages() throws InterruptedException {
+    processed = new CountDownLatch(MESSAGES_PER_OP);
+    for (int i = 0; i < MESSAGES_PER_OP; i++) {
+      jmsTemplate.convertAndSend(QUEUE, "agreement-" + i);
+    }
+    processed.await();
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws Exception {
+    container.shutdown();
+    producerConnectionFactory.destroy();
+    broker.stop();
+  }
+}
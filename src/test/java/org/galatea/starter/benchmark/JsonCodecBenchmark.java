@@ -0,0 +1,91 @@
+package org.galatea.starter.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import org.apache.commons.io.output.CountingOutputStream;
+import org.apache.commons.io.output.NullOutputStream;
+import org.galatea.starter.MessageTranslationConfig;
+import org.galatea.starter.MvcConfig;
+import org.galatea.starter.domain.SettlementMission;
+import org.galatea.starter.entrypoint.messagecontracts.SettlementMissionList;
+import org.galatea.starter.entrypoint.messagecontracts.SettlementMissionMessage;
+import org.galatea.starter.testutils.TestDataGenerator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+/**
+ * CPU cost of writing the JSON bodies of getMission and getMissions with the shared ObjectMapper
+ * (with MvcConfig's Afterburner module) versus the reflective mapper the JSON converter used to build for
+ * itself. Bodies are written to a byte-counting sink so only serialization is measured.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class JsonCodecBenchmark {
+
+  private static final int MISSIONS = 1000;
+
+  @Param({"reflective", "afterburner"})
+  public String mapper;
+
+  private ObjectWriter missionWriter;
+
+  private ObjectWriter missionListWriter;
+
+  private SettlementMissionMessage mission;
+
+  private SettlementMissionList missionList;
+
+  @Setup
+  public void setup() {
+    Jackson2ObjectMapperBuilder builder = Jackson2ObjectMapperBuilder.json();
+    if ("afterburner".equals(mapper)) {
+      builder.modulesToInstall(MvcConfig.afterburnerModule());
+    }
+    ObjectMapper objectMapper = builder.build();
+    missionWriter = objectMapper.writerFor(SettlementMissionMessage.class);
+    missionListWriter = objectMapper.writerFor(SettlementMissionList.class);
+
+    List<SettlementMission> missions = IntStream.range(0, MISSIONS)
+        .mapToObj(i -> TestDataGenerator.defaultSettlementMissionData()
+            .id((long) i).qty(i % 1000 + 0.5).build())
+        .collect(Collectors.toList());
+    mission = new MessageTranslationConfig().settlementMissionTranslator()
+        .translate(missions.get(0));
+    missionList = new SettlementMissionList(missions);
+  }
+
+  @Benchmark
+  public long writeMission() throws IOException {
+    return write(missionWriter, mission);
+  }
+
+  @Benchmark
+  public long writeMissionList() throws IOException {
+    return write(missionListWriter, missionList);
+  }
+
+  private static long write(final ObjectWriter writer, final Object value) throws IOException {
+    CountingOutputStream out = new CountingOutputStream(new NullOutputStream());
+    writer.writeValue(out, value);
+    return out.getByteCount();
+  }
+}
@@ -0,0 +1,140 @@
+package org.galatea.starter.benchmark;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import org.apache.commons.io.output.CountingOutputStream;
+import org.apache.commons.io.output.NullOutputStream;
+import org.apache.commons.lang3.reflect.FieldUtils;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+import org.galatea.starter.domain.SettlementMission;
+import org.galatea.starter.testutils.TestDataGenerator;
+import org.galatea.starter.utils.http.converter.XlsxSerializer;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Per-row cost of reading cell values for a 100k row sheet of SettlementMissions, comparing the
+ * cached serialization plan with the per-call reflection XlsxSerializer used to do. Also times the
+ * whole XLSX export against writing every cell as a string (as XlsxSerializer used to), reporting
+ * the file size of each as a secondary result (xlsxBytes).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class XlsxSerializerBenchmark {
+
+  private static final int ROWS = 100_000;
+
+  private List<SettlementMission> missions;
+
+  @Setup
+  public void setup() {
+    missions = IntStream.range(0, ROWS)
+        .mapToObj(i -> TestDataGenerator.defaultSettlementMissionData().id((long) i).build())
+        .collect(Collectors.toList());
+  }
+
+  /*
+   * What populateDataRows used to do: walk the hierarchy for the fields on every call and read
+   * each one with FieldUtils.
+   */
+  @Benchmark
+  @OperationsPerInvocation(ROWS)
+  public void reflectiveCellReads(final Blackhole blackhole) throws IllegalAccessException {
+    List<Field> fields = fieldsOf(SettlementMission.class);
+    for (SettlementMission mission : missions) {
+      for (Field field : fields) {
+        blackhole.consume(FieldUtils.readField(field, mission, true));
+      }
+    }
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(ROWS)
+  public void planCellReads(final Blackhole blackhole) {
+    XlsxSerializer.SerializationPlan plan = XlsxSerializer.planFor(SettlementMission.class);
+    int columns = plan.getGetters().size();
+    for (SettlementMission mission : missions) {
+      for (int col = 0; col < columns; col++) {
+        blackhole.consume(plan.readCell(mission, col));
+      }
+    }
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(ROWS)
+  public void serializeToXlsx(final Sizes sizes) throws IOException {
+    CountingOutputStream out = new CountingOutputStream(new NullOutputStream());
+    XlsxSerializer.serializeToXlsx(missions, SettlementMission.class, out);
+    sizes.xlsxBytes = out.getByteCount();
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(ROWS)
+  public void serializeToXlsxStringCells(final Sizes sizes) throws IOException {
+    CountingOutputStream out = new CountingOutputStream(new NullOutputStream());
+    SXSSFWorkbook wb = new SXSSFWorkbook(100);
+    wb.setCompressTempFiles(true);
+    try {
+      Sheet sheet = wb.createSheet();
+      XlsxSerializer.SerializationPlan plan = XlsxSerializer.planFor(SettlementMission.class);
+      int columns = plan.getGetters().size();
+      int rowIndex = 0;
+      for (SettlementMission mission : missions) {
+        Row row = sheet.createRow(rowIndex++);
+        for (int col = 0; col < columns; col++) {
+          row.createCell(col).setCellValue(String.valueOf(plan.readCell(mission, col)));
+        }
+      }
+      wb.write(out);
+    } finally {
+      wb.dispose();
+      wb.close();
+    }
+    sizes.xlsxBytes = out.getByteCount();
+  }
+
+  private static List<Field> fieldsOf(final Class<?> clazz) {
+    List<Field> fields = clazz.getSuperclass() == null
+        ? new ArrayList<>() : fieldsOf(clazz.getSuperclass());
+    for (Field field : clazz.getDeclaredFields()) {
+      if (!field.isSynthetic() && !Modifier.isTransient(field.getModifiers())) {
+        fields.add(field);
+      }
+    }
+    return fields;
+  }
+
+  /**
+   * Size of the spreadsheet written, which JMH reports next to the timing of each benchmark that
+   * takes it.
+   */
+  @AuxCounters(AuxCounters.Type.EVENTS)
+  @State(Scope.Thread)
+  public static class Sizes {
+
+    public long xlsxBytes;
+  }
+}
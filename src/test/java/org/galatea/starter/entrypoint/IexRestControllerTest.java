@@ -75,6 +75,24 @@ public class IexRestControllerTest extends ASpringTest {
         .andReturn();
   }
 
+  @Test
+  public void testGetLastTradedPriceChunked() throws Exception {
+
+    MvcResult result = this.mvc.perform(
+        org.springframework.test.web.servlet.request.MockMvcRequestBuilders
+            // Two symbols per request in the tests, so this takes two requests to IEX. The first is
+            // the slower (see mapping-lastTradedPriceChunk1.json) but its prices still come first
+            .get("/iex/lastTradedPrice?token=DUMMY_TKN&symbols=FB,AAPL,MSFT")
+            .accept(MediaType.APPLICATION_JSON_VALUE))
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$", hasSize(3)))
+        .andExpect(jsonPath("$[0].symbol", is("FB")))
+        .andExpect(jsonPath("$[1].symbol", is("AAPL")))
+        .andExpect(jsonPath("$[2].symbol", is("MSFT")))
+        .andExpect(jsonPath("$[2].price").value(new BigDecimal("138.89")))
+        .andReturn();
+  }
+
   @Test
   public void testGetLastTradedPriceEmpty() throws Exception {
 
@@ -0,0 +1,125 @@
+package org.galatea.starter.entrypoint;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.ByteArrayInputStream;
+import java.util.Arrays;
+import java.util.List;
+import org.apache.poi.ss.usermodel.DataFormatter;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.ss.usermodel.WorkbookFactory;
+import org.galatea.starter.MvcConfig;
+import org.galatea.starter.ProtoMessageTranslationConfig;
+import org.galatea.starter.domain.SettlementMission;
+import org.galatea.starter.entrypoint.messagecontracts.ProtobufMessages.SettlementMissionProtoMessage;
+import org.galatea.starter.service.MissionExportService;
+import org.galatea.starter.service.MissionExportService.MissionWriter;
+import org.galatea.starter.testutils.TestDataGenerator;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+public class MissionExportRestControllerTest {
+
+  private static final String EXPORT_PATH = "/settlementEngine/missions/export";
+
+  private final List<SettlementMission> missions = Arrays.asList(
+      TestDataGenerator.defaultSettlementMissionData().id(1L).build(),
+      TestDataGenerator.defaultSettlementMissionData().id(2L).instrument("AAPL").build());
+
+  private MockMvc mvc;
+
+  @Before
+  public void setup() throws Exception {
+    MissionExportService exportService = mock(MissionExportService.class);
+    doAnswer(invocation -> {
+      invocation.<MissionWriter>getArgument(0).write(missions);
+      return null;
+    }).when(exportService).exportAll(any());
+
+    MissionExportRestController controller = new MissionExportRestController(exportService,
+        new ProtoMessageTranslationConfig().settlementMissionProtoTranslator(),
+        new ObjectMapper());
+    mvc = MockMvcBuilders.standaloneSetup(controller)
+        .addPlaceholderValue("mvc.exportMissionsPath", EXPORT_PATH)
+        .build();
+  }
+
+  @Test
+  public void testExportJson() throws Exception {
+    mvc.perform(asyncDispatch(startExport(MediaType.APPLICATION_JSON_VALUE)))
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$.settlementMissions.length()").value(2))
+        .andExpect(jsonPath("$.settlementMissions[0].id").value(1))
+        .andExpect(jsonPath("$.settlementMissions[1].instrument").value("AAPL"));
+  }
+
+  @Test
+  public void testExportCsv() throws Exception {
+    mvc.perform(asyncDispatch(startExport(MvcConfig.TEXT_CSV_VALUE)))
+        .andExpect(status().isOk())
+        .andExpect(header().string(HttpHeaders.CONTENT_DISPOSITION,
+            "attachment; filename=SettlementMissions.csv"))
+        .andExpect(content().string(
+            "id,instrument,externalParty,depot,direction,qty,version\n"
+                + "1,IBM,EXT-1,DTC,REC,100.0,0\n"
+                + "2,AAPL,EXT-1,DTC,REC,100.0,0\n"));
+  }
+
+  @Test
+  public void testExportXlsx() throws Exception {
+    MvcResult result = mvc.perform(asyncDispatch(startExport(MvcConfig.APPLICATION_EXCEL_VALUE)))
+        .andExpect(status().isOk())
+        .andExpect(header().string(HttpHeaders.CONTENT_DISPOSITION,
+            "attachment; filename=SettlementMissions.xlsx"))
+        .andReturn();
+
+    try (Workbook workbook = WorkbookFactory.create(
+        new ByteArrayInputStream(result.getResponse().getContentAsByteArray()))) {
+      Sheet sheet = workbook.getSheetAt(0);
+      DataFormatter formatter = new DataFormatter();
+      // A header row, then a row per mission
+      assertEquals(2, sheet.getLastRowNum());
+      assertEquals("id", formatter.formatCellValue(sheet.getRow(0).getCell(0)));
+      assertEquals("instrument", formatter.formatCellValue(sheet.getRow(0).getCell(1)));
+      assertEquals("1", formatter.formatCellValue(sheet.getRow(1).getCell(0)));
+      assertEquals("AAPL", formatter.formatCellValue(sheet.getRow(2).getCell(1)));
+    }
+  }
+
+  @Test
+  public void testExportProto() throws Exception {
+    MvcResult result = mvc.perform(asyncDispatch(startExport("application/x-protobuf")))
+        .andExpect(status().isOk())
+        .andReturn();
+
+    ByteArrayInputStream body =
+        new ByteArrayInputStream(result.getResponse().getContentAsByteArray());
+    assertEquals(1L, SettlementMissionProtoMessage.parseDelimitedFrom(body).getId());
+    assertEquals("AAPL", SettlementMissionProtoMessage.parseDelimitedFrom(body).getInstrument());
+    assertNull(SettlementMissionProtoMessage.parseDelimitedFrom(body));
+  }
+
+  private MvcResult startExport(final String accept) throws Exception {
+    return mvc.perform(get(EXPORT_PATH).accept(accept))
+        .andExpect(request().asyncStarted())
+        .andReturn();
+  }
+}
@@ -0,0 +1,127 @@
+package org.galatea.starter.entrypoint;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import javax.jms.BytesMessage;
+import javax.jms.Connection;
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.Session;
+import org.apache.activemq.ActiveMQConnectionFactory;
+import org.apache.activemq.broker.BrokerRegistry;
+import org.apache.activemq.broker.BrokerService;
+import org.apache.activemq.command.ActiveMQQueue;
+import org.galatea.starter.ASpringTest;
+import org.galatea.starter.service.SettlementService;
+import org.galatea.starter.testutils.TestDataGenerator;
+import org.junit.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.jms.config.JmsListenerEndpointRegistry;
+import org.springframework.jms.core.JmsTemplate;
+import org.springframework.test.annotation.DirtiesContext;
+
+/**
+ * Runs the listeners with agreement lanes against the embedded broker, to check that a message is
+ * only acknowledged once its lane has finished with it.
+ */
+@SpringBootTest(properties = {"jms.agreement-lanes=1", "jms.listener-concurrency=1"})
+public class SettlementJmsListenerLaneTest extends ASpringTest {
+
+  @Autowired
+  private JmsTemplate jmsTemplate;
+
+  @Autowired
+  private JmsListenerEndpointRegistry listenerRegistry;
+
+  @MockBean
+  private SettlementService mockSettlementService;
+
+  @Value("${jms.agreement-queue-proto}")
+  private String protoQueueName;
+
+  @Test
+  @DirtiesContext
+  public void testUnfinishedLaneWorkRedelivered() throws Exception {
+    CountDownLatch started = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    when(mockSettlementService.spawnMissions(anyList())).thenAnswer(invocation -> {
+      started.countDown();
+      release.await();
+      return Collections.emptySet();
+    });
+    byte[] body = TestDataGenerator.defaultTradeAgreementProtoMessageData().build().toByteArray();
+
+    try {
+      jmsTemplate.convertAndSend(protoQueueName, body);
+      assertTrue("The lane never picked up the agreement", started.await(10, TimeUnit.SECONDS));
+
+      // The listener returned long ago, but with the lane still busy the message must still be
+      // unacknowledged. Closing the consumers hands it back to the broker
+      listenerRegistry.destroy();
+
+      Message redelivered = receive();
+      assertNotNull("The message was acknowledged before its lane finished", redelivered);
+      byte[] redeliveredBody = new byte[(int) ((BytesMessage) redelivered).getBodyLength()];
+      ((BytesMessage) redelivered).readBytes(redeliveredBody);
+      assertArrayEquals(body, redeliveredBody);
+    } finally {
+      release.countDown();
+    }
+  }
+
+  @Test
+  @DirtiesContext
+  public void testFinishedLaneWorkAcknowledged() throws Exception {
+    when(mockSettlementService.spawnMissions(anyList())).thenReturn(Collections.emptySet());
+
+    jmsTemplate.convertAndSend(protoQueueName,
+        TestDataGenerator.defaultTradeAgreementProtoMessageData().build().toByteArray());
+    verify(mockSettlementService, timeout(10000)).spawnMissions(anyList());
+
+    // The lane acknowledges just after the service returns, so wait for the broker to see it
+    long deadline = System.currentTimeMillis() + 10000;
+    while (queuedMessages() > 0 && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+    }
+    assertEquals(0, queuedMessages());
+  }
+
+  /*
+   * Takes the next message off the proto queue on a connection of its own, so it doesn't go
+   * through the (possibly caching) connection factory the application uses.
+   */
+  private Message receive() throws JMSException {
+    Connection connection =
+        new ActiveMQConnectionFactory("vm://localhost?create=false").createConnection();
+    try {
+      connection.start();
+      Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+      return session.createConsumer(session.createQueue(protoQueueName)).receive(10000);
+    } finally {
+      connection.close();
+    }
+  }
+
+  /*
+   * Messages on the proto queue that haven't been acknowledged yet, including those dispatched to
+   * a consumer.
+   */
+  private long queuedMessages() throws Exception {
+    BrokerService broker = BrokerRegistry.getInstance().findFirst();
+    return broker.getDestination(new ActiveMQQueue(protoQueueName))
+        .getDestinationStatistics().getMessages().getCount();
+  }
+}
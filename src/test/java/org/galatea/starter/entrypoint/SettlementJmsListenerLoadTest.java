@@ -0,0 +1,141 @@
+package org.galatea.starter.entrypoint;
+
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.doAnswer;
+
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.distribution.HistogramSnapshot;
+import io.micrometer.core.instrument.distribution.ValueAtPercentile;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import lombok.extern.slf4j.Slf4j;
+import org.galatea.starter.ASpringTest;
+import org.galatea.starter.IntegrationTestCategory;
+import org.galatea.starter.domain.TradeAgreement;
+import org.galatea.starter.entrypoint.messagecontracts.ProtobufMessages.TradeAgreementProtoMessage;
+import org.galatea.starter.service.SettlementService;
+import org.galatea.starter.testutils.AgreementLoadGenerator;
+import org.galatea.starter.testutils.AgreementLoadGenerator.Format;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.SpyBean;
+import org.springframework.jms.core.JmsTemplate;
+import org.springframework.test.util.AopTestUtils;
+
+/**
+ * Pushes agreements through the embedded broker into SettlementJmsListener and the real settlement
+ * service, then reports end-to-end latency percentiles (queue send to missions saved) and sustained
+ * throughput.
+ *
+ * <p>Tune with system properties, e.g.
+ * {@code mvn verify -Dit.test=SettlementJmsListenerLoadTest -Dloadgen.messages=50000
+ * -Dloadgen.rate=2000 -Dloadgen.format=json}
+ *
+ * <ul>
+ * <li>loadgen.messages: how many synthetic agreements to send (default 1000)</li>
+ * <li>loadgen.rate: agreements per second, 0 for as fast as possible (default 0)</li>
+ * <li>loadgen.format: proto or json (default proto)</li>
+ * <li>loadgen.replay-file: file of TradeAgreementMessage JSON, one per line, to send instead of
+ * synthetic agreements</li>
+ * </ul>
+ */
+@Slf4j
+@Category(IntegrationTestCategory.class)
+@SpringBootTest
+public class SettlementJmsListenerLoadTest extends ASpringTest {
+
+  /*
+   * Each agreement's internal party is replaced with this prefix plus its index, so we can tell
+   * which send a saved agreement belongs to
+   */
+  private static final String SEQUENCE_PREFIX = "LOADGEN-";
+
+  private static final long COMPLETION_TIMEOUT_MINUTES = 10;
+
+  @Autowired
+  protected JmsTemplate jmsTemplate;
+
+  @SpyBean
+  private SettlementService settlementService;
+
+  @Value("${jms.agreement-queue-json}")
+  protected String jsonQueueName;
+
+  @Value("${jms.agreement-queue-proto}")
+  protected String protoQueueName;
+
+  @Test
+  public void testListenerUnderLoad() throws IOException, InterruptedException {
+    Format format = Format.valueOf(
+        System.getProperty("loadgen.format", "proto").toUpperCase(Locale.ROOT));
+    double rate = Double.parseDouble(System.getProperty("loadgen.rate", "0"));
+    String replayFile = System.getProperty("loadgen.replay-file");
+
+    List<TradeAgreementProtoMessage> source = replayFile == null
+        ? AgreementLoadGenerator.synthetic(Integer.getInteger("loadgen.messages", 1000), 42L)
+        : AgreementLoadGenerator.replay(Paths.get(replayFile));
+    List<TradeAgreementProtoMessage> agreements = IntStream.range(0, source.size())
+        .mapToObj(i -> source.get(i).toBuilder().setInternalParty(SEQUENCE_PREFIX + i).build())
+        .collect(Collectors.toList());
+
+    long[] sentAt = new long[agreements.size()];
+    CountDownLatch remaining = new CountDownLatch(agreements.size());
+    AtomicLong lastCompletion = new AtomicLong();
+    Timer latency = Timer.builder("loadgen.latency")
+        .publishPercentiles(0.5, 0.9, 0.99, 0.999)
+        .register(new SimpleMeterRegistry());
+
+    // Stub the spy itself rather than the transactional proxy around it
+    SettlementService spy = AopTestUtils.getUltimateTargetObject(settlementService);
+    doAnswer(invocation -> {
+      Object missionIds = invocation.callRealMethod();
+      long now = System.nanoTime();
+      List<TradeAgreement> saved = invocation.getArgument(0);
+      for (TradeAgreement agreement : saved) {
+        int seq = Integer.parseInt(
+            agreement.getInternalParty().substring(SEQUENCE_PREFIX.length()));
+        latency.record(now - sentAt[seq], TimeUnit.NANOSECONDS);
+        remaining.countDown();
+      }
+      lastCompletion.accumulateAndGet(now, Math::max);
+      return missionIds;
+    }).when(spy).spawnMissions(anyList());
+
+    String queue = format == Format.PROTO ? protoQueueName : jsonQueueName;
+    long publishNanos = new AgreementLoadGenerator(jmsTemplate)
+        .publish(queue, format, agreements, rate, sentAt);
+
+    assertTrue(remaining.getCount() + " agreements were not processed in time",
+        remaining.await(COMPLETION_TIMEOUT_MINUTES, TimeUnit.MINUTES));
+    report(format, rate, agreements.size(), publishNanos, lastCompletion.get() - sentAt[0],
+        latency.takeSnapshot());
+  }
+
+  private static void report(final Format format, final double rate, final int count,
+      final long publishNanos, final long totalNanos, final HistogramSnapshot latency) {
+    StringBuilder percentiles = new StringBuilder();
+    for (ValueAtPercentile value : latency.percentileValues()) {
+      percentiles.append(String.format(Locale.ROOT, " p%s=%.2fms", value.percentile() * 100,
+          value.value(TimeUnit.MILLISECONDS)));
+    }
+
+    log.info("Load test: {} {} agreements, target rate {}/s, published in {} ms", count, format,
+        rate > 0 ? rate : "max", TimeUnit.NANOSECONDS.toMillis(publishNanos));
+    log.info("Load test: sustained throughput {} agreements/s",
+        String.format(Locale.ROOT, "%.1f", count / (totalNanos / 1e9)));
+    log.info("Load test: end-to-end latency{} max={}ms", percentiles,
+        String.format(Locale.ROOT, "%.2f", latency.max(TimeUnit.MILLISECONDS)));
+  }
+}
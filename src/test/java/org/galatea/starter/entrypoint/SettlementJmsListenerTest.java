@@ -1,8 +1,11 @@
 package org.galatea.starter.entrypoint;
 
+import static org.junit.Assert.assertEquals;
 import static org.mockito.Mockito.timeout;
 import static org.mockito.Mockito.verify;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import java.io.IOException;
 import java.util.Collections;
 import java.util.List;
@@ -35,6 +38,9 @@ public class SettlementJmsListenerTest extends ASpringTest {
   @Autowired
   protected JmsTemplate jmsTemplate;
 
+  @Autowired
+  protected MeterRegistry meterRegistry;
+
   @MockBean
   private SettlementService mockSettlementService;
 
@@ -76,7 +82,7 @@ public class SettlementJmsListenerTest extends ASpringTest {
 
   @Test
   @DirtiesContext
-  public void testSettleOneAgreementProto() {
+  public void testSettleOneAgreementProto() throws InterruptedException {
     TradeAgreementProtoMessage message
         = TestDataGenerator.defaultTradeAgreementProtoMessageData().build();
     TradeAgreement agreement = TestDataGenerator.defaultTradeAgreementData().build();
@@ -85,8 +91,30 @@ public class SettlementJmsListenerTest extends ASpringTest {
     List<TradeAgreement> agreements = Collections.singletonList(agreement);
     log.info("Agreement objects that the service will expect {}", agreements);
 
+    String[] stages = {"parse", "translate", "save"};
+    long[] before = new long[stages.length];
+    for (int i = 0; i < stages.length; i++) {
+      before[i] = stageCount(stages[i]);
+    }
+
     jmsTemplate.convertAndSend(protoQueueName, message.toByteArray());
 
     verify(mockSettlementService, timeout(10000)).spawnMissions(agreements);
+
+    // Each stage of the proto flow should have been timed once. The save stage is only recorded
+    // after the service returns, so wait for it rather than racing the listener
+    for (int i = 0; i < stages.length; i++) {
+      long deadline = System.currentTimeMillis() + 10000;
+      while (stageCount(stages[i]) == before[i] && System.currentTimeMillis() < deadline) {
+        Thread.sleep(10);
+      }
+      assertEquals("Stage " + stages[i], before[i] + 1, stageCount(stages[i]));
+    }
+  }
+
+  private long stageCount(final String stage) {
+    Timer timer = meterRegistry.find(SettlementJmsListener.STAGE_TIMER)
+        .tags("format", "proto", "stage", stage).timer();
+    return timer == null ? 0 : timer.count();
   }
 }
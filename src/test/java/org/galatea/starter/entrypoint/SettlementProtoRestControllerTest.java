@@ -2,13 +2,19 @@ package org.galatea.starter.entrypoint;
 
 import static java.util.Collections.singletonList;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.BDDMockito.given;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 import com.google.common.collect.Sets;
+import java.io.ByteArrayInputStream;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Optional;
 import junitparams.JUnitParamsRunner;
 import lombok.RequiredArgsConstructor;
@@ -18,6 +24,7 @@ import org.galatea.starter.ProtoMessageTranslationConfig;
 import org.galatea.starter.domain.SettlementMission;
 import org.galatea.starter.domain.TradeAgreement;
 import org.galatea.starter.entrypoint.messagecontracts.ProtobufMessages.SettlementMissionProtoMessage;
+import org.galatea.starter.entrypoint.messagecontracts.ProtobufMessages.SettlementMissionProtoMessages;
 import org.galatea.starter.entrypoint.messagecontracts.ProtobufMessages.SettlementResponseProtoMessage;
 import org.galatea.starter.entrypoint.messagecontracts.ProtobufMessages.TradeAgreementProtoMessage;
 import org.galatea.starter.entrypoint.messagecontracts.ProtobufMessages.TradeAgreementProtoMessages;
@@ -30,6 +37,7 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.context.annotation.Import;
+import org.springframework.http.HttpHeaders;
 import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.test.web.servlet.MvcResult;
 
@@ -60,6 +68,7 @@ public class SettlementProtoRestControllerTest extends ASpringTest {
   private SettlementService mockSettlementService;
 
   private static final Long MISSION_ID_1 = 100L;
+  private static final Long MISSION_ID_2 = 101L;
 
   @Test
   public void testSettleAgreement() throws Exception {
@@ -116,4 +125,70 @@ public class SettlementProtoRestControllerTest extends ASpringTest {
             .accept(APPLICATION_X_PROTOBUF))
         .andExpect(status().is4xxClientError());
   }
+
+  @Test
+  public void testGetMissions() throws Exception {
+    List<SettlementMission> missions = Arrays.asList(
+        TestDataGenerator.defaultSettlementMissionData().id(MISSION_ID_1).build(),
+        TestDataGenerator.defaultSettlementMissionData().id(MISSION_ID_2).build());
+
+    given(this.mockSettlementService.findMissions(Arrays.asList(MISSION_ID_1, MISSION_ID_2)))
+        .willReturn(missions);
+
+    MvcResult result = this.mvc.perform(
+        get("/settlementEngine/missions?ids=" + MISSION_ID_1 + "," + MISSION_ID_2)
+            .accept(APPLICATION_X_PROTOBUF)).andExpect(status().isOk()).andReturn();
+
+    SettlementMissionProtoMessages messages = SettlementMissionProtoMessages
+        .parseFrom(result.getResponse().getContentAsByteArray());
+    assertEquals(2, messages.getMessageCount());
+    assertEquals(settlementMissionTranslator.translate(missions.get(0)), messages.getMessage(0));
+    assertEquals(settlementMissionTranslator.translate(missions.get(1)), messages.getMessage(1));
+  }
+
+  @Test
+  public void testGetMissionsNotModified() throws Exception {
+    List<SettlementMission> missions = Arrays.asList(
+        TestDataGenerator.defaultSettlementMissionData().id(MISSION_ID_1).build(),
+        TestDataGenerator.defaultSettlementMissionData().id(MISSION_ID_2).build());
+
+    given(this.mockSettlementService.findMissions(Arrays.asList(MISSION_ID_1, MISSION_ID_2)))
+        .willReturn(missions);
+
+    String etag = this.mvc.perform(
+        get("/settlementEngine/missions?ids=" + MISSION_ID_1 + "," + MISSION_ID_2)
+            .accept(APPLICATION_X_PROTOBUF)).andExpect(status().isOk()).andReturn()
+        .getResponse().getHeader(HttpHeaders.ETAG);
+    // Tagged as protobuf, since the JSON controller answers on the same URL
+    assertTrue(etag, etag.endsWith("-x-protobuf\""));
+
+    this.mvc.perform(
+        get("/settlementEngine/missions?ids=" + MISSION_ID_1 + "," + MISSION_ID_2)
+            .header(HttpHeaders.IF_NONE_MATCH, etag)
+            .accept(APPLICATION_X_PROTOBUF)).andExpect(status().isNotModified());
+  }
+
+  @Test
+  public void testGetMissionsDelimited() throws Exception {
+    List<SettlementMission> missions = Arrays.asList(
+        TestDataGenerator.defaultSettlementMissionData().id(MISSION_ID_1).build(),
+        TestDataGenerator.defaultSettlementMissionData().id(MISSION_ID_2).build());
+
+    given(this.mockSettlementService.findMissions(Arrays.asList(MISSION_ID_1, MISSION_ID_2)))
+        .willReturn(missions);
+
+    MvcResult started = this.mvc.perform(
+        get("/settlementEngine/missions?delimited=true&ids=" + MISSION_ID_1 + "," + MISSION_ID_2)
+            .accept(APPLICATION_X_PROTOBUF)).andExpect(request().asyncStarted()).andReturn();
+    MvcResult result = this.mvc.perform(asyncDispatch(started))
+        .andExpect(status().isOk()).andReturn();
+
+    ByteArrayInputStream body =
+        new ByteArrayInputStream(result.getResponse().getContentAsByteArray());
+    assertEquals(settlementMissionTranslator.translate(missions.get(0)),
+        SettlementMissionProtoMessage.parseDelimitedFrom(body));
+    assertEquals(settlementMissionTranslator.translate(missions.get(1)),
+        SettlementMissionProtoMessage.parseDelimitedFrom(body));
+    assertNull(SettlementMissionProtoMessage.parseDelimitedFrom(body));
+  }
 }
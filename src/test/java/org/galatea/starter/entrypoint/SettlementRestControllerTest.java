@@ -6,9 +6,14 @@ import static org.galatea.starter.MvcConfig.APPLICATION_EXCEL;
 import static org.galatea.starter.MvcConfig.TEXT_CSV;
 import static org.hamcrest.Matchers.hasXPath;
 import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.isEmptyString;
+import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.doNothing;
 import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import com.fasterxml.jackson.databind.JsonNode;
@@ -59,6 +64,7 @@ import org.springframework.context.annotation.Import;
 import org.springframework.core.io.ClassPathResource;
 import org.springframework.dao.DataAccessException;
 import org.springframework.dao.EmptyResultDataAccessException;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
@@ -66,6 +72,7 @@ import org.springframework.http.converter.xml.Jaxb2RootElementHttpMessageConvert
 import org.springframework.orm.ObjectOptimisticLockingFailureException;
 import org.springframework.test.web.servlet.setup.MockMvcBuilders;
 import org.springframework.web.accept.ContentNegotiationManager;
+import org.springframework.web.accept.HeaderContentNegotiationStrategy;
 import org.springframework.web.accept.ParameterContentNegotiationStrategy;
 
 @Slf4j
@@ -104,6 +111,9 @@ public class SettlementRestControllerTest
   @Autowired
   private SettlementRestController settlementRestController;
 
+  @Autowired
+  private ContentNegotiationManager contentNegotiationManager;
+
   private ObjectMapper objectMapper;
 
   private JacksonTester<TradeAgreementMessages> agreementJsonTester;
@@ -117,18 +127,6 @@ public class SettlementRestControllerTest
     objectMapper = new ObjectMapper();
     JacksonTester.initFields(this, objectMapper);
 
-    Map<String, MediaType> mediaTypes = new HashMap<>();
-    mediaTypes.put("json", MediaType.APPLICATION_JSON);
-    mediaTypes.put("xml", MediaType.APPLICATION_XML);
-    mediaTypes.put("csv", TEXT_CSV);
-    mediaTypes.put("xlsx", APPLICATION_EXCEL);
-
-    ParameterContentNegotiationStrategy parameterContentNegotiationStrategy =
-        new ParameterContentNegotiationStrategy(mediaTypes);
-
-    ContentNegotiationManager manager =
-        new ContentNegotiationManager(parameterContentNegotiationStrategy);
-
     RestAssuredMockMvc.standaloneSetup(
         MockMvcBuilders.standaloneSetup(settlementRestController).
             addPlaceholderValue("mvc.settleMissionPath", settleMissionPath).
@@ -136,7 +134,7 @@ public class SettlementRestControllerTest
             addPlaceholderValue("mvc.updateMissionPath", updateMissionPath).
             addPlaceholderValue("mvc.getMissionsPath", getMissionsPath).
             addPlaceholderValue("mvc.getMissionPath", getMissionPath).
-            setContentNegotiationManager(manager).
+            setContentNegotiationManager(contentNegotiationManager).
             setMessageConverters(new MappingJackson2HttpMessageConverter(),
                 new Jaxb2RootElementHttpMessageConverter(),
                 new SettlementMissionCsvConverter(),
@@ -268,6 +266,153 @@ public class SettlementRestControllerTest
         .statusCode(HttpStatus.OK.value());
   }
 
+  @Test
+  public void testGetMissionNotModified() {
+    SettlementMission mission =
+        TestDataGenerator.defaultSettlementMissionData().version(3L).build();
+
+    BDDMockito.given(this.mockSettlementService.findMission(MISSION_ID_1))
+        .willReturn(Optional.of(mission));
+
+    // The first fetch hands out the ETag...
+    String etag = given()
+        .log().ifValidationFails()
+        .accept(MediaType.APPLICATION_JSON_VALUE)
+        .when()
+        .get("/settlementEngine/mission/" + MISSION_ID_1 + "?requestId=1234")
+        .then()
+        .log().ifValidationFails()
+        .statusCode(HttpStatus.OK.value())
+        .header(HttpHeaders.ETAG, "\"100-3-json\"")
+        .header(HttpHeaders.VARY, HttpHeaders.ACCEPT)
+        .extract().header(HttpHeaders.ETAG);
+
+    // ...and fetching again with it gets nothing back while the mission is unchanged
+    given()
+        .log().ifValidationFails()
+        .accept(MediaType.APPLICATION_JSON_VALUE)
+        .header(HttpHeaders.IF_NONE_MATCH, etag)
+        .when()
+        .get("/settlementEngine/mission/" + MISSION_ID_1 + "?requestId=1234")
+        .then()
+        .log().ifValidationFails()
+        .statusCode(HttpStatus.NOT_MODIFIED.value())
+        .body(isEmptyString());
+
+    // Once it's changed the new version comes back
+    mission.setVersion(4L);
+    given()
+        .log().ifValidationFails()
+        .accept(MediaType.APPLICATION_JSON_VALUE)
+        .header(HttpHeaders.IF_NONE_MATCH, etag)
+        .when()
+        .get("/settlementEngine/mission/" + MISSION_ID_1 + "?requestId=1234")
+        .then()
+        .log().ifValidationFails()
+        .statusCode(HttpStatus.OK.value())
+        .header(HttpHeaders.ETAG, "\"100-4-json\"");
+  }
+
+  @Test
+  public void testGetMissionsNotModified() {
+    SettlementMission mission1 = TestDataGenerator.defaultSettlementMissionData()
+        .id(1L).build();
+    SettlementMission mission2 = TestDataGenerator.defaultSettlementMissionData()
+        .id(2L).build();
+
+    BDDMockito.given(this.mockSettlementService.findMissions(Arrays.asList(1L, 2L)))
+        .willReturn(Arrays.asList(mission1, mission2));
+
+    String etag = given()
+        .log().ifValidationFails()
+        .when()
+        .get("/settlementEngine/missions?ids=1,2&format=json&requestId=1234")
+        .then()
+        .log().ifValidationFails()
+        .statusCode(HttpStatus.OK.value())
+        .extract().header(HttpHeaders.ETAG);
+
+    given()
+        .log().ifValidationFails()
+        .header(HttpHeaders.IF_NONE_MATCH, etag)
+        .when()
+        .get("/settlementEngine/missions?ids=1,2&format=json&requestId=1234")
+        .then()
+        .log().ifValidationFails()
+        .statusCode(HttpStatus.NOT_MODIFIED.value());
+
+    // A change to any one of the missions changes the combined ETag
+    mission2.setVersion(1L);
+    given()
+        .log().ifValidationFails()
+        .header(HttpHeaders.IF_NONE_MATCH, etag)
+        .when()
+        .get("/settlementEngine/missions?ids=1,2&format=json&requestId=1234")
+        .then()
+        .log().ifValidationFails()
+        .statusCode(HttpStatus.OK.value());
+  }
+
+  @Test
+  public void testGetMissionsETagPerFormat() {
+    SettlementMission mission1 = TestDataGenerator.defaultSettlementMissionData()
+        .id(1L).build();
+
+    BDDMockito.given(this.mockSettlementService.findMissions(singletonList(1L)))
+        .willReturn(singletonList(mission1));
+
+    String jsonETag = given()
+        .log().ifValidationFails()
+        .accept(MediaType.APPLICATION_JSON_VALUE)
+        .when()
+        .get("/settlementEngine/missions?ids=1&requestId=1234")
+        .then()
+        .log().ifValidationFails()
+        .statusCode(HttpStatus.OK.value())
+        .header(HttpHeaders.VARY, HttpHeaders.ACCEPT)
+        .extract().header(HttpHeaders.ETAG);
+
+    // The same URL in another format is a different representation, so the JSON tag doesn't
+    // stand for it
+    String csvETag = given()
+        .log().ifValidationFails()
+        .accept(TEXT_CSV.toString())
+        .header(HttpHeaders.IF_NONE_MATCH, jsonETag)
+        .when()
+        .get("/settlementEngine/missions?ids=1&requestId=1234")
+        .then()
+        .log().ifValidationFails()
+        .statusCode(HttpStatus.OK.value())
+        .extract().header(HttpHeaders.ETAG);
+    assertNotEquals(jsonETag, csvETag);
+  }
+
+  @Test
+  public void testUpdateMissionIfMatchFormatTag() {
+    SettlementMission settlementMission = TestDataGenerator.defaultSettlementMissionData().build();
+    settlementMission.setId(MISSION_ID_1);
+
+    when(mockSettlementService.findMission(MISSION_ID_1))
+        .thenReturn(Optional.of(settlementMission));
+    when(mockSettlementService.missionExists(MISSION_ID_1))
+        .thenReturn(true);
+    when(mockSettlementService.updateMission(MISSION_ID_1, settlementMission, 0L))
+        .thenReturn(Optional.of(settlementMission));
+
+    // The tag from fetching the mission as XML is good for updating it too
+    given()
+        .log().ifValidationFails()
+        .contentType(MediaType.APPLICATION_JSON_VALUE)
+        .header(HttpHeaders.IF_MATCH, "\"" + MISSION_ID_1 + "-0-xml\"")
+        .body(objectMapper.convertValue(settlementMission, JsonNode.class).toString())
+        .accept(MediaType.APPLICATION_JSON_VALUE)
+        .when()
+        .put("/settlementEngine/mission/" + MISSION_ID_1 + "?requestId=1234")
+        .then()
+        .log().ifValidationFails()
+        .statusCode(HttpStatus.OK.value());
+  }
+
   @Test
   public void testGetMissionNotFound() {
     BDDMockito.given(this.mockSettlementService.findMission(MISSION_ID_1))
@@ -434,7 +579,7 @@ public class SettlementRestControllerTest
 
     when(mockSettlementService.missionExists(MISSION_ID_1))
         .thenReturn(true);
-    when(mockSettlementService.updateMission(MISSION_ID_1, settlementMission))
+    when(mockSettlementService.updateMission(MISSION_ID_1, settlementMission, null))
         .thenReturn(Optional.of(settlementMission));
 
     given()
@@ -476,7 +621,7 @@ public class SettlementRestControllerTest
     when(mockSettlementService.missionExists(MISSION_ID_1))
         .thenReturn(true);
 
-    when(mockSettlementService.updateMission(MISSION_ID_1, settlementMission)).thenThrow(
+    when(mockSettlementService.updateMission(MISSION_ID_1, settlementMission, null)).thenThrow(
         ObjectOptimisticLockingFailureException.class);
 
     given()
@@ -491,6 +636,82 @@ public class SettlementRestControllerTest
         .statusCode(HttpStatus.CONFLICT.value());
   }
 
+  @Test
+  public void testUpdateMissionIfMatch() {
+    SettlementMission settlementMission = TestDataGenerator.defaultSettlementMissionData().build();
+    settlementMission.setId(MISSION_ID_1);
+
+    when(mockSettlementService.findMission(MISSION_ID_1))
+        .thenReturn(Optional.of(settlementMission));
+    when(mockSettlementService.missionExists(MISSION_ID_1))
+        .thenReturn(true);
+    when(mockSettlementService.updateMission(MISSION_ID_1, settlementMission, 0L))
+        .thenReturn(Optional.of(settlementMission));
+
+    given()
+        .log().ifValidationFails()
+        .contentType(MediaType.APPLICATION_JSON_VALUE)
+        .header(HttpHeaders.IF_MATCH, "\"" + MISSION_ID_1 + "-0\"")
+        .body(objectMapper.convertValue(settlementMission, JsonNode.class).toString())
+        .accept(MediaType.APPLICATION_JSON_VALUE)
+        .when()
+        .put("/settlementEngine/mission/" + MISSION_ID_1 + "?requestId=1234")
+        .then()
+        .log().ifValidationFails()
+        .statusCode(HttpStatus.OK.value());
+  }
+
+  @Test
+  public void testUpdateMissionIfMatchFailed() {
+    SettlementMission settlementMission = TestDataGenerator.defaultSettlementMissionData().build();
+    settlementMission.setId(MISSION_ID_1);
+    SettlementMission current = TestDataGenerator.defaultSettlementMissionData()
+        .id(MISSION_ID_1).version(1L).build();
+
+    when(mockSettlementService.findMission(MISSION_ID_1))
+        .thenReturn(Optional.of(current));
+
+    given()
+        .log().ifValidationFails()
+        .contentType(MediaType.APPLICATION_JSON_VALUE)
+        .header(HttpHeaders.IF_MATCH, "\"" + MISSION_ID_1 + "-0\"")
+        .body(objectMapper.convertValue(settlementMission, JsonNode.class).toString())
+        .accept(MediaType.APPLICATION_JSON_VALUE)
+        .when()
+        .put("/settlementEngine/mission/" + MISSION_ID_1 + "?requestId=1234")
+        .then()
+        .log().ifValidationFails()
+        .statusCode(HttpStatus.PRECONDITION_FAILED.value());
+
+    verify(mockSettlementService, never()).updateMission(any(), any(), any());
+  }
+
+  @Test
+  public void testUpdateMissionIfMatchChangedDuringUpdate() {
+    SettlementMission settlementMission = TestDataGenerator.defaultSettlementMissionData().build();
+    settlementMission.setId(MISSION_ID_1);
+
+    when(mockSettlementService.findMission(MISSION_ID_1))
+        .thenReturn(Optional.of(settlementMission));
+    when(mockSettlementService.missionExists(MISSION_ID_1))
+        .thenReturn(true);
+    // Someone else's update got in between the If-Match check and the save
+    when(mockSettlementService.updateMission(MISSION_ID_1, settlementMission, 0L)).thenThrow(
+        ObjectOptimisticLockingFailureException.class);
+
+    given()
+        .log().ifValidationFails()
+        .contentType(MediaType.APPLICATION_JSON_VALUE)
+        .header(HttpHeaders.IF_MATCH, "\"" + MISSION_ID_1 + "-0\"")
+        .body(objectMapper.convertValue(settlementMission, JsonNode.class).toString())
+        .accept(MediaType.APPLICATION_JSON_VALUE)
+        .when()
+        .put("/settlementEngine/mission/" + MISSION_ID_1 + "?requestId=1234")
+        .then()
+        .log().ifValidationFails()
+        .statusCode(HttpStatus.PRECONDITION_FAILED.value());
+  }
+
   @Test
   public void testDeleteMission() {
     doNothing().when(mockSettlementService).deleteMission(MISSION_ID_1);
@@ -532,5 +753,21 @@ public class SettlementRestControllerTest
       propertyPlaceholderConfigurer.setLocation(new ClassPathResource("application.properties"));
       return propertyPlaceholderConfigurer;
     }
+
+    /*
+     * The controller works out the response format for its ETags, so it has to use the same
+     * manager as MockMvc. Like MvcConfig's, it takes the format parameter over the Accept header.
+     */
+    @Bean
+    ContentNegotiationManager contentNegotiationManager() {
+      Map<String, MediaType> mediaTypes = new HashMap<>();
+      mediaTypes.put("json", MediaType.APPLICATION_JSON);
+      mediaTypes.put("xml", MediaType.APPLICATION_XML);
+      mediaTypes.put("csv", TEXT_CSV);
+      mediaTypes.put("xlsx", APPLICATION_EXCEL);
+
+      return new ContentNegotiationManager(new ParameterContentNegotiationStrategy(mediaTypes),
+          new HeaderContentNegotiationStrategy());
+    }
   }
 }
@@ -0,0 +1,68 @@
+package org.galatea.starter.service;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.util.function.BiConsumer;
+import javax.jms.Message;
+import org.galatea.starter.domain.TradeAgreement;
+import org.galatea.starter.testutils.TestDataGenerator;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class AgreementDispatcherTest {
+
+  private BiConsumer<Message, Exception> mockFailedMessageConsumer;
+
+  private AgreementDispatcher dispatcher;
+
+  @Before
+  @SuppressWarnings("unchecked")
+  public void setup() {
+    mockFailedMessageConsumer = mock(BiConsumer.class);
+    dispatcher = new AgreementDispatcher(new SimpleMeterRegistry(), mockFailedMessageConsumer, 2,
+        10, "instrument", "1");
+  }
+
+  @After
+  public void shutdown() throws InterruptedException {
+    dispatcher.destroy();
+  }
+
+  @Test
+  public void testAcknowledgedOnceLaneIsDone() throws Exception {
+    Message message = mock(Message.class);
+    TradeAgreement agreement = TestDataGenerator.defaultTradeAgreementData().build();
+
+    dispatcher.dispatch(agreement, message, () -> { });
+
+    verify(message, timeout(5000)).acknowledge();
+    verify(mockFailedMessageConsumer, never()).accept(any(), any());
+  }
+
+  @Test
+  public void testLaneFailureGoesToFailedMessageConsumer() throws Exception {
+    Message message = mock(Message.class);
+    TradeAgreement agreement = TestDataGenerator.defaultTradeAgreementData().build();
+    IllegalStateException failure = new IllegalStateException("db down");
+
+    dispatcher.dispatch(agreement, message, () -> {
+      throw failure;
+    });
+
+    verify(mockFailedMessageConsumer, timeout(5000)).accept(eq(message), eq(failure));
+    verify(message, timeout(5000)).acknowledge();
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testLanesNeedSingleConsumer() {
+    new AgreementDispatcher(new SimpleMeterRegistry(), mockFailedMessageConsumer, 2, 10,
+        "instrument", "1-5");
+  }
+}
@@ -0,0 +1,95 @@
+package org.galatea.starter.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import com.google.common.collect.Sets;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+import org.galatea.starter.domain.TradeAgreement;
+import org.galatea.starter.entrypoint.exception.PartialUploadException;
+import org.galatea.starter.service.AgreementUploadService.UploadResult;
+import org.galatea.starter.testutils.TestDataGenerator;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+public class AgreementUploadServiceTest {
+
+  @Test
+  public void testSpawnMissionsInChunks() throws Exception {
+    SettlementService settlementService = mock(SettlementService.class);
+    given(settlementService.spawnMissions(anyList())).willAnswer(invocation -> {
+      // One mission per agreement
+      List<TradeAgreement> agreements = invocation.getArgument(0);
+      return LongStream.range(0, agreements.size()).boxed().collect(Collectors.toSet());
+    });
+    AgreementUploadService uploadService = new AgreementUploadService(settlementService, 2);
+
+    UploadResult result = uploadService.spawnMissions(agreements -> {
+      for (int i = 0; i < 5; i++) {
+        agreements.accept(TestDataGenerator.defaultTradeAgreementData().build());
+      }
+    });
+
+    assertEquals(5, result.getAgreements());
+    assertEquals(5, result.getMissions());
+
+    // Two full chunks and what's left over
+    @SuppressWarnings("unchecked")
+    ArgumentCaptor<List<TradeAgreement>> chunks = ArgumentCaptor.forClass(List.class);
+    verify(settlementService, times(3)).spawnMissions(chunks.capture());
+    assertEquals(2, chunks.getAllValues().get(0).size());
+    assertEquals(2, chunks.getAllValues().get(1).size());
+    assertEquals(1, chunks.getAllValues().get(2).size());
+  }
+
+  @Test
+  public void testFailedChunkReportsWhatWasSaved() throws Exception {
+    SettlementService settlementService = mock(SettlementService.class);
+    given(settlementService.spawnMissions(anyList()))
+        .willReturn(Sets.newHashSet(1L, 2L))
+        .willThrow(new IllegalStateException("db down"));
+    AgreementUploadService uploadService = new AgreementUploadService(settlementService, 2);
+
+    try {
+      uploadService.spawnMissions(agreements -> {
+        for (int i = 0; i < 5; i++) {
+          agreements.accept(TestDataGenerator.defaultTradeAgreementData().build());
+        }
+      });
+      fail("Expected the upload to fail");
+    } catch (PartialUploadException e) {
+      // The first chunk went in before the second failed
+      assertEquals(2, e.getAgreementsSaved());
+      assertEquals(2, e.getMissionsSpawned());
+    }
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testFailureBeforeAnythingSavedIsRethrown() throws Exception {
+    SettlementService settlementService = mock(SettlementService.class);
+    given(settlementService.spawnMissions(anyList()))
+        .willThrow(new IllegalStateException("db down"));
+    AgreementUploadService uploadService = new AgreementUploadService(settlementService, 2);
+
+    uploadService.spawnMissions(agreements ->
+        agreements.accept(TestDataGenerator.defaultTradeAgreementData().build()));
+  }
+
+  @Test
+  public void testSpawnMissionsEmptyUpload() throws Exception {
+    SettlementService settlementService = mock(SettlementService.class);
+    AgreementUploadService uploadService = new AgreementUploadService(settlementService, 2);
+
+    UploadResult result = uploadService.spawnMissions(agreements -> { });
+
+    assertEquals(0, result.getAgreements());
+    verify(settlementService, times(0)).spawnMissions(anyList());
+  }
+}
@@ -0,0 +1,90 @@
+package org.galatea.starter.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.mock;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+import org.galatea.starter.domain.IexLastTradedPrice;
+import org.junit.After;
+import org.junit.Test;
+
+public class IexServiceTest {
+
+  private IexService service;
+
+  @After
+  public void tearDown() {
+    if (service != null) {
+      service.destroy();
+    }
+  }
+
+  @Test
+  public void testChunkBySymbolCount() {
+    List<String> symbols = Arrays.asList("A", "B", "C", "D", "E");
+
+    assertEquals(Arrays.asList(Arrays.asList("A", "B"), Arrays.asList("C", "D"),
+        Collections.singletonList("E")), IexService.chunk(symbols, 2, 1000));
+  }
+
+  @Test
+  public void testChunkByLength() {
+    // Each separator counts as an encoded comma, 3 characters
+    List<String> symbols = Arrays.asList("AAPL", "MSFT", "FB", "GOOGL");
+
+    assertEquals(Arrays.asList(Arrays.asList("AAPL", "MSFT"), Arrays.asList("FB", "GOOGL")),
+        IexService.chunk(symbols, 100, 11));
+  }
+
+  @Test
+  public void testChunkSymbolTooLong() {
+    List<String> symbols = Arrays.asList("A", "BRK.B-LONGER", "C");
+
+    assertEquals(Arrays.asList(Collections.singletonList("A"),
+        Collections.singletonList("BRK.B-LONGER"), Collections.singletonList("C")),
+        IexService.chunk(symbols, 100, 5));
+  }
+
+  @Test
+  public void testMergedInOrder() {
+    IexClient client = mock(IexClient.class);
+    given(client.getLastTradedPriceForSymbols(any(), eq("A,B"))).willAnswer(invocation -> {
+      // The first chunk finishes last
+      Thread.sleep(100);
+      return Arrays.asList(price("A"), price("B"));
+    });
+    given(client.getLastTradedPriceForSymbols(any(), eq("C,D")))
+        .willReturn(Arrays.asList(price("C"), price("D")));
+    given(client.getLastTradedPriceForSymbols(any(), eq("E")))
+        .willReturn(Collections.singletonList(price("E")));
+    service = new IexService(client, 2, 2000, 2, 1);
+
+    List<IexLastTradedPrice> prices =
+        service.getLastTradedPriceForSymbols(Arrays.asList("A", "B", "C", "D", "E"));
+
+    assertEquals(Arrays.asList("A", "B", "C", "D", "E"),
+        prices.stream().map(IexLastTradedPrice::getSymbol).collect(Collectors.toList()));
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testChunkFailureRethrown() {
+    IexClient client = mock(IexClient.class);
+    given(client.getLastTradedPriceForSymbols(any(), eq("A,B")))
+        .willReturn(Arrays.asList(price("A"), price("B")));
+    given(client.getLastTradedPriceForSymbols(any(), eq("C")))
+        .willThrow(new IllegalStateException("IEX is down"));
+    service = new IexService(client, 2, 2000, 2, 1);
+
+    service.getLastTradedPriceForSymbols(Arrays.asList("A", "B", "C"));
+  }
+
+  private static IexLastTradedPrice price(final String symbol) {
+    return IexLastTradedPrice.builder().symbol(symbol).build();
+  }
+}
@@ -0,0 +1,147 @@
+package org.galatea.starter.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.BDDMockito.then;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.BDDMockito.willThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import javax.jms.BytesMessage;
+import javax.jms.Session;
+import javax.jms.Topic;
+import org.apache.activemq.command.ActiveMQTopic;
+import org.galatea.starter.domain.MissionEvent;
+import org.galatea.starter.domain.MissionEventType;
+import org.galatea.starter.domain.rpsy.IMissionEventRpsy;
+import org.galatea.starter.entrypoint.messagecontracts.ProtobufMessages.SettlementMissionProtoMessage;
+import org.galatea.starter.utils.jms.JmsRequestIds;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.data.domain.Pageable;
+import org.springframework.jms.UncategorizedJmsException;
+import org.springframework.jms.core.JmsTemplate;
+import org.springframework.jms.core.MessageCreator;
+import org.springframework.transaction.PlatformTransactionManager;
+
+// Plain mocks rather than a Spring context, where the scheduled publisher would also be polling
+public class MissionEventPublisherTest {
+
+  private IMissionEventRpsy mockEventRpsy;
+
+  private JmsTemplate mockJmsTemplate;
+
+  private MeterRegistry meterRegistry;
+
+  private final Topic topic = new ActiveMQTopic("test.mission.events");
+
+  private MissionEventPublisher publisher;
+
+  @Before
+  public void setup() {
+    mockEventRpsy = mock(IMissionEventRpsy.class);
+    mockJmsTemplate = mock(JmsTemplate.class);
+    meterRegistry = new SimpleMeterRegistry();
+    publisher = new MissionEventPublisher(mockEventRpsy, mockJmsTemplate, topic,
+        mock(PlatformTransactionManager.class), meterRegistry, 10);
+  }
+
+  @Test
+  public void testPublishGroupsConsecutiveEventsByType() {
+    List<MissionEvent> events = Arrays.asList(
+        event(1L, MissionEventType.CREATED),
+        event(2L, MissionEventType.CREATED),
+        event(3L, MissionEventType.DELETED));
+    given(mockEventRpsy.findPendingForUpdate(any(Pageable.class))).willReturn(events);
+
+    publisher.publishPendingEvents();
+
+    // Two CREATED events in one message, then the DELETED event in a second message
+    verify(mockJmsTemplate, times(2)).send(eq(topic), any(MessageCreator.class));
+    verify(mockEventRpsy).deleteByIdIn(Arrays.asList(1L, 2L, 3L));
+  }
+
+  @Test
+  public void testPublishCarriesRequestIds() throws Exception {
+    MissionEvent first = event(1L, MissionEventType.CREATED);
+    first.setInternalRequestId("101");
+    first.setExternalRequestId("abc");
+    MissionEvent second = event(2L, MissionEventType.CREATED);
+    second.setInternalRequestId("102");
+    MissionEvent third = event(3L, MissionEventType.CREATED);
+    third.setInternalRequestId("101");
+    given(mockEventRpsy.findPendingForUpdate(any(Pageable.class)))
+        .willReturn(Arrays.asList(first, second, third));
+
+    publisher.publishPendingEvents();
+
+    ArgumentCaptor<MessageCreator> creator = ArgumentCaptor.forClass(MessageCreator.class);
+    verify(mockJmsTemplate).send(eq(topic), creator.capture());
+    Session session = mock(Session.class);
+    BytesMessage message = mock(BytesMessage.class);
+    given(session.createBytesMessage()).willReturn(message);
+    creator.getValue().createMessage(session);
+
+    then(message).should()
+        .setStringProperty(JmsRequestIds.INTERNAL_REQUEST_ID_PROPERTY, "101,102");
+    then(message).should().setStringProperty(JmsRequestIds.EXTERNAL_REQUEST_ID_PROPERTY, "abc");
+  }
+
+  @Test
+  public void testPublishNothingPending() {
+    given(mockEventRpsy.findPendingForUpdate(any(Pageable.class)))
+        .willReturn(Collections.emptyList());
+
+    publisher.publishPendingEvents();
+
+    verify(mockJmsTemplate, never()).send(any(Topic.class), any(MessageCreator.class));
+    verify(mockEventRpsy, never()).deleteByIdIn(anyCollection());
+  }
+
+  @Test
+  public void testEventsKeptWhenSendFails() {
+    given(mockEventRpsy.findPendingForUpdate(any(Pageable.class)))
+        .willReturn(Collections.singletonList(event(1L, MissionEventType.UPDATED)));
+    willThrow(new UncategorizedJmsException("broker down"))
+        .given(mockJmsTemplate).send(eq(topic), any(MessageCreator.class));
+
+    publisher.publishPendingEvents();
+
+    verify(mockEventRpsy, never()).deleteByIdIn(anyCollection());
+  }
+
+  @Test
+  public void testUnreadableEventSetAside() {
+    MissionEvent unreadable = event(2L, MissionEventType.CREATED);
+    unreadable.setPayload(new byte[] {(byte) 0xFF});
+    given(mockEventRpsy.findPendingForUpdate(any(Pageable.class)))
+        .willReturn(Arrays.asList(event(1L, MissionEventType.CREATED), unreadable,
+            event(3L, MissionEventType.CREATED)));
+
+    publisher.publishPendingEvents();
+
+    // The rest of the batch still goes out, and the bad row is kept but marked
+    verify(mockJmsTemplate).send(eq(topic), any(MessageCreator.class));
+    verify(mockEventRpsy).deleteByIdIn(Arrays.asList(1L, 3L));
+    verify(mockEventRpsy).markPoisoned(Collections.singletonList(2L));
+    assertEquals(1.0, meterRegistry.counter(MissionEventPublisher.POISONED_COUNTER).count(), 0);
+  }
+
+  private static MissionEvent event(final Long id, final MissionEventType type) {
+    return MissionEvent.builder().id(id).eventType(type).missionId(100L + id)
+        .payload(SettlementMissionProtoMessage.newBuilder().setId(100L + id).build().toByteArray())
+        .createdAt(Instant.now()).build();
+  }
+}
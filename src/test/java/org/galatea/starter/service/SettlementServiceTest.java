@@ -6,6 +6,7 @@ import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 import static org.mockito.BDDMockito.given;
 import static org.mockito.Mockito.doNothing;
+import static org.mockito.Mockito.verify;
 
 import java.util.Arrays;
 import java.util.Collections;
@@ -13,6 +14,7 @@ import java.util.List;
 import java.util.Optional;
 import java.util.Set;
 import org.galatea.starter.ASpringTest;
+import org.galatea.starter.domain.MissionEventType;
 import org.galatea.starter.domain.SettlementMission;
 import org.galatea.starter.domain.TradeAgreement;
 import org.galatea.starter.domain.rpsy.ISettlementMissionRpsy;
@@ -31,11 +33,15 @@ public class SettlementServiceTest extends ASpringTest {
   @MockBean
   private IAgreementTransformer mockAgreementTransformer;
 
+  @MockBean
+  private MissionEventOutbox mockMissionEventOutbox;
+
   private SettlementService service;
 
   @Before
   public void setup() {
-    service = new SettlementService(mockSettlementMissionRpsy, mockAgreementTransformer);
+    service = new SettlementService(mockSettlementMissionRpsy, mockAgreementTransformer,
+        mockMissionEventOutbox);
   }
 
   @Test
@@ -112,6 +118,8 @@ public class SettlementServiceTest extends ASpringTest {
 
     Set<Long> missionIds = service.spawnMissions(Collections.singletonList(testTradeAgreement));
     assertEquals(1, missionIds.size());
+    verify(mockMissionEventOutbox).record(MissionEventType.CREATED,
+        Collections.singletonList(testSettlementMission));
   }
 
   @Test
@@ -124,10 +132,32 @@ public class SettlementServiceTest extends ASpringTest {
         .willReturn(testSettlementMission);
 
     SettlementService service =
-        new SettlementService(this.mockSettlementMissionRpsy, this.mockAgreementTransformer);
+        new SettlementService(this.mockSettlementMissionRpsy, this.mockAgreementTransformer,
+            this.mockMissionEventOutbox);
 
-    Optional<SettlementMission> settlementMissionOptional = service.updateMission(35L, testSettlementMission);
+    Optional<SettlementMission> settlementMissionOptional = service.updateMission(35L, testSettlementMission,
+        null);
     assertEquals((Long) 35L, settlementMissionOptional.get().getId());
+    verify(mockMissionEventOutbox).record(MissionEventType.UPDATED,
+        Collections.singletonList(testSettlementMission));
+  }
+
+  @Test
+  public void testUpdateMissionExpectedVersion() {
+
+    SettlementMission testSettlementMission = SettlementMission.builder().depot("DTC")
+        .externalParty("EXT-1").instrument("IBM").direction("REC").qty(100d).version(0L).build();
+
+    given(this.mockSettlementMissionRpsy.save(testSettlementMission))
+        .willReturn(testSettlementMission);
+
+    SettlementService service =
+        new SettlementService(this.mockSettlementMissionRpsy, this.mockAgreementTransformer,
+            this.mockMissionEventOutbox);
+
+    service.updateMission(35L, testSettlementMission, 3L);
+    // The save checks against the expected version rather than whatever the caller sent
+    assertEquals((Long) 3L, testSettlementMission.getVersion());
   }
 
   @Test
@@ -137,7 +167,8 @@ public class SettlementServiceTest extends ASpringTest {
         .willReturn(true);
 
     SettlementService service =
-        new SettlementService(this.mockSettlementMissionRpsy, this.mockAgreementTransformer);
+        new SettlementService(this.mockSettlementMissionRpsy, this.mockAgreementTransformer,
+            this.mockMissionEventOutbox);
 
     boolean missionExists = service.missionExists(35L);
     assertTrue(missionExists);
@@ -149,9 +180,11 @@ public class SettlementServiceTest extends ASpringTest {
     doNothing().when(this.mockSettlementMissionRpsy).deleteById(35L);
 
     SettlementService service =
-        new SettlementService(this.mockSettlementMissionRpsy, this.mockAgreementTransformer);
+        new SettlementService(this.mockSettlementMissionRpsy, this.mockAgreementTransformer,
+            this.mockMissionEventOutbox);
 
     service.deleteMission(35L);
+    verify(mockMissionEventOutbox).recordDeleted(35L);
     boolean missionExists = service.missionExists(35L);
     assertFalse(missionExists);
   }
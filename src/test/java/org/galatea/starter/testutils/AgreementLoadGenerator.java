@@ -0,0 +1,151 @@
+package org.galatea.starter.testutils;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.galatea.starter.entrypoint.messagecontracts.ProtobufMessages.TradeAgreementProtoMessage;
+import org.galatea.starter.entrypoint.messagecontracts.TradeAgreementMessage;
+import org.springframework.jms.core.JmsTemplate;
+
+/**
+ * Publishes trade agreements onto the agreement queues, either as fast as possible or at a target
+ * rate, so we can see how the listeners hold up under load.
+ *
+ * <p>Agreements are held as TradeAgreementProtoMessages and sent either as protobuf bytes or as the
+ * equivalent TradeAgreementMessage JSON, matching what the two listeners expect. They can be
+ * generated (see TestDataGenerator) or replayed from a file of captured agreements.
+ */
+@RequiredArgsConstructor
+@Slf4j
+public class AgreementLoadGenerator {
+
+  /**
+   * The wire format to send agreements in.
+   */
+  public enum Format {
+    JSON, PROTO
+  }
+
+  private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+  @NonNull
+  private final JmsTemplate jmsTemplate;
+
+  /**
+   * Generate the given number of agreements. The same seed always gives the same agreements.
+   */
+  public static List<TradeAgreementProtoMessage> synthetic(final int count, final long seed) {
+    Random random = new Random(seed);
+    return IntStream.range(0, count)
+        .mapToObj(i -> TestDataGenerator.randomTradeAgreementProtoMessageData(random).build())
+        .collect(Collectors.toList());
+  }
+
+  /**
+   * Read agreements to replay from a file holding one TradeAgreementMessage JSON object per line.
+   * Blank lines are skipped.
+   */
+  public static List<TradeAgreementProtoMessage> replay(final Path file) throws IOException {
+    try (Stream<String> lines = Files.lines(file)) {
+      return lines.filter(line -> !line.trim().isEmpty())
+          .map(AgreementLoadGenerator::readJson)
+          .map(AgreementLoadGenerator::toProto)
+          .collect(Collectors.toList());
+    }
+  }
+
+  /**
+   * Send the agreements to the queue in order.
+   *
+   * <p>The time each agreement was due to be sent is written to sentAtNanos (System.nanoTime), so
+   * the caller can work out end-to-end latency. When sending at a target rate we use the scheduled
+   * time rather than the time the send actually happened, so that if the producer falls behind the
+   * delay counts towards the measured latency instead of being hidden by it.
+   *
+   * @param ratePerSecond how many agreements to send per second, or 0 to send as fast as possible
+   * @param sentAtNanos filled in with the send time of each agreement, must be at least as long as
+   *     agreements
+   * @return how long publishing took, in nanoseconds
+   */
+  public long publish(final String queue, final Format format,
+      final List<TradeAgreementProtoMessage> agreements, final double ratePerSecond,
+      final long[] sentAtNanos) {
+    long intervalNanos = ratePerSecond > 0 ? (long) (TimeUnit.SECONDS.toNanos(1) / ratePerSecond)
+        : 0;
+    long start = System.nanoTime();
+
+    for (int i = 0; i < agreements.size(); i++) {
+      long sendAt = start + i * intervalNanos;
+      long now = System.nanoTime();
+      if (sendAt > now) {
+        LockSupport.parkNanos(sendAt - now);
+      }
+      sentAtNanos[i] = intervalNanos > 0 ? sendAt : System.nanoTime();
+      send(queue, format, agreements.get(i));
+    }
+
+    long elapsed = System.nanoTime() - start;
+    log.info("Published {} agreements as {} to {} in {} ms", agreements.size(), format, queue,
+        TimeUnit.NANOSECONDS.toMillis(elapsed));
+    return elapsed;
+  }
+
+  private void send(final String queue, final Format format,
+      final TradeAgreementProtoMessage agreement) {
+    if (format == Format.PROTO) {
+      jmsTemplate.convertAndSend(queue, agreement.toByteArray());
+      return;
+    }
+
+    String json = writeJson(toJson(agreement));
+    jmsTemplate.send(queue, session -> session.createTextMessage(json));
+  }
+
+  private static TradeAgreementMessage toJson(final TradeAgreementProtoMessage agreement) {
+    return TradeAgreementMessage.builder()
+        .instrument(agreement.getInstrument())
+        .internalParty(agreement.getInternalParty())
+        .externalParty(agreement.getExternalParty())
+        .buySell(agreement.getBuySell())
+        .qty(agreement.getQty())
+        .build();
+  }
+
+  private static TradeAgreementProtoMessage toProto(final TradeAgreementMessage agreement) {
+    return TradeAgreementProtoMessage.newBuilder()
+        .setInstrument(agreement.getInstrument())
+        .setInternalParty(agreement.getInternalParty())
+        .setExternalParty(agreement.getExternalParty())
+        .setBuySell(agreement.getBuySell())
+        .setQty(agreement.getQty())
+        .build();
+  }
+
+  private static String writeJson(final TradeAgreementMessage agreement) {
+    try {
+      return OBJECT_MAPPER.writeValueAsString(agreement);
+    } catch (JsonProcessingException e) {
+      throw new IllegalStateException("Could not write agreement as JSON: " + agreement, e);
+    }
+  }
+
+  private static TradeAgreementMessage readJson(final String line) {
+    try {
+      return OBJECT_MAPPER.readValue(line, TradeAgreementMessage.class);
+    } catch (IOException e) {
+      throw new IllegalArgumentException("Could not read agreement from: " + line, e);
+    }
+  }
+}
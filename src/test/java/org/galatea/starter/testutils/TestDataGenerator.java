@@ -1,5 +1,6 @@
 package org.galatea.starter.testutils;
 
+import java.util.Random;
 import lombok.extern.slf4j.Slf4j;
 import org.galatea.starter.domain.SettlementMission;
 import org.galatea.starter.domain.TradeAgreement;
@@ -17,6 +18,9 @@ import org.galatea.starter.entrypoint.messagecontracts.ProtobufMessages;
 @Slf4j
 public class TestDataGenerator {
 
+  private static final String[] INSTRUMENTS = {"IBM", "AAPL", "MSFT", "GOOG", "AMZN", "ORCL"};
+  private static final String[] BUY_SELL = {"B", "S"};
+
   // Private constructor to appease Sonar
   private TestDataGenerator() {}
 
@@ -45,6 +49,21 @@ public class TestDataGenerator {
         .setQty(100);
   }
 
+  /**
+   * Generate a TradeAgreementProtoMessage builder with values picked by the given Random, spread
+   * over a handful of instruments and parties. Useful when a test needs lots of agreements that
+   * aren't all identical; pass a seeded Random to get the same agreements each run.
+   */
+  public static ProtobufMessages.TradeAgreementProtoMessage.Builder
+  randomTradeAgreementProtoMessageData(final Random random) {
+    return ProtobufMessages.TradeAgreementProtoMessage.newBuilder()
+        .setInstrument(INSTRUMENTS[random.nextInt(INSTRUMENTS.length)])
+        .setInternalParty("INT-" + (random.nextInt(3) + 1))
+        .setExternalParty("EXT-" + (random.nextInt(10) + 1))
+        .setBuySell(BUY_SELL[random.nextInt(BUY_SELL.length)])
+        .setQty(random.nextInt(10000) + 1);
+  }
+
   /**
    * Generate a SettlementMission builder populated with some default test values.
    */
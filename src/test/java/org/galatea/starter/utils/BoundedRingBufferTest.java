@@ -0,0 +1,76 @@
+package org.galatea.starter.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+
+public class BoundedRingBufferTest {
+
+  @Test
+  public void testFifoAndFull() {
+    BoundedRingBuffer<Integer> buffer = new BoundedRingBuffer<>(3);
+    assertEquals(4, buffer.capacity());
+
+    for (int i = 0; i < 4; i++) {
+      assertTrue(buffer.offer(i));
+    }
+    assertFalse(buffer.offer(4));
+    assertEquals(4, buffer.size());
+
+    assertEquals(Integer.valueOf(0), buffer.poll());
+    // Room again, and the buffer wraps around
+    assertTrue(buffer.offer(4));
+
+    List<Integer> drained = new ArrayList<>();
+    assertEquals(3, buffer.drainTo(drained, 3));
+    assertEquals(Integer.valueOf(4), buffer.poll());
+    assertNull(buffer.poll());
+    assertEquals(0, buffer.size());
+  }
+
+  @Test
+  public void testConcurrentProducers() throws InterruptedException {
+    int producers = 4;
+    int perProducer = 10000;
+    BoundedRingBuffer<Integer> buffer = new BoundedRingBuffer<>(64);
+    ExecutorService pool = Executors.newFixedThreadPool(producers);
+    CountDownLatch done = new CountDownLatch(producers);
+    AtomicInteger rejected = new AtomicInteger();
+
+    for (int p = 0; p < producers; p++) {
+      int base = p * perProducer;
+      pool.execute(() -> {
+        for (int i = 0; i < perProducer; i++) {
+          while (!buffer.offer(base + i)) {
+            rejected.incrementAndGet();
+            Thread.yield();
+          }
+        }
+        done.countDown();
+      });
+    }
+
+    Set<Integer> seen = new HashSet<>();
+    while (seen.size() < producers * perProducer) {
+      Integer value = buffer.poll();
+      if (value != null) {
+        assertTrue("Duplicate " + value, seen.add(value));
+      }
+    }
+    assertTrue(done.await(5, TimeUnit.SECONDS));
+    assertNull(buffer.poll());
+    pool.shutdown();
+  }
+}
@@ -0,0 +1,90 @@
+package org.galatea.starter.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.util.concurrent.Uninterruptibles;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.net.URI;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import org.junit.Test;
+import org.springframework.boot.actuate.trace.http.HttpExchangeTracer;
+import org.springframework.boot.actuate.trace.http.HttpTrace;
+import org.springframework.boot.actuate.trace.http.TraceableRequest;
+
+public class FuseHttpTraceRepositoryTest {
+
+  private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+  @Test
+  public void testWrittenInBackground() throws InterruptedException {
+    FuseHttpTraceRepository repository =
+        new FuseHttpTraceRepository(new ObjectMapper(), 16, 4, meterRegistry);
+    for (int i = 0; i < 10; i++) {
+      repository.add(newTrace());
+    }
+
+    // Shutting down waits for what's queued to be written
+    repository.destroy();
+
+    assertEquals(10, repository.findAll().size());
+    assertEquals(0, meterRegistry.get(FuseHttpTraceRepository.DROPPED_COUNTER).counter().count(),
+        0.0);
+  }
+
+  @Test
+  public void testOverflowDropped() throws InterruptedException {
+    // Hold the drainer up on its first trace, so only one more fits in the buffer
+    CountDownLatch release = new CountDownLatch(1);
+    ObjectMapper stalled = new ObjectMapper() {
+      @Override
+      public byte[] writeValueAsBytes(final Object value) throws JsonProcessingException {
+        Uninterruptibles.awaitUninterruptibly(release);
+        return super.writeValueAsBytes(value);
+      }
+    };
+    FuseHttpTraceRepository repository =
+        new FuseHttpTraceRepository(stalled, 1, 1, meterRegistry);
+    repository.setCapacity(1000);
+    for (int i = 0; i < 1000; i++) {
+      repository.add(newTrace());
+    }
+    release.countDown();
+    repository.destroy();
+
+    double dropped = meterRegistry.get(FuseHttpTraceRepository.DROPPED_COUNTER).counter().count();
+    assertTrue("Dropped " + dropped, dropped >= 998);
+    // Every trace is either kept or counted as dropped
+    assertEquals(1000, repository.findAll().size() + (int) dropped);
+  }
+
+  private static HttpTrace newTrace() {
+    return new HttpExchangeTracer(Collections.emptySet()).receivedRequest(new TraceableRequest() {
+      @Override
+      public String getMethod() {
+        return "GET";
+      }
+
+      @Override
+      public URI getUri() {
+        return URI.create("http://localhost/settlementEngine/missions");
+      }
+
+      @Override
+      public Map<String, List<String>> getHeaders() {
+        return Collections.emptyMap();
+      }
+
+      @Override
+      public String getRemoteAddress() {
+        return null;
+      }
+    });
+  }
+}
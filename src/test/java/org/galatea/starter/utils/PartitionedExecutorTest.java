@@ -0,0 +1,132 @@
+package org.galatea.starter.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import org.junit.After;
+import org.junit.Test;
+
+public class PartitionedExecutorTest {
+
+  private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+  private PartitionedExecutor executor;
+
+  @After
+  public void shutdown() throws InterruptedException {
+    if (executor != null) {
+      executor.shutdown(5, TimeUnit.SECONDS);
+    }
+  }
+
+  @Test
+  public void testOrderedWithinKey() throws InterruptedException {
+    executor = new PartitionedExecutor("test", 4, 10, meterRegistry);
+    List<String> keys = Collections.unmodifiableList(
+        IntStream.range(0, 8).mapToObj(i -> "KEY" + i).collect(Collectors.toList()));
+    Map<String, List<Integer>> seen = new HashMap<>();
+    keys.forEach(key -> seen.put(key, Collections.synchronizedList(new ArrayList<>())));
+
+    int perKey = 200;
+    for (int i = 0; i < perKey; i++) {
+      for (String key : keys) {
+        int seq = i;
+        executor.execute(key, () -> seen.get(key).add(seq));
+      }
+    }
+    assertTrue(executor.shutdown(5, TimeUnit.SECONDS));
+
+    List<Integer> expected =
+        IntStream.range(0, perKey).boxed().collect(Collectors.toList());
+    keys.forEach(key -> assertEquals(key, expected, seen.get(key)));
+  }
+
+  @Test
+  public void testParallelAcrossLanes() throws InterruptedException {
+    executor = new PartitionedExecutor("test", 2, 10, meterRegistry);
+    Object first = findKeyOnLane(0);
+    Object second = findKeyOnLane(1);
+    assertNotEquals(executor.laneFor(first), executor.laneFor(second));
+
+    // Each task waits for the other, so this only finishes if the two lanes run at the same time
+    CountDownLatch bothStarted = new CountDownLatch(2);
+    CountDownLatch bothFinished = new CountDownLatch(2);
+    Runnable task = () -> {
+      bothStarted.countDown();
+      try {
+        if (bothStarted.await(5, TimeUnit.SECONDS)) {
+          bothFinished.countDown();
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    };
+    executor.execute(first, task);
+    executor.execute(second, task);
+
+    assertTrue(bothFinished.await(10, TimeUnit.SECONDS));
+  }
+
+  @Test
+  public void testFailedTaskDoesNotStopLane() throws InterruptedException {
+    executor = new PartitionedExecutor("test", 1, 10, meterRegistry);
+    CountDownLatch ran = new CountDownLatch(1);
+
+    executor.execute("KEY", () -> {
+      throw new IllegalStateException("boom");
+    });
+    executor.execute("KEY", ran::countDown);
+
+    assertTrue(ran.await(5, TimeUnit.SECONDS));
+  }
+
+  @Test
+  public void testQueueDepthGauge() throws InterruptedException {
+    executor = new PartitionedExecutor("test", 1, 10, meterRegistry);
+    CountDownLatch release = new CountDownLatch(1);
+    CountDownLatch started = new CountDownLatch(1);
+
+    executor.execute("KEY", () -> {
+      started.countDown();
+      try {
+        release.await(5, TimeUnit.SECONDS);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    });
+    assertTrue(started.await(5, TimeUnit.SECONDS));
+    executor.execute("KEY", () -> { });
+    executor.execute("KEY", () -> { });
+
+    double depth = meterRegistry.get(PartitionedExecutor.QUEUE_DEPTH_GAUGE)
+        .tags("executor", "test", "lane", "0").gauge().value();
+    release.countDown();
+    assertEquals(2d, depth, 0d);
+  }
+
+  @Test(expected = RejectedExecutionException.class)
+  public void testRejectsAfterShutdown() throws InterruptedException {
+    executor = new PartitionedExecutor("test", 1, 10, meterRegistry);
+    executor.shutdown(5, TimeUnit.SECONDS);
+    executor.execute("KEY", () -> { });
+  }
+
+  private Object findKeyOnLane(final int lane) {
+    return IntStream.range(0, 100).mapToObj(i -> "KEY" + i)
+        .filter(key -> executor.laneFor(key) == lane)
+        .findFirst().orElseThrow(IllegalStateException::new);
+  }
+}
@@ -0,0 +1,103 @@
+package org.galatea.starter.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.Test;
+
+public class RequestIdGeneratorTest {
+
+  @Test
+  public void testIdsIncreaseWithinThread() {
+    RequestIdGenerator generator = new RequestIdGenerator(5);
+
+    long previous = generator.nextId();
+    // Plenty to run past the per-millisecond sequence
+    for (int i = 0; i < 10000; i++) {
+      long id = generator.nextId();
+      assertTrue(id > previous);
+      previous = id;
+    }
+  }
+
+  @Test
+  public void testDecode() {
+    Instant before = Instant.now().minusMillis(1);
+    long id = new RequestIdGenerator(RequestIdGenerator.MAX_NODE_ID).nextId();
+
+    assertTrue(id > 0);
+    assertEquals(RequestIdGenerator.MAX_NODE_ID, RequestIdGenerator.nodeIdOf(id));
+    Instant timestamp = RequestIdGenerator.timestampOf(id);
+    assertTrue(!timestamp.isBefore(before));
+    assertTrue(Duration.between(before, timestamp).toMillis() < 5000);
+  }
+
+  @Test
+  public void testUniqueAcrossThreadsAndNodes() throws Exception {
+    RequestIdGenerator node1 = new RequestIdGenerator(1);
+    RequestIdGenerator node2 = new RequestIdGenerator(2);
+    Set<Long> seen = ConcurrentHashMap.newKeySet();
+    ExecutorService pool = Executors.newFixedThreadPool(8);
+
+    List<Future<Boolean>> results = new ArrayList<>();
+    for (int t = 0; t < 8; t++) {
+      RequestIdGenerator generator = t % 2 == 0 ? node1 : node2;
+      results.add(pool.submit(() -> {
+        boolean unique = true;
+        for (int i = 0; i < 20000; i++) {
+          unique &= seen.add(generator.nextId());
+        }
+        return unique;
+      }));
+    }
+    for (Future<Boolean> result : results) {
+      assertTrue(result.get());
+    }
+    pool.shutdown();
+    assertEquals(8 * 20000, seen.size());
+  }
+
+  @Test
+  public void testUniqueAcrossManyThreads() throws Exception {
+    RequestIdGenerator generator = new RequestIdGenerator(1);
+    Set<Long> seen = ConcurrentHashMap.newKeySet();
+
+    // More threads than ever run at once, each making a few ids and going away
+    List<Thread> threads = new ArrayList<>();
+    for (int t = 0; t < 600; t++) {
+      Thread thread = new Thread(() -> {
+        for (int i = 0; i < 100; i++) {
+          seen.add(generator.nextId());
+        }
+      });
+      thread.start();
+      threads.add(thread);
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    assertEquals(600 * 100, seen.size());
+  }
+
+  @Test
+  public void testForLocalHost() {
+    long id = RequestIdGenerator.forLocalHost().nextId();
+
+    assertTrue(id > 0);
+    assertTrue(RequestIdGenerator.nodeIdOf(id) <= RequestIdGenerator.MAX_NODE_ID);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testNodeIdOutOfRange() {
+    new RequestIdGenerator(RequestIdGenerator.MAX_NODE_ID + 1);
+  }
+}
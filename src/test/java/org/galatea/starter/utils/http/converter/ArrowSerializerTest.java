@@ -0,0 +1,80 @@
+package org.galatea.starter.utils.http.converter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import org.apache.arrow.memory.BufferAllocator;
+import org.apache.arrow.memory.RootAllocator;
+import org.apache.arrow.vector.BigIntVector;
+import org.apache.arrow.vector.Float8Vector;
+import org.apache.arrow.vector.VarCharVector;
+import org.apache.arrow.vector.VectorSchemaRoot;
+import org.apache.arrow.vector.ipc.ArrowStreamReader;
+import org.galatea.starter.domain.SettlementMission;
+import org.galatea.starter.testutils.TestDataGenerator;
+import org.junit.Test;
+
+public class ArrowSerializerTest {
+
+  @Test
+  public void serializeToArrow_basic() throws Exception {
+    List<SettlementMission> missions = Arrays.asList(
+        TestDataGenerator.defaultSettlementMissionData().id(1L).build(),
+        TestDataGenerator.defaultSettlementMissionData().id(2L).instrument("AAPL").qty(2.5)
+            .build());
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    ArrowSerializer.serializeToArrow(missions, out);
+
+    try (BufferAllocator allocator = new RootAllocator();
+        ArrowStreamReader reader =
+            new ArrowStreamReader(new ByteArrayInputStream(out.toByteArray()), allocator)) {
+      VectorSchemaRoot batch = reader.getVectorSchemaRoot();
+      assertEquals(ArrowSerializer.MISSION_SCHEMA, batch.getSchema());
+
+      assertTrue(reader.loadNextBatch());
+      assertEquals(2, batch.getRowCount());
+      assertEquals(1L, ((BigIntVector) batch.getVector("id")).get(0));
+      assertEquals("IBM", ((VarCharVector) batch.getVector("instrument")).getObject(0).toString());
+      assertEquals("AAPL", ((VarCharVector) batch.getVector("instrument")).getObject(1).toString());
+      assertEquals(2.5d, ((Float8Vector) batch.getVector("qty")).get(1), 0d);
+      assertEquals(0L, ((BigIntVector) batch.getVector("version")).get(1));
+      assertFalse(reader.loadNextBatch());
+    }
+  }
+
+  @Test
+  public void serializeToArrow_multipleBatches() throws Exception {
+    int count = ArrowSerializer.BATCH_SIZE * 2 + 10;
+    List<SettlementMission> missions = IntStream.range(0, count)
+        .mapToObj(i -> TestDataGenerator.defaultSettlementMissionData().id((long) i).build())
+        .collect(Collectors.toList());
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    ArrowSerializer.serializeToArrow(missions, out);
+
+    try (BufferAllocator allocator = new RootAllocator();
+        ArrowStreamReader reader =
+            new ArrowStreamReader(new ByteArrayInputStream(out.toByteArray()), allocator)) {
+      VectorSchemaRoot batch = reader.getVectorSchemaRoot();
+      int batches = 0;
+      long nextId = 0;
+      while (reader.loadNextBatch()) {
+        batches++;
+        BigIntVector ids = (BigIntVector) batch.getVector("id");
+        for (int row = 0; row < batch.getRowCount(); row++) {
+          assertEquals(nextId++, ids.get(row));
+        }
+      }
+      assertEquals(3, batches);
+      assertEquals(count, nextId);
+    }
+  }
+}
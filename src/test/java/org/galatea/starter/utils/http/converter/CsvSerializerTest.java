@@ -1,12 +1,20 @@
 package org.galatea.starter.utils.http.converter;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.fail;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.stream.IntStream;
 import lombok.AllArgsConstructor;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
@@ -100,6 +108,85 @@ public class CsvSerializerTest {
     assertEquals(expected, actual);
   }
 
+  @Test
+  public void serializeToCsv_stream() throws Exception {
+    BasicClass row1 = new BasicClass("foo", "bar");
+    BasicClass row2 = new BasicClass("baz", null);
+    List<BasicClass> rows = Arrays.asList(row1, row2);
+
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    CloseRecordingStream out = new CloseRecordingStream(bytes);
+    CsvSerializer.serializeToCsv(rows, BasicClass.class, out);
+
+    // The stream belongs to the caller, so it should be left open
+    assertFalse(out.closed);
+    assertEquals(CsvSerializer.serializeToCsv(rows, BasicClass.class),
+        new String(bytes.toByteArray(), StandardCharsets.UTF_8));
+  }
+
+  @Test
+  public void serializeToCsv_streamRowsFail() throws Exception {
+    BasicClass row1 = new BasicClass("foo", "bar");
+    Iterable<BasicClass> rows = () -> IntStream.range(0, 2).mapToObj(i -> {
+      if (i == 1) {
+        throw new IllegalStateException("Rows failed");
+      }
+      return row1;
+    }).iterator();
+
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    CloseRecordingStream out = new CloseRecordingStream(bytes);
+    try {
+      CsvSerializer.serializeToCsv(rows, BasicClass.class, out);
+      fail("The rows' exception should have been passed on");
+    } catch (IllegalStateException e) {
+      assertEquals("Rows failed", e.getMessage());
+    }
+
+    // Still left open, with the rows written before the failure flushed to it
+    assertFalse(out.closed);
+    assertEquals("field1,field2\nfoo,bar\n",
+        new String(bytes.toByteArray(), StandardCharsets.UTF_8));
+  }
+
+  @Test
+  public void deserializeFromCsv_headerOrder() throws Exception {
+    // Columns are matched by header, in any order, and unknown columns are ignored
+    String csv
+        = "field2,unknown,field1\n"
+        + "bar,x,foo\n"
+        + ",y,baz\n";
+
+    List<BasicClass> rows = new ArrayList<>();
+    long count = CsvSerializer.deserializeFromCsv(
+        new ByteArrayInputStream(csv.getBytes(StandardCharsets.UTF_8)), BasicClass.class,
+        rows::add);
+
+    assertEquals(2, count);
+    assertEquals("foo", rows.get(0).getField1());
+    assertEquals("bar", rows.get(0).getField2());
+    assertEquals("baz", rows.get(1).getField1());
+    assertEquals("", rows.get(1).getField2());
+  }
+
+  /*
+   * Passes writes on to the target but only records a close, since closing a ByteArrayOutputStream
+   * doesn't stop further writes and so can't be seen from the outside.
+   */
+  private static class CloseRecordingStream extends FilterOutputStream {
+
+    private boolean closed;
+
+    CloseRecordingStream(final OutputStream out) {
+      super(out);
+    }
+
+    @Override
+    public void close() {
+      closed = true;
+    }
+  }
+
   @AllArgsConstructor
   @NoArgsConstructor
   @Getter
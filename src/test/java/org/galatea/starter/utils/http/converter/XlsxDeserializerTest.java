@@ -0,0 +1,118 @@
+package org.galatea.starter.utils.http.converter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.galatea.starter.entrypoint.exception.PayloadTooLargeException;
+import org.junit.Test;
+
+public class XlsxDeserializerTest {
+
+  @Test
+  public void deserializeFromXlsx_basic() throws Exception {
+    byte[] xlsx;
+    try (Workbook wb = new XSSFWorkbook()) {
+      Sheet sheet = wb.createSheet();
+      Row row = sheet.createRow(0);
+      // Columns in a different order to the class, plus one the class doesn't have
+      row.createCell(0).setCellValue("qty");
+      row.createCell(1).setCellValue("unknown");
+      row.createCell(2).setCellValue("Name");
+      row = sheet.createRow(1);
+      row.createCell(0).setCellValue(1234.5);
+      row.createCell(1).setCellValue("x");
+      row.createCell(2).setCellValue("foo");
+      // Blank row, skipped
+      sheet.createRow(2);
+      row = sheet.createRow(3);
+      row.createCell(2).setCellValue("bar");
+
+      // Display formatting shouldn't change the number that's read
+      CellStyle thousands = wb.createCellStyle();
+      thousands.setDataFormat(wb.createDataFormat().getFormat("#,##0.00"));
+      row = sheet.createRow(4);
+      row.createCell(0).setCellValue(10000);
+      row.getCell(0).setCellStyle(thousands);
+      row.createCell(2).setCellValue("baz");
+
+      xlsx = toBytes(wb);
+    }
+
+    List<BasicClass> rows = new ArrayList<>();
+    long count = XlsxDeserializer.deserializeFromXlsx(new ByteArrayInputStream(xlsx),
+        xlsx.length, BasicClass.class, rows::add);
+
+    assertEquals(3, count);
+    assertEquals("foo", rows.get(0).getName());
+    assertEquals(1234.5, rows.get(0).getQty(), 0d);
+    assertEquals("bar", rows.get(1).getName());
+    assertNull(rows.get(1).getQty());
+    assertEquals("baz", rows.get(2).getName());
+    assertEquals(10000d, rows.get(2).getQty(), 0d);
+  }
+
+  @Test
+  public void deserializeFromXlsx_roundTrip() throws Exception {
+    List<BasicClass> expected = IntStream.range(0, 1000)
+        .mapToObj(i -> new BasicClass("foo" + i, (double) i))
+        .collect(Collectors.toList());
+    ByteArrayOutputStream xlsx = new ByteArrayOutputStream();
+    XlsxSerializer.serializeToXlsx(expected, BasicClass.class, xlsx);
+
+    List<BasicClass> actual = new ArrayList<>();
+    XlsxDeserializer.deserializeFromXlsx(new ByteArrayInputStream(xlsx.toByteArray()),
+        xlsx.size(), BasicClass.class, actual::add);
+
+    assertEquals(expected.size(), actual.size());
+    for (int i = 0; i < expected.size(); i++) {
+      assertEquals(expected.get(i).getName(), actual.get(i).getName());
+      assertEquals(expected.get(i).getQty(), actual.get(i).getQty());
+    }
+  }
+
+  @Test(expected = PayloadTooLargeException.class)
+  public void deserializeFromXlsx_tooLarge() throws Exception {
+    ByteArrayOutputStream xlsx = new ByteArrayOutputStream();
+    XlsxSerializer.serializeToXlsx(Collections.singletonList(new BasicClass("foo", 1d)),
+        BasicClass.class, xlsx);
+
+    XlsxDeserializer.deserializeFromXlsx(new ByteArrayInputStream(xlsx.toByteArray()),
+        xlsx.size() - 1, BasicClass.class, row -> { });
+  }
+
+  private static byte[] toBytes(final Workbook wb) throws Exception {
+    try (ByteArrayOutputStream baos = new ByteArrayOutputStream()) {
+      wb.write(baos);
+      return baos.toByteArray();
+    }
+  }
+
+  @NoArgsConstructor
+  @Getter
+  private static class BasicClass {
+
+    @JsonProperty("Name")
+    private String name;
+    private Double qty;
+
+    BasicClass(final String name, final Double qty) {
+      this.name = name;
+      this.qty = qty;
+    }
+  }
+}
@@ -1,21 +1,33 @@
 package org.galatea.starter.utils.http.converter;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonProperty;
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.time.LocalDate;
+import java.time.ZoneId;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.Date;
 import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 import lombok.AllArgsConstructor;
 import lombok.NoArgsConstructor;
 import lombok.ToString;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.poi.ss.usermodel.CellType;
+import org.apache.poi.ss.usermodel.DataFormatter;
+import org.apache.poi.ss.usermodel.DateUtil;
 import org.apache.poi.ss.usermodel.Row;
 import org.apache.poi.ss.usermodel.Sheet;
 import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.ss.usermodel.WorkbookFactory;
 import org.apache.poi.xssf.usermodel.XSSFWorkbook;
 import org.galatea.starter.testutils.XlsxComparator;
 import org.junit.Test;
@@ -160,6 +172,70 @@ public class XlsxSerializerTest {
     assertTrue(XlsxComparator.equals(expected, actual));
   }
 
+  @Test
+  public void serializeToXlsx_streamPastRowWindow() throws Exception {
+    // More rows than SXSSF keeps in memory, so most of them will have been flushed to disk
+    List<BasicClass> rows = IntStream.range(0, 1000)
+        .mapToObj(i -> new BasicClass("foo" + i, "bar" + i))
+        .collect(Collectors.toList());
+
+    byte[] expected;
+    try (Workbook wbExpected = new XSSFWorkbook()) {
+      Sheet sheet = wbExpected.createSheet();
+      Row row = sheet.createRow(0);
+      row.createCell(0).setCellValue("field1");
+      row.createCell(1).setCellValue("field2");
+      for (int i = 0; i < rows.size(); i++) {
+        row = sheet.createRow(i + 1);
+        row.createCell(0).setCellValue("foo" + i);
+        row.createCell(1).setCellValue("bar" + i);
+      }
+
+      expected = writeSpreadsheetToBytes(wbExpected);
+    }
+    ByteArrayOutputStream actual = new ByteArrayOutputStream();
+    XlsxSerializer.serializeToXlsx(rows, BasicClass.class, actual);
+    assertTrue(XlsxComparator.equals(expected, actual.toByteArray()));
+  }
+
+  @Test
+  public void serializeToXlsx_typedCells() throws Exception {
+    TypedClass row1 = new TypedClass(7L, 12.5, true, LocalDate.of(2020, 3, 1),
+        Long.MAX_VALUE);
+
+    byte[] actual = XlsxSerializer.serializeToXlsx(
+        Collections.singletonList(row1), TypedClass.class);
+
+    try (Workbook wb = WorkbookFactory.create(new ByteArrayInputStream(actual))) {
+      Row row = wb.getSheetAt(0).getRow(1);
+      assertEquals(CellType.NUMERIC, row.getCell(0).getCellType());
+      assertEquals(7d, row.getCell(0).getNumericCellValue(), 0d);
+      assertEquals(CellType.NUMERIC, row.getCell(1).getCellType());
+      assertEquals(12.5d, row.getCell(1).getNumericCellValue(), 0d);
+      assertEquals(CellType.BOOLEAN, row.getCell(2).getCellType());
+      assertTrue(DateUtil.isCellDateFormatted(row.getCell(3)));
+      assertEquals(
+          Date.from(LocalDate.of(2020, 3, 1).atStartOfDay(ZoneId.systemDefault()).toInstant()),
+          row.getCell(3).getDateCellValue());
+      // Too big to be held exactly as a number
+      assertEquals(CellType.STRING, row.getCell(4).getCellType());
+      assertEquals(String.valueOf(Long.MAX_VALUE), row.getCell(4).getStringCellValue());
+
+      // Decimals only show as many places as they need
+      DataFormatter formatter = new DataFormatter();
+      assertEquals("12.5", formatter.formatCellValue(row.getCell(1)));
+    }
+  }
+
+  @Test
+  public void planFor_builtOncePerClass() {
+    XlsxSerializer.SerializationPlan plan = XlsxSerializer.planFor(CustomHeadersClass.class);
+
+    assertSame(plan, XlsxSerializer.planFor(CustomHeadersClass.class));
+    assertEquals(Arrays.asList("Header 1", "Header 3"), plan.getHeaders());
+    assertEquals("baz", plan.readCell(new CustomHeadersClass("foo", "bar", "baz"), 1));
+  }
+
   private static byte[] writeSpreadsheetToBytes(final Workbook wb) throws IOException {
     try (ByteArrayOutputStream baos = new ByteArrayOutputStream()) {
       wb.write(baos);
@@ -205,6 +281,16 @@ public class XlsxSerializerTest {
     private BasicClass field2;
   }
 
+  @AllArgsConstructor
+  private static class TypedClass {
+
+    private Long field1;
+    private double field2;
+    private Boolean field3;
+    private LocalDate field4;
+    private long field5;
+  }
+
   @AllArgsConstructor
   private static class CustomHeadersClass {
 
@@ -0,0 +1,48 @@
+package org.galatea.starter.utils.jms;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+import org.springframework.core.task.TaskExecutor;
+
+public class JmsListenerExecutorsTest {
+
+  @Test
+  public void testPlatformThreads() throws Exception {
+    assertRunsTasks(JmsListenerExecutors.forMode(JmsListenerExecutors.PLATFORM));
+  }
+
+  @Test
+  public void testVirtualThreads() throws Exception {
+    // On JDKs without virtual threads this falls back to platform threads, either way tasks run
+    assertRunsTasks(JmsListenerExecutors.forMode(JmsListenerExecutors.VIRTUAL));
+  }
+
+  @Test
+  public void testVirtualThreadFactoryMatchesJdk() {
+    boolean jdkHasVirtualThreads;
+    try {
+      Thread.class.getMethod("ofVirtual");
+      jdkHasVirtualThreads = Runtime.version().feature() >= 21;
+    } catch (NoSuchMethodException e) {
+      jdkHasVirtualThreads = false;
+    }
+    assertEquals(jdkHasVirtualThreads,
+        JmsListenerExecutors.virtualThreadFactory().isPresent());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testUnknownMode() {
+    JmsListenerExecutors.forMode("green");
+  }
+
+  private static void assertRunsTasks(final TaskExecutor executor) throws InterruptedException {
+    CountDownLatch latch = new CountDownLatch(2);
+    executor.execute(latch::countDown);
+    executor.execute(latch::countDown);
+    assertTrue(latch.await(5, TimeUnit.SECONDS));
+  }
+}
@@ -0,0 +1,96 @@
+package org.galatea.starter.utils.rest;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+public class BoundedCachingResponseWrapperTest {
+
+  @Test
+  public void testSmallBodyHeldBack() throws Exception {
+    MockHttpServletResponse response = new MockHttpServletResponse();
+    AtomicInteger calls = new AtomicInteger();
+    BoundedCachingResponseWrapper wrapper = new BoundedCachingResponseWrapper(response, 10,
+        () -> response.addHeader("audit", String.valueOf(calls.incrementAndGet())));
+
+    wrapper.getOutputStream().write("hello".getBytes(StandardCharsets.UTF_8));
+    wrapper.flushBuffer();
+
+    // Nothing has reached the response yet, so headers can still be added
+    assertFalse(response.isCommitted());
+    assertEquals(0, response.getContentAsByteArray().length);
+
+    wrapper.copyBodyToResponse();
+    wrapper.beforeCommit();
+
+    assertEquals("hello", response.getContentAsString());
+    assertEquals(5, response.getContentLength());
+    assertEquals("1", response.getHeader("audit"));
+    assertEquals(1, calls.get());
+    assertEquals("hello", new String(wrapper.getCapturedPayload(), StandardCharsets.UTF_8));
+  }
+
+  @Test
+  public void testLargeBodyStreamedThrough() throws Exception {
+    MockHttpServletResponse response = new MockHttpServletResponse();
+    AtomicInteger calls = new AtomicInteger();
+    BoundedCachingResponseWrapper wrapper = new BoundedCachingResponseWrapper(response, 4,
+        () -> response.addHeader("audit", String.valueOf(calls.incrementAndGet())));
+
+    wrapper.getOutputStream().write("abc".getBytes(StandardCharsets.UTF_8));
+    assertEquals(0, response.getContentAsByteArray().length);
+
+    // Outgrows the limit: the headers go on and everything written so far is sent
+    wrapper.getOutputStream().write("defgh".getBytes(StandardCharsets.UTF_8));
+    assertEquals("abcdefgh", response.getContentAsString());
+    assertEquals(1, calls.get());
+
+    wrapper.getWriter().write("ij");
+    wrapper.copyBodyToResponse();
+
+    assertEquals("abcdefghij", response.getContentAsString());
+    assertEquals(1, calls.get());
+    // Only the start is kept for the trace
+    assertArrayEquals("abcd".getBytes(StandardCharsets.UTF_8), wrapper.getCapturedPayload());
+  }
+
+  @Test
+  public void testStreamRestForAsyncBody() throws Exception {
+    MockHttpServletResponse response = new MockHttpServletResponse();
+    BoundedCachingResponseWrapper wrapper = new BoundedCachingResponseWrapper(response, 10,
+        () -> response.addHeader("audit", "yes"));
+
+    wrapper.getOutputStream().write("abc".getBytes(StandardCharsets.UTF_8));
+    wrapper.streamRest();
+    // The rest is written after the filter has returned
+    wrapper.getOutputStream().write("def".getBytes(StandardCharsets.UTF_8));
+
+    assertEquals("abcdef", response.getContentAsString());
+    assertEquals("yes", response.getHeader("audit"));
+    // The body wasn't all there, so no content length was set
+    assertEquals(0, response.getContentLength());
+    assertEquals("abcdef", new String(wrapper.getCapturedPayload(), StandardCharsets.UTF_8));
+  }
+
+  @Test
+  public void testSendErrorAddsHeaders() throws Exception {
+    MockHttpServletResponse response = new MockHttpServletResponse();
+    BoundedCachingResponseWrapper wrapper = new BoundedCachingResponseWrapper(response, 10,
+        () -> response.addHeader("audit", "yes"));
+
+    wrapper.getOutputStream().write("discarded".getBytes(StandardCharsets.UTF_8));
+    wrapper.sendError(404);
+    wrapper.copyBodyToResponse();
+
+    assertTrue(response.isCommitted());
+    assertEquals(404, response.getStatus());
+    assertEquals("yes", response.getHeader("audit"));
+    assertEquals(0, response.getContentAsByteArray().length);
+  }
+}
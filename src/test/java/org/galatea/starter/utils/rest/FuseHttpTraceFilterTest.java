@@ -0,0 +1,302 @@
+package org.galatea.starter.utils.rest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.concurrent.atomic.AtomicReference;
+import javax.servlet.FilterChain;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.galatea.starter.utils.FuseHttpTrace;
+import org.galatea.starter.utils.FuseHttpTraceRepository;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.boot.actuate.trace.http.HttpExchangeTracer;
+import org.springframework.boot.actuate.trace.http.Include;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.util.StreamUtils;
+
+public class FuseHttpTraceFilterTest {
+
+  private static final String JSON = "application/json";
+
+  private final FuseHttpTraceRepository repository = mock(FuseHttpTraceRepository.class);
+
+  @Test
+  public void testSampled() throws Exception {
+    FuseHttpTraceFilter filter = filter(1.0);
+    MockHttpServletRequest request = request("POST", "/settlementEngine");
+    request.setContentType(JSON);
+    request.setContent("[{\"qty\":100}]".getBytes(StandardCharsets.UTF_8));
+    MockHttpServletResponse response = new MockHttpServletResponse();
+
+    filter.doFilter(request, response, new MockFilterChain(new HttpServlet() {
+      @Override
+      protected void service(final HttpServletRequest req, final HttpServletResponse res)
+          throws IOException {
+        // Read the body, which is how it gets cached for the trace
+        StreamUtils.copyToByteArray(req.getInputStream());
+        writeJson(res, "[\"/settlementEngine/mission/1\"]");
+      }
+    }));
+
+    assertEquals("[\"/settlementEngine/mission/1\"]", response.getContentAsString());
+    assertAuditHeaders(response);
+    FuseHttpTrace trace = recorded();
+    assertEquals(200, trace.getTrace().getResponse().getStatus());
+    assertNotNull(trace.getInternalRequestId());
+    assertEquals("[{\"qty\":100}]", trace.getRequestPayload());
+    assertEquals("[\"/settlementEngine/mission/1\"]", trace.getResponsePayload());
+  }
+
+  @Test
+  public void testSampledBodyCutAtLimit() throws Exception {
+    FuseHttpTraceFilter filter = filter(1.0);
+    filter.setMaxPayloadLength(4);
+    MockHttpServletResponse response = new MockHttpServletResponse();
+
+    filter.doFilter(request("GET", "/settlementEngine/missions"), response,
+        chain(200, "[1,2,3,4]"));
+
+    // The whole body is sent, only its start is traced
+    assertEquals("[1,2,3,4]", response.getContentAsString());
+    assertAuditHeaders(response);
+    assertEquals("[1,2", recorded().getResponsePayload());
+  }
+
+  @Test
+  public void testUnsampled() throws Exception {
+    FuseHttpTraceFilter filter = filter(0.0);
+    MockHttpServletResponse response = new MockHttpServletResponse();
+
+    filter.doFilter(request("GET", "/settlementEngine/mission/1"), response,
+        chain(200, "{\"id\":1}"));
+
+    assertEquals("{\"id\":1}", response.getContentAsString());
+    assertAuditHeaders(response);
+    verify(repository, never()).add(any(FuseHttpTrace.class));
+  }
+
+  @Test
+  public void testUnsampledErrorTraced() throws Exception {
+    FuseHttpTraceFilter filter = filter(0.0);
+    MockHttpServletResponse response = new MockHttpServletResponse();
+
+    filter.doFilter(request("GET", "/settlementEngine/mission/1"), response,
+        chain(404, "{\"status\":\"NOT_FOUND\"}"));
+
+    assertAuditHeaders(response);
+    FuseHttpTrace trace = recorded();
+    assertEquals(404, trace.getTrace().getResponse().getStatus());
+    // Nothing was cached, so there are no bodies
+    assertNull(trace.getRequestPayload());
+    assertNull(trace.getResponsePayload());
+  }
+
+  @Test
+  public void testUnsampledExceptionTraced() throws Exception {
+    FuseHttpTraceFilter filter = filter(0.0);
+    MockHttpServletResponse response = new MockHttpServletResponse();
+    FilterChain failing = (req, res) -> {
+      throw new IllegalStateException("Handler failed");
+    };
+
+    try {
+      filter.doFilter(request("GET", "/settlementEngine/mission/1"), response, failing);
+      fail("The handler's exception should have been passed on");
+    } catch (IllegalStateException e) {
+      // Expected
+    }
+
+    assertAuditHeaders(response);
+    // Not yet an error status, so the trace says 500
+    assertEquals(500, recorded().getTrace().getResponse().getStatus());
+  }
+
+  @Test
+  public void testStreamed() throws Exception {
+    FuseHttpTraceFilter filter = filter(1.0);
+    filter.setMaxPayloadLength(4);
+    MockHttpServletResponse response = new MockHttpServletResponse();
+    AtomicReference<String> sentWhileWriting = new AtomicReference<>();
+
+    filter.doFilter(request("GET", "/settlementEngine/missions/export"), response,
+        (req, res) -> {
+          writeJson(res, "[1,2,3,4]");
+          sentWhileWriting.set(response.getContentAsString());
+        });
+
+    // Sent on as it was written, rather than held back
+    assertEquals("[1,2,3,4]", sentWhileWriting.get());
+    assertEquals("[1,2,3,4]", response.getContentAsString());
+    assertAuditHeaders(response);
+    FuseHttpTrace trace = recorded();
+    assertNull(trace.getRequestPayload());
+    assertEquals("[1,2", trace.getResponsePayload());
+  }
+
+  @Test
+  public void testStreamedUnsampled() throws Exception {
+    FuseHttpTraceFilter filter = filter(0.0);
+    MockHttpServletResponse response = new MockHttpServletResponse();
+
+    filter.doFilter(request("GET", "/settlementEngine/missions/export"), response,
+        chain(200, "[1,2,3,4]"));
+
+    assertEquals("[1,2,3,4]", response.getContentAsString());
+    assertAuditHeaders(response);
+    verify(repository, never()).add(any(FuseHttpTrace.class));
+  }
+
+  @Test
+  public void testStreamedSlowProfiled() throws Exception {
+    FuseHttpTraceFilter filter = filter(1.0);
+    SlowRequestProfiler profiler =
+        new SlowRequestProfiler(Duration.ZERO, Duration.ofMillis(1), 128, 1000);
+    filter.setProfiler(profiler);
+
+    try {
+      filter.doFilter(request("GET", "/settlementEngine/missions/export"),
+          new MockHttpServletResponse(), slowChain());
+    } finally {
+      profiler.destroy();
+    }
+
+    assertNotNull(recorded().getProfile());
+  }
+
+  @Test
+  public void testUnsampledSlowProfiled() throws Exception {
+    FuseHttpTraceFilter filter = filter(0.0);
+    SlowRequestProfiler profiler =
+        new SlowRequestProfiler(Duration.ZERO, Duration.ofMillis(1), 128, 1000);
+    filter.setProfiler(profiler);
+
+    try {
+      filter.doFilter(request("GET", "/settlementEngine/missions/export"),
+          new MockHttpServletResponse(), slowChain());
+    } finally {
+      profiler.destroy();
+    }
+
+    // Traced although it wasn't sampled, since it was slow
+    FuseHttpTrace trace = recorded();
+    assertEquals(200, trace.getTrace().getResponse().getStatus());
+    assertNotNull(trace.getProfile());
+  }
+
+  @Test
+  public void testAsync() throws Exception {
+    FuseHttpTraceFilter filter = filter(1.0);
+    MockHttpServletRequest request = request("GET", "/settlementEngine/missions");
+    request.setAsyncSupported(true);
+    MockHttpServletResponse response = new MockHttpServletResponse();
+    AtomicReference<ServletResponse> asyncResponse = new AtomicReference<>();
+
+    filter.doFilter(request, response, (req, res) -> {
+      req.startAsync();
+      asyncResponse.set(res);
+      writeJson(res, "[1,");
+    });
+
+    // What was written so far has gone out with the headers, but the trace waits for the rest
+    assertEquals("[1,", response.getContentAsString());
+    assertAuditHeaders(response);
+    verify(repository, never()).add(any(FuseHttpTrace.class));
+
+    asyncResponse.get().getOutputStream().write("2]".getBytes(StandardCharsets.UTF_8));
+    request.getAsyncContext().complete();
+
+    assertEquals("[1,2]", response.getContentAsString());
+    FuseHttpTrace trace = recorded();
+    assertEquals(200, trace.getTrace().getResponse().getStatus());
+    assertEquals("[1,2]", trace.getResponsePayload());
+  }
+
+  @Test
+  public void testAsyncUnsampled() throws Exception {
+    FuseHttpTraceFilter filter = filter(0.0);
+    MockHttpServletRequest request = request("GET", "/settlementEngine/missions");
+    request.setAsyncSupported(true);
+    MockHttpServletResponse response = new MockHttpServletResponse();
+
+    filter.doFilter(request, response, (req, res) -> {
+      req.startAsync();
+      writeJson(res, "[1,");
+    });
+    request.getAsyncContext().complete();
+
+    assertEquals("[1,", response.getContentAsString());
+    assertAuditHeaders(response);
+    verify(repository, never()).add(any(FuseHttpTrace.class));
+  }
+
+  private FuseHttpTraceFilter filter(final double rate) {
+    return new FuseHttpTraceFilter(repository,
+        new HttpExchangeTracer(EnumSet.allOf(Include.class)),
+        path -> path.startsWith("/actuator"),
+        path -> path.endsWith("/export"),
+        new TraceSampler(rate, Collections.emptyList(), true));
+  }
+
+  private static MockHttpServletRequest request(final String method, final String path) {
+    MockHttpServletRequest request = new MockHttpServletRequest(method, path);
+    request.setQueryString("requestId=1234");
+    return request;
+  }
+
+  private static MockFilterChain chain(final int status, final String json) {
+    return new MockFilterChain(new HttpServlet() {
+      @Override
+      protected void service(final HttpServletRequest req, final HttpServletResponse res)
+          throws IOException {
+        res.setStatus(status);
+        writeJson(res, json);
+      }
+    });
+  }
+
+  private static FilterChain slowChain() {
+    return (req, res) -> {
+      try {
+        Thread.sleep(50);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      writeJson(res, "[1,2,3,4]");
+    };
+  }
+
+  private static void writeJson(final ServletResponse response, final String json)
+      throws IOException {
+    response.setContentType(JSON);
+    response.getOutputStream().write(json.getBytes(StandardCharsets.UTF_8));
+  }
+
+  private FuseHttpTrace recorded() {
+    ArgumentCaptor<FuseHttpTrace> trace = ArgumentCaptor.forClass(FuseHttpTrace.class);
+    verify(repository).add(trace.capture());
+    return trace.getValue();
+  }
+
+  private static void assertAuditHeaders(final MockHttpServletResponse response) {
+    assertNotNull(response.getHeader("internalQueryId"));
+    assertNotNull(response.getHeader("requestReceivedTime"));
+    assertNotNull(response.getHeader("requestElapsedTimeMillis"));
+  }
+}
@@ -0,0 +1,51 @@
+package org.galatea.starter.utils.rest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.distribution.HistogramSnapshot;
+import io.micrometer.core.instrument.distribution.ValueAtPercentile;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+
+public class LatencyDistributionFilterTest {
+
+  @Test
+  public void testRequestTimersGetDistribution() {
+    MeterRegistry registry = new SimpleMeterRegistry();
+    registry.config().meterFilter(new LatencyDistributionFilter("http.server.requests",
+        new double[] {0.5, 0.99, 0.999}, new long[] {100, 500}, Duration.ofMinutes(1), 3));
+
+    Timer timer = registry.timer("http.server.requests", "uri", "/settlementEngine/missions");
+    for (int i = 1; i <= 100; i++) {
+      timer.record(i * 10L, TimeUnit.MILLISECONDS);
+    }
+
+    HistogramSnapshot snapshot = timer.takeSnapshot();
+    ValueAtPercentile[] percentiles = snapshot.percentileValues();
+    assertEquals(3, percentiles.length);
+    assertEquals(0.999, percentiles[2].percentile(), 0.0);
+    // Percentiles are approximate, but the median of 10..1000ms is about 500ms
+    double median = percentiles[0].value(TimeUnit.MILLISECONDS);
+    assertTrue("Median was " + median, median > 400 && median < 600);
+
+    // The SLO buckets count requests at or under each latency
+    assertTrue(snapshot.histogramCounts().length > 2);
+  }
+
+  @Test
+  public void testOtherTimersUntouched() {
+    MeterRegistry registry = new SimpleMeterRegistry();
+    registry.config().meterFilter(new LatencyDistributionFilter("http.server.requests",
+        new double[] {0.5}, new long[0], Duration.ofMinutes(1), 3));
+
+    Timer timer = registry.timer("jms.listener.processing");
+    timer.record(10, TimeUnit.MILLISECONDS);
+
+    assertEquals(0, timer.takeSnapshot().percentileValues().length);
+  }
+}
@@ -0,0 +1,73 @@
+package org.galatea.starter.utils.rest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.time.Duration;
+import org.junit.After;
+import org.junit.Test;
+
+public class SlowRequestProfilerTest {
+
+  private SlowRequestProfiler profiler;
+
+  @After
+  public void tearDown() {
+    profiler.destroy();
+  }
+
+  @Test
+  public void testSlowRequestIsProfiled() throws Exception {
+    profiler = new SlowRequestProfiler(Duration.ofMillis(20), Duration.ofMillis(2), 128, 1000);
+
+    SlowRequestProfiler.Watch watch = profiler.watch();
+    slowHandler(300);
+    String profile = watch.stop();
+
+    assertTrue(profile, profile.contains(
+        SlowRequestProfilerTest.class.getName() + ".slowHandler;java.lang.Thread.sleep"));
+    for (String line : profile.split("\n")) {
+      // Each line is a stack, root first, and how many samples had it
+      assertTrue(line, line.matches("[^ ]+ \\d+"));
+    }
+  }
+
+  @Test
+  public void testQuickRequestIsNotProfiled() throws Exception {
+    profiler = new SlowRequestProfiler(Duration.ofSeconds(10), Duration.ofMillis(2), 128, 1000);
+
+    SlowRequestProfiler.Watch watch = profiler.watch();
+    slowHandler(50);
+    assertNull(watch.stop());
+  }
+
+  @Test
+  public void testSamplesAreCapped() throws Exception {
+    profiler = new SlowRequestProfiler(Duration.ZERO, Duration.ofMillis(1), 128, 5);
+
+    SlowRequestProfiler.Watch watch = profiler.watch();
+    slowHandler(200);
+    String profile = watch.stop();
+
+    int samples = 0;
+    for (String line : profile.split("\n")) {
+      samples += Integer.parseInt(line.substring(line.lastIndexOf(' ') + 1));
+    }
+    assertEquals(5, samples);
+  }
+
+  @Test
+  public void testCollapse() {
+    StackTraceElement[] stack = {
+        new StackTraceElement("a.Leaf", "run", "Leaf.java", 3),
+        new StackTraceElement("a.Middle", "call", "Middle.java", 2),
+        new StackTraceElement("a.Root", "main", "Root.java", 1)};
+
+    assertEquals("a.Root.main;a.Middle.call;a.Leaf.run", SlowRequestProfiler.collapse(stack));
+  }
+
+  private static void slowHandler(final long millis) throws InterruptedException {
+    Thread.sleep(millis);
+  }
+}
@@ -0,0 +1,49 @@
+package org.galatea.starter.utils.rest;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+public class TeeResponseWrapperTest {
+
+  @Test
+  public void testBodyStreamedAndStartCaptured() throws Exception {
+    MockHttpServletResponse response = new MockHttpServletResponse();
+    AtomicInteger calls = new AtomicInteger();
+    TeeResponseWrapper wrapper = new TeeResponseWrapper(response, 4,
+        () -> response.addHeader("audit", String.valueOf(calls.incrementAndGet())));
+
+    wrapper.getOutputStream().write("abc".getBytes(StandardCharsets.UTF_8));
+    // Sent on at once, with the headers ahead of it
+    assertEquals("abc", response.getContentAsString());
+    assertEquals("1", response.getHeader("audit"));
+
+    wrapper.getOutputStream().write("defgh".getBytes(StandardCharsets.UTF_8));
+    wrapper.getOutputStream().write('i');
+    wrapper.getWriter().write("j");
+    wrapper.flushBuffer();
+    wrapper.beforeCommit();
+
+    assertTrue(response.isCommitted());
+    assertEquals("abcdefghij", response.getContentAsString());
+    assertEquals(1, calls.get());
+    assertArrayEquals("abcd".getBytes(StandardCharsets.UTF_8), wrapper.getCapturedPayload());
+  }
+
+  @Test
+  public void testNoBody() {
+    MockHttpServletResponse response = new MockHttpServletResponse();
+    TeeResponseWrapper wrapper = new TeeResponseWrapper(response, 4,
+        () -> response.addHeader("audit", "yes"));
+
+    wrapper.beforeCommit();
+
+    assertEquals("yes", response.getHeader("audit"));
+    assertEquals(0, wrapper.getCapturedPayload().length);
+  }
+}
@@ -0,0 +1,51 @@
+package org.galatea.starter.utils.rest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.stream.IntStream;
+import org.junit.Test;
+
+public class TraceSamplerTest {
+
+  @Test
+  public void testLongestPrefixWins() {
+    TraceSampler sampler = new TraceSampler(0.5,
+        Arrays.asList("/settlementEngine=1", "/settlementEngine/mission/=0", " "), true);
+
+    assertEquals(0.0, sampler.rateFor("/settlementEngine/mission/12"), 0.0);
+    assertEquals(1.0, sampler.rateFor("/settlementEngine/missions"), 0.0);
+    assertEquals(0.5, sampler.rateFor("/iex/symbols"), 0.0);
+  }
+
+  @Test
+  public void testAllOrNothing() {
+    TraceSampler sampler = new TraceSampler(1.0, Collections.singletonList("/iex=0"), false);
+
+    assertTrue(IntStream.range(0, 1000).allMatch(i -> sampler.sample("/settlementEngine")));
+    assertTrue(IntStream.range(0, 1000).noneMatch(i -> sampler.sample("/iex/symbols")));
+    assertFalse(sampler.isTraceErrors());
+  }
+
+  @Test
+  public void testPartialRate() {
+    TraceSampler sampler = new TraceSampler(0.25, Collections.emptyList(), true);
+
+    long sampled = IntStream.range(0, 100_000).filter(i -> sampler.sample("/any")).count();
+    // Comfortably more than 10 standard deviations either side of 25,000
+    assertTrue("Sampled " + sampled, sampled > 23_500 && sampled < 26_500);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testRateOutOfRange() {
+    new TraceSampler(1.5, Collections.emptyList(), true);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testMalformedRule() {
+    new TraceSampler(1.0, Collections.singletonList("/iex"), true);
+  }
+}
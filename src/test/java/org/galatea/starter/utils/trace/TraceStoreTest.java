@@ -0,0 +1,198 @@
+package org.galatea.starter.utils.trace;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class TraceStoreTest {
+
+  private static final Instant NOW = Instant.parse("2020-03-01T09:30:00Z");
+
+  @Rule
+  public final TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void testSearchByIndexes() throws Exception {
+    Path dir = folder.getRoot().toPath();
+    TraceStore store = new TraceStore(dir, 1 << 16, Duration.ofHours(1), Duration.ofDays(1), 10,
+        1000, Clock.fixed(NOW, ZoneOffset.UTC));
+    append(store, "1", "ext-a", "/settlementEngine/missions", 5, NOW);
+    append(store, "2", null, "/settlementEngine/missions", 700, NOW);
+    append(store, "3", "ext-a", "/iex/symbols", 300, NOW);
+    append(store, "4", null, "/settlementEngine/missions", 2000, NOW);
+
+    assertEquals(listOf("3"), ids(store.search(TraceQuery.builder().internalRequestId("3")
+        .build())));
+    assertEquals(listOf("3", "1"), ids(store.search(TraceQuery.builder()
+        .externalRequestId("ext-a").build())));
+    assertEquals(listOf("4", "2", "1"), ids(store.search(TraceQuery.builder()
+        .path("/settlementEngine/missions").build())));
+    // Slow requests, newest first
+    assertEquals(listOf("4", "3", "2"), ids(store.search(TraceQuery.builder()
+        .minMillis(250L).build())));
+    assertEquals(listOf("2"), ids(store.search(TraceQuery.builder()
+        .path("/settlementEngine/missions").minMillis(250L).maxMillis(1000L).build())));
+    assertEquals(listOf("4"), ids(store.search(TraceQuery.builder().limit(1).build())));
+    store.close();
+  }
+
+  @Test
+  public void testReopened() throws Exception {
+    Path dir = folder.getRoot().toPath();
+    TraceStore store = new TraceStore(dir, 1 << 16, Duration.ofHours(1), Duration.ofDays(1), 10,
+        1000, Clock.fixed(NOW, ZoneOffset.UTC));
+    append(store, "1", "ext-a", "/settlementEngine/missions", 5, NOW);
+    store.close();
+
+    TraceStore reopened = new TraceStore(dir, 1 << 16, Duration.ofHours(1), Duration.ofDays(1),
+        10, 1000, Clock.fixed(NOW, ZoneOffset.UTC));
+    assertEquals(listOf("1"), ids(reopened.search(TraceQuery.builder()
+        .externalRequestId("ext-a").build())));
+
+    // Appends go to a new segment rather than the one read back
+    append(reopened, "2", "ext-a", "/settlementEngine/missions", 5, NOW);
+    assertEquals(2, reopened.segmentCount());
+    assertEquals(listOf("2", "1"), ids(reopened.search(TraceQuery.builder()
+        .externalRequestId("ext-a").build())));
+    reopened.close();
+  }
+
+  @Test
+  public void testRollAndExpire() throws Exception {
+    Path dir = folder.getRoot().toPath();
+    MutableClock clock = new MutableClock(NOW);
+    TraceStore store = new TraceStore(dir, 1 << 16, Duration.ofHours(1), Duration.ofHours(3), 10,
+        1000, clock);
+
+    for (int i = 0; i < 5; i++) {
+      append(store, String.valueOf(i), null, "/settlementEngine/missions", 5, clock.now);
+      clock.now = clock.now.plus(Duration.ofHours(1));
+    }
+
+    // One segment per hour, and those with nothing in the last 3 hours have gone
+    assertEquals(4, store.segmentCount());
+    assertEquals(4, segmentFiles(dir.resolve("0")));
+    assertEquals(listOf("4", "3", "2", "1"), ids(store.search(TraceQuery.builder().build())));
+    store.close();
+  }
+
+  @Test
+  public void testFullSegmentRolls() throws Exception {
+    Path dir = folder.getRoot().toPath();
+    TraceStore store = new TraceStore(dir, 256, Duration.ofHours(1), Duration.ofDays(1), 2,
+        1000, Clock.fixed(NOW, ZoneOffset.UTC));
+
+    for (int i = 0; i < 10; i++) {
+      append(store, String.valueOf(i), null, "/settlementEngine/missions", 5, NOW);
+    }
+
+    // Only two segments are kept, however recent
+    assertEquals(2, store.segmentCount());
+    List<String> found = ids(store.search(TraceQuery.builder().build()));
+    assertEquals("9", found.get(0));
+    store.close();
+  }
+
+  @Test
+  public void testIndexBounded() throws Exception {
+    Path dir = folder.getRoot().toPath();
+    TraceStore store = new TraceStore(dir, 1 << 16, Duration.ofHours(1), Duration.ofDays(1), 10,
+        3, Clock.fixed(NOW, ZoneOffset.UTC));
+
+    for (int i = 0; i < 10; i++) {
+      append(store, String.valueOf(i), null, "/settlementEngine/missions", 5, NOW);
+      assertTrue(store.indexedTraceCount() <= 3);
+    }
+
+    // Whole segments go, oldest first
+    List<String> found = ids(store.search(TraceQuery.builder().build()));
+    assertEquals("9", found.get(0));
+    assertEquals(store.indexedTraceCount(), found.size());
+    store.close();
+  }
+
+  @Test
+  public void testSharedDirectory() throws Exception {
+    Path dir = folder.getRoot().toPath();
+    TraceStore first = new TraceStore(dir, 256, Duration.ofHours(1), Duration.ofDays(1), 1,
+        1000, Clock.fixed(NOW, ZoneOffset.UTC));
+    TraceStore second = new TraceStore(dir, 256, Duration.ofHours(1), Duration.ofDays(1), 1,
+        1000, Clock.fixed(NOW, ZoneOffset.UTC));
+
+    // Each rolls and expires segments many times over without touching the other's
+    for (int i = 0; i < 10; i++) {
+      append(first, "first-" + i, null, "/settlementEngine/missions", 5, NOW);
+      append(second, "second-" + i, null, "/settlementEngine/missions", 5, NOW);
+    }
+
+    assertEquals("first-9", ids(first.search(TraceQuery.builder().build())).get(0));
+    assertEquals("second-9", ids(second.search(TraceQuery.builder().build())).get(0));
+    assertEquals(1, segmentFiles(dir.resolve("0")));
+    assertEquals(1, segmentFiles(dir.resolve("1")));
+    first.close();
+    second.close();
+  }
+
+  private static void append(final TraceStore store, final String internalId,
+      final String externalId, final String path, final long timeTaken, final Instant finished)
+      throws IOException {
+    // The JSON is just the internal id, so it's easy to see what was found
+    store.append(finished.minusMillis(timeTaken).toEpochMilli(), timeTaken, 200, internalId,
+        externalId, path, internalId.getBytes(StandardCharsets.UTF_8));
+  }
+
+  private static long segmentFiles(final Path dir) throws IOException {
+    try (Stream<Path> files = Files.list(dir)) {
+      return files.filter(file -> file.toString().endsWith(".seg")).count();
+    }
+  }
+
+  private static List<String> ids(final List<byte[]> found) {
+    return found.stream().map(json -> new String(json, StandardCharsets.UTF_8))
+        .collect(Collectors.toList());
+  }
+
+  private static List<String> listOf(final String... ids) {
+    return Arrays.asList(ids);
+  }
+
+  private static class MutableClock extends Clock {
+
+    private Instant now;
+
+    MutableClock(final Instant now) {
+      this.now = now;
+    }
+
+    @Override
+    public ZoneOffset getZone() {
+      return ZoneOffset.UTC;
+    }
+
+    @Override
+    public Clock withZone(final ZoneId zone) {
+      return this;
+    }
+
+    @Override
+    public Instant instant() {
+      return now;
+    }
+  }
+}